@@ -1,24 +1,27 @@
 package com.oneplus.gallery;
 
 
+import java.io.File;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
 
 import com.oneplus.base.BaseFragment;
+import com.oneplus.base.EventArgs;
 import com.oneplus.base.EventHandler;
 import com.oneplus.base.EventKey;
 import com.oneplus.base.EventSource;
 import com.oneplus.base.Handle;
 import com.oneplus.base.Log;
 import com.oneplus.base.PropertyKey;
+import com.oneplus.gallery.cache.ThumbnailAtlas;
 import com.oneplus.gallery.media.Media;
 import com.oneplus.gallery.media.MediaList;
+import com.oneplus.gallery.media.MediaManager;
+import com.oneplus.gallery.media.MediaStoreItem;
 import com.oneplus.gallery.media.VideoMedia;
-import com.oneplus.media.BitmapPool;
-import com.oneplus.media.BitmapPool.Callback;
-import com.oneplus.media.CenterCroppedBitmapPool;
 
 import android.app.Activity;
 import android.content.Context;
@@ -34,12 +37,14 @@ import android.graphics.drawable.Drawable;
 import android.media.MediaMetadataRetriever;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.view.LayoutInflater;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.View.OnClickListener;
 import android.view.View.OnTouchListener;
 import android.view.ViewGroup;
+import android.widget.AbsListView;
 import android.widget.AdapterView;
 import android.widget.AdapterView.OnItemClickListener;
 import android.widget.BaseAdapter;
@@ -54,16 +59,33 @@ import android.widget.Toast;
  */
 public class GridViewFragment extends BaseFragment {
 
+	// Constants
+	private static final String CAMERA_ROLL_THUMBNAIL_ATLAS_FILE_NAME = "camera_roll_thumbnail_atlas";
+	private static final long CAMERA_ROLL_THUMBNAIL_ATLAS_RETRY_DELAY = 10000;
+	private static final int CAMERA_ROLL_THUMBNAIL_ATLAS_SLOT_COUNT = 256;
+	private static final float THRESHOLD_DEFER_THUMBNAIL_SCREENS_PER_SECOND = 2;
+	
 	// Private fields
+	private static volatile ThumbnailAtlas m_CameraRollThumbnailAtlas;
+	private static volatile long m_CameraRollThumbnailAtlasOpenFailedTime;
+	private static volatile boolean m_IsCameraRollThumbnailAtlasOpening;
 	private MediaList m_MediaList = null;
 	private GridView m_GridView;
 	private GridViewItemAdapter m_GridViewItemAdapter;
 	private Drawable m_GreySquare;
+	private boolean m_IsMediaBatchUpdating;
 	private View m_NoMediaView;
 	private int m_GridviewItemWidth;
 	private int m_GridviewItemHeight;
-	private static BitmapPool m_BitmapPool = new CenterCroppedBitmapPool("GridViewFragmentBitmapPool", 64 << 20, Bitmap.Config.ARGB_8888, 3);
-	private static BitmapPool m_SmallBitmapPool = new CenterCroppedBitmapPool("GridViewFragmentSmallBitmapPool", 32 << 20, Bitmap.Config.RGB_565, 4, BitmapPool.FLAG_USE_EMBEDDED_THUMB_ONLY);
+	private long m_DeferredThumbnailCount;
+	private boolean m_IsThumbnailLoadingDeferred;
+	private int m_LastScrollFirstVisibleItem;
+	private long m_LastScrollItemChangedTime;
+	private int m_LastScrollVisibleItemCount;
+	private int m_ScrollState = AbsListView.OnScrollListener.SCROLL_STATE_IDLE;
+	private ThumbnailPrefetcher m_ThumbnailPrefetcher;
+	private long m_ThumbnailAtlasHitCount;
+	private long[] m_ThumbnailAtlasMediaIds;
 	
 	/**
 	 * Property to get or set whether media list is camera roll or not.
@@ -97,42 +119,23 @@ public class GridViewFragment extends BaseFragment {
 		public ImageView thumbnailImageView;
 		public ImageView typeIconView;
 		public TextView durationTextView;
+		public Media media;
 		public String mimeType;
-		public final BitmapPool.Callback smallThumbDecodeCallback = new BitmapPool.Callback()
-		{
-			public void onBitmapDecoded(Handle handle, Uri contentUri, Bitmap bitmap) 
-			{
-				if(handle == smallThumbDecodeHandle && bitmap != null && !thumbDecoded)
-					thumbnailImageView.setImageBitmap(bitmap);
-			}
-			public void onBitmapDecoded(Handle handle, String filePath, Bitmap bitmap) 
-			{
-				if(handle == smallThumbDecodeHandle && bitmap != null && !thumbDecoded)
-					thumbnailImageView.setImageBitmap(bitmap);
-			}
-		};
-		public Handle smallThumbDecodeHandle;
-		public final BitmapPool.Callback thumbDecodeCallback = new BitmapPool.Callback()
+		public final ThumbnailLoader.Callback thumbnailCallback = new ThumbnailLoader.Callback()
 		{
-			public void onBitmapDecoded(Handle handle, Uri contentUri, Bitmap bitmap) 
-			{
-				if(handle == thumbDecodeHandle && bitmap != null)
-				{
-					thumbDecoded = true;
-					thumbnailImageView.setImageBitmap(bitmap);
-				}
-			}
-			public void onBitmapDecoded(Handle handle, String filePath, Bitmap bitmap)
+			public void onThumbnailLoaded(Handle handle, Media media, Bitmap thumbnail, boolean isFullThumbnail)
 			{
-				if(handle == thumbDecodeHandle && bitmap != null)
+				if(media == GridViewItemHolder.this.media && thumbnail != null)
 				{
-					thumbDecoded = true;
-					thumbnailImageView.setImageBitmap(bitmap);
+					thumbnailImageView.setImageBitmap(thumbnail);
+					if(isFullThumbnail)
+						writeThumbnailToAtlas(GridViewItemHolder.this, thumbnail);
 				}
 			}
 		};
-		public Handle thumbDecodeHandle;
-		public boolean thumbDecoded;
+		public Handle thumbnailHandle;
+		public boolean isThumbnailDeferred;
+		public Bitmap atlasBitmap;
 		
 		public GridViewItemHolder(View itemView)
 		{
@@ -161,6 +164,30 @@ public class GridViewFragment extends BaseFragment {
 			onMediaRemoved(e);
 		}
 	};
+	private final EventHandler<ListChangeEventArgs> m_MediaUpdatedHandler = new EventHandler<ListChangeEventArgs>()
+	{
+		@Override
+		public void onEventReceived(EventSource source, EventKey<ListChangeEventArgs> key, ListChangeEventArgs e)
+		{
+			onMediaUpdated(e);
+		}
+	};
+	private final EventHandler<EventArgs> m_MediaBatchUpdateEndedHandler = new EventHandler<EventArgs>()
+	{
+		@Override
+		public void onEventReceived(EventSource source, EventKey<EventArgs> key, EventArgs e)
+		{
+			onMediaBatchUpdateEnded();
+		}
+	};
+	private final EventHandler<EventArgs> m_MediaBatchUpdateStartedHandler = new EventHandler<EventArgs>()
+	{
+		@Override
+		public void onEventReceived(EventSource source, EventKey<EventArgs> key, EventArgs e)
+		{
+			m_IsMediaBatchUpdating = true;
+		}
+	};
 	
 	
 	
@@ -181,6 +208,7 @@ public class GridViewFragment extends BaseFragment {
 		Log.d(TAG, "onCreate");
 		m_GridviewItemHeight = this.getResources().getDimensionPixelSize(R.dimen.gridview_item_height);
 		m_GridviewItemWidth = this.getResources().getDimensionPixelSize(R.dimen.gridview_item_width);
+		m_ThumbnailPrefetcher = new ThumbnailPrefetcher(TAG, ThumbnailLoader.DEFAULT, m_GridviewItemWidth, m_GridviewItemHeight, ThumbnailPrefetcher.DEFAULT_PREFETCH_ROW_COUNT);
 		
 		// Prepare greySquare
 		m_GreySquare = new SquareDrawable(m_GridviewItemWidth, m_GridviewItemHeight);
@@ -200,11 +228,36 @@ public class GridViewFragment extends BaseFragment {
 		
 		// raise event
 		Media media = m_MediaList.get(index);
+		if(media == null)
+			return;
 		this.raise(EVENT_MEDIA_CLICKED, new ListItemEventArgs<Media>(index, media));
 	}
 	
 	private void onMediaAdded(ListChangeEventArgs e)
 	{
+		// refresh after batch update
+		if(m_IsMediaBatchUpdating)
+			return;
+		
+		// update thumbnail atlas
+		this.trimThumbnailAtlas();
+		
+		// show grid view
+		if(!m_MediaList.isEmpty())
+			this.showGridView();
+		
+		// refresh items
+		if(m_GridViewItemAdapter != null)
+			m_GridViewItemAdapter.notifyDataSetChanged();
+	}
+	
+	private void onMediaBatchUpdateEnded()
+	{
+		m_IsMediaBatchUpdating = false;
+		
+		// update thumbnail atlas
+		this.trimThumbnailAtlas();
+		
 		// show grid view
 		if(!m_MediaList.isEmpty())
 			this.showGridView();
@@ -216,6 +269,13 @@ public class GridViewFragment extends BaseFragment {
 	
 	private void onMediaRemoved(ListChangeEventArgs e)
 	{
+		// refresh after batch update
+		if(m_IsMediaBatchUpdating)
+			return;
+		
+		// update thumbnail atlas
+		this.trimThumbnailAtlas();
+		
 		// hide grid view
 		if(m_MediaList.isEmpty())
 			;
@@ -224,6 +284,17 @@ public class GridViewFragment extends BaseFragment {
 		if(m_GridViewItemAdapter != null)
 			m_GridViewItemAdapter.notifyDataSetChanged();
 	}
+	
+	private void onMediaUpdated(ListChangeEventArgs e)
+	{
+		// refresh after batch update
+		if(m_IsMediaBatchUpdating)
+			return;
+		
+		// refresh items
+		if(m_GridViewItemAdapter != null)
+			m_GridViewItemAdapter.notifyDataSetChanged();
+	}
 
 	@Override
 	public void onPause() {
@@ -276,7 +347,14 @@ public class GridViewFragment extends BaseFragment {
 		{
 			m_MediaList.removeHandler(MediaList.EVENT_MEDIA_ADDED, m_MediaAddedHandler);
 			m_MediaList.removeHandler(MediaList.EVENT_MEDIA_REMOVED, m_MediaRemovedHandler);
+			m_MediaList.removeHandler(MediaList.EVENT_MEDIA_UPDATED, m_MediaUpdatedHandler);
+			m_MediaList.removeHandler(MediaList.EVENT_MEDIA_BATCH_UPDATE_STARTED, m_MediaBatchUpdateStartedHandler);
+			m_MediaList.removeHandler(MediaList.EVENT_MEDIA_BATCH_UPDATE_ENDED, m_MediaBatchUpdateEndedHandler);
 		}
+		m_IsMediaBatchUpdating = false;
+		m_ThumbnailAtlasMediaIds = null;
+		if(m_ThumbnailPrefetcher != null)
+			m_ThumbnailPrefetcher.cancel();
 		
 		// attach to new media list
 		m_MediaList = value;
@@ -286,6 +364,9 @@ public class GridViewFragment extends BaseFragment {
 			Log.d(TAG, "m_MediaList value" );
 			m_MediaList.addHandler(MediaList.EVENT_MEDIA_ADDED, m_MediaAddedHandler);
 			m_MediaList.addHandler(MediaList.EVENT_MEDIA_REMOVED, m_MediaRemovedHandler);
+			m_MediaList.addHandler(MediaList.EVENT_MEDIA_UPDATED, m_MediaUpdatedHandler);
+			m_MediaList.addHandler(MediaList.EVENT_MEDIA_BATCH_UPDATE_STARTED, m_MediaBatchUpdateStartedHandler);
+			m_MediaList.addHandler(MediaList.EVENT_MEDIA_BATCH_UPDATE_ENDED, m_MediaBatchUpdateEndedHandler);
 		}
 		
 		// update UI
@@ -326,6 +407,19 @@ public class GridViewFragment extends BaseFragment {
 		if(m_GridViewItemAdapter == null)
 			m_GridViewItemAdapter = new GridViewItemAdapter(this.getActivity());
 		m_GridView.setAdapter(m_GridViewItemAdapter);
+		m_GridView.setOnScrollListener(new AbsListView.OnScrollListener() {
+			@Override
+			public void onScrollStateChanged(AbsListView view, int scrollState) {
+				m_ScrollState = scrollState;
+				if(scrollState != SCROLL_STATE_FLING)
+					setThumbnailLoadingDeferred(false);
+			}
+			
+			@Override
+			public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+				onGridViewScrolled(firstVisibleItem, visibleItemCount);
+			}
+		});
 		m_GridView.setOnItemClickListener(new OnItemClickListener() {
 			@Override
 			public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
@@ -357,9 +451,22 @@ public class GridViewFragment extends BaseFragment {
 	public void onDestroyView()
 	{
 		Log.d(TAG, "onDestroyView");
+		Log.d(TAG, "onDestroyView() - Thumbnail decodes completed : " + ThumbnailLoader.DEFAULT.getCompletedDecodeCount() + ", cancelled : " + ThumbnailLoader.DEFAULT.getCancelledDecodeCount() + ", deferred : " + m_DeferredThumbnailCount + ", from atlas : " + m_ThumbnailAtlasHitCount);
+		if(m_ThumbnailPrefetcher != null)
+		{
+			Log.d(TAG, "onDestroyView() - Thumbnail prefetcher : " + m_ThumbnailPrefetcher);
+			m_ThumbnailPrefetcher.cancel();
+		}
 		// clear references
 		if(m_GridView != null)
 		{
+			for(int i = m_GridView.getChildCount() - 1 ; i >= 0 ; --i)
+			{
+				Object tag = m_GridView.getChildAt(i).getTag();
+				if(tag instanceof GridViewItemHolder)
+					((GridViewItemHolder)tag).thumbnailHandle = Handle.close(((GridViewItemHolder)tag).thumbnailHandle);
+			}
+			m_GridView.setOnScrollListener(null);
 			m_GridView.setAdapter(null);
 			m_GridView = null;
 		}
@@ -439,7 +546,7 @@ public class GridViewFragment extends BaseFragment {
 			}
 			holder.thumbnailImageView.setImageDrawable(m_GreySquare);
 			holder.position = position;
-			holder.thumbDecoded = false;
+			holder.media = null;
 			
 			boolean isCameraRoll = get(PROP_IS_CAMERA_ROLL);
 			if(m_MediaList != null) {
@@ -447,26 +554,22 @@ public class GridViewFragment extends BaseFragment {
 					// Set item thumbnail
 					holder.thumbnailImageView.setImageResource(R.drawable.camera);
 					holder.contentUri = null;
-					holder.smallThumbDecodeHandle = null;
-					holder.thumbDecodeHandle = null;
+					holder.thumbnailHandle = Handle.close(holder.thumbnailHandle);
 				}else {
 					Log.e(TAG, "holder.m_ItemPosition: " + holder.position);
 					// -1 for the first one for CameraIcon to start camera activity
 					Media media = m_MediaList.get(isCameraRoll ? position - 1 : position);
-					String filePath = media.getFilePath();
-					holder.contentUri = media.getContentUri();
-					holder.mimeType = media.getMimeType();
-					if(filePath != null)
+					holder.media = media;
+					if(media == null)
 					{
-						holder.smallThumbDecodeHandle = m_SmallBitmapPool.decode(media.getFilePath(), m_GridviewItemWidth, m_GridviewItemHeight, BitmapPool.FLAG_ASYNC | BitmapPool.FLAG_URGENT, holder.smallThumbDecodeCallback, GridViewFragment.this.getHandler());
-						holder.thumbDecodeHandle = m_BitmapPool.decode(media.getFilePath(), m_GridviewItemWidth, m_GridviewItemHeight, BitmapPool.FLAG_ASYNC | BitmapPool.FLAG_URGENT, holder.thumbDecodeCallback, GridViewFragment.this.getHandler());
-					}
-					else
-					{
-						int mediaType = (media instanceof VideoMedia ? BitmapPool.MEDIA_TYPE_VIDEO : BitmapPool.MEDIA_TYPE_PHOTO);
-						holder.smallThumbDecodeHandle = m_SmallBitmapPool.decode(getActivity(), holder.contentUri, mediaType, m_GridviewItemWidth, m_GridviewItemHeight, BitmapPool.FLAG_ASYNC | BitmapPool.FLAG_URGENT, holder.smallThumbDecodeCallback, GridViewFragment.this.getHandler());
-						holder.thumbDecodeHandle = m_BitmapPool.decode(getActivity(), holder.contentUri, mediaType, m_GridviewItemWidth, m_GridviewItemHeight, BitmapPool.FLAG_ASYNC | BitmapPool.FLAG_URGENT, holder.thumbDecodeCallback, GridViewFragment.this.getHandler());
+						// media is still loading
+						holder.contentUri = null;
+						holder.thumbnailHandle = Handle.close(holder.thumbnailHandle);
+						return convertView;
 					}
+					holder.contentUri = media.getContentUri();
+					holder.mimeType = media.getMimeType();
+					loadThumbnail(holder);
 					if(media instanceof VideoMedia) {
 						((ViewGroup)holder.typeIconView.getParent()).setVisibility(View.VISIBLE);
 						holder.typeIconView.setImageResource(R.drawable.about);
@@ -480,6 +583,267 @@ public class GridViewFragment extends BaseFragment {
 
 
 	
+	// Copy thumbnail of item from thumbnail atlas.
+	private boolean copyThumbnailFromAtlas(GridViewItemHolder holder)
+	{
+		// check state
+		ThumbnailAtlas atlas = this.getThumbnailAtlas();
+		if(atlas == null || !(holder.media instanceof MediaStoreItem))
+			return false;
+		
+		// copy to reusable bitmap of item
+		MediaStoreItem media = (MediaStoreItem)holder.media;
+		if(holder.atlasBitmap == null)
+			holder.atlasBitmap = Bitmap.createBitmap(atlas.getSlotWidth(), atlas.getSlotHeight(), Bitmap.Config.RGB_565);
+		if(!atlas.copyTo(media.getId(), media.getDateModified(), holder.atlasBitmap))
+			return false;
+		holder.thumbnailImageView.setImageBitmap(holder.atlasBitmap);
+		++m_ThumbnailAtlasHitCount;
+		return true;
+	}
+	
+	
+	// Get thumbnail atlas for current media list, or Null if atlas is unavailable.
+	private ThumbnailAtlas getThumbnailAtlas()
+	{
+		// check state
+		if(!this.get(PROP_IS_CAMERA_ROLL))
+			return null;
+		ThumbnailAtlas atlas = m_CameraRollThumbnailAtlas;
+		if(atlas != null || m_IsCameraRollThumbnailAtlasOpening)
+			return atlas;
+		if(m_CameraRollThumbnailAtlasOpenFailedTime > 0 && (SystemClock.elapsedRealtime() - m_CameraRollThumbnailAtlasOpenFailedTime) < CAMERA_ROLL_THUMBNAIL_ATLAS_RETRY_DELAY)
+			return null;
+		
+		// open atlas in background
+		m_IsCameraRollThumbnailAtlasOpening = true;
+		final File file = new File(GalleryApplication.current().getCacheDir(), CAMERA_ROLL_THUMBNAIL_ATLAS_FILE_NAME);
+		final int width = m_GridviewItemWidth;
+		final int height = m_GridviewItemHeight;
+		MediaManager.postToContentThread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				ThumbnailAtlas atlas = ThumbnailAtlas.open(file, CAMERA_ROLL_THUMBNAIL_ATLAS_SLOT_COUNT, width, height);
+				if(atlas != null)
+					m_CameraRollThumbnailAtlas = atlas;
+				else
+				{
+					// allow opening again later
+					m_CameraRollThumbnailAtlasOpenFailedTime = SystemClock.elapsedRealtime();
+					m_IsCameraRollThumbnailAtlasOpening = false;
+				}
+			}
+		});
+		return null;
+	}
+	
+	
+	// Remove thumbnails of media which have been removed or moved out of the first slots from thumbnail atlas.
+	private void trimThumbnailAtlas()
+	{
+		// check state, list may be cleared temporarily while reloading
+		final ThumbnailAtlas atlas = this.getThumbnailAtlas();
+		if(atlas == null || m_MediaList == null || m_MediaList.isEmpty())
+			return;
+		
+		// collect IDs of most recent media
+		int count = Math.min(m_MediaList.size(), atlas.getSlotCount());
+		long[] ids = new long[count];
+		for(int i = 0 ; i < count ; ++i)
+		{
+			Media media = m_MediaList.get(i);
+			if(media instanceof MediaStoreItem)
+				ids[i] = ((MediaStoreItem)media).getId();
+		}
+		Arrays.sort(ids);
+		long[] prevIds = m_ThumbnailAtlasMediaIds;
+		m_ThumbnailAtlasMediaIds = ids;
+		if(prevIds == null)
+			return;
+		
+		// find media which were in first slots before, media which are not loaded yet are never removed
+		int removingCount = 0;
+		long[] removingIds = null;
+		for(int i = prevIds.length - 1 ; i >= 0 ; --i)
+		{
+			long id = prevIds[i];
+			if(id == 0 || Arrays.binarySearch(ids, id) >= 0)
+				continue;
+			if(removingIds == null)
+				removingIds = new long[i + 1];
+			removingIds[removingCount++] = id;
+		}
+		if(removingCount == 0)
+			return;
+		
+		// remove in background
+		final long[] finalRemovingIds = Arrays.copyOf(removingIds, removingCount);
+		MediaManager.postToContentThread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				int removedCount = atlas.removeAll(finalRemovingIds);
+				if(removedCount > 0)
+					Log.v(TAG, "trimThumbnailAtlas() - Remove ", removedCount, " thumbnails");
+			}
+		});
+	}
+	
+	
+	// Put full thumbnail of item to thumbnail atlas if it is one of the most recent media.
+	private void writeThumbnailToAtlas(GridViewItemHolder holder, final Bitmap thumbnail)
+	{
+		// check state
+		final ThumbnailAtlas atlas = this.getThumbnailAtlas();
+		if(atlas == null || !(holder.media instanceof MediaStoreItem))
+			return;
+		if(holder.position - 1 >= atlas.getSlotCount())
+			return;
+		MediaStoreItem media = (MediaStoreItem)holder.media;
+		final long id = media.getId();
+		final long dateModified = media.getDateModified();
+		final long takenTime = media.getTakenTime();
+		if(atlas.contains(id, dateModified))
+			return;
+		
+		// write in background
+		MediaManager.postToContentThread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				atlas.put(id, dateModified, takenTime, thumbnail);
+			}
+		});
+	}
+	
+	
+	// Start loading thumbnail of item, or defer it while flinging.
+	private void loadThumbnail(GridViewItemHolder holder)
+	{
+		// cancel loading for previous media
+		holder.thumbnailHandle = Handle.close(holder.thumbnailHandle);
+		holder.isThumbnailDeferred = false;
+		if(holder.media == null)
+			return;
+		
+		// use thumbnail in atlas
+		if(this.copyThumbnailFromAtlas(holder))
+			return;
+		
+		// use cached thumbnail only while flinging
+		if(m_IsThumbnailLoadingDeferred)
+		{
+			Bitmap thumbnail = ThumbnailLoader.DEFAULT.getCachedThumbnail(holder.media, m_GridviewItemWidth, m_GridviewItemHeight);
+			if(thumbnail != null)
+				holder.thumbnailImageView.setImageBitmap(thumbnail);
+			else
+			{
+				holder.isThumbnailDeferred = true;
+				++m_DeferredThumbnailCount;
+			}
+			return;
+		}
+		
+		// load thumbnail
+		holder.thumbnailHandle = ThumbnailLoader.DEFAULT.loadThumbnail(holder.media, m_GridviewItemWidth, m_GridviewItemHeight, ThumbnailLoader.FLAG_URGENT, holder.thumbnailCallback);
+	}
+	
+	
+	// Called when grid view scrolled.
+	private void onGridViewScrolled(int firstVisibleItem, int visibleItemCount)
+	{
+		// calculate scroll velocity since first visible item changed, it only changes when a whole row crosses the edge
+		long time = SystemClock.uptimeMillis();
+		long duration = (time - m_LastScrollItemChangedTime);
+		int itemCount = Math.abs(firstVisibleItem - m_LastScrollFirstVisibleItem);
+		if(itemCount > 0)
+		{
+			m_LastScrollItemChangedTime = time;
+			m_LastScrollFirstVisibleItem = firstVisibleItem;
+		}
+		m_LastScrollVisibleItemCount = visibleItemCount;
+		
+		// defer thumbnail loading until fling slows down
+		if(m_ScrollState == AbsListView.OnScrollListener.SCROLL_STATE_FLING && duration > 0 && visibleItemCount > 0)
+		{
+			if(itemCount > 0)
+			{
+				float screensPerSecond = (itemCount * 1000f / duration / visibleItemCount);
+				this.setThumbnailLoadingDeferred(screensPerSecond > THRESHOLD_DEFER_THUMBNAIL_SCREENS_PER_SECOND);
+			}
+			else if(m_IsThumbnailLoadingDeferred && m_GridView != null)
+			{
+				// no row crossed the edge during this duration, so velocity is lower than one row per duration
+				float maxScreensPerSecond = (m_GridView.getNumColumns() * 1000f / duration / visibleItemCount);
+				if(maxScreensPerSecond <= THRESHOLD_DEFER_THUMBNAIL_SCREENS_PER_SECOND)
+					this.setThumbnailLoadingDeferred(false);
+			}
+		}
+		
+		// prefetch thumbnails ahead of scrolling
+		this.prefetchThumbnails();
+	}
+	
+	
+	// Prefetch thumbnails of rows which are going to be scrolled into screen.
+	private void prefetchThumbnails()
+	{
+		// check state
+		if(m_ThumbnailPrefetcher == null)
+			return;
+		if(m_GridView == null || m_MediaList == null || m_IsThumbnailLoadingDeferred)
+		{
+			m_ThumbnailPrefetcher.cancel();
+			return;
+		}
+		
+		// convert to media list index
+		int firstIndex = m_LastScrollFirstVisibleItem;
+		int visibleCount = m_LastScrollVisibleItemCount;
+		if(this.get(PROP_IS_CAMERA_ROLL))
+		{
+			if(firstIndex > 0)
+				--firstIndex;
+			else
+				--visibleCount;
+		}
+		
+		// update prefetching
+		m_ThumbnailPrefetcher.update(m_MediaList, firstIndex, visibleCount, m_GridView.getNumColumns());
+	}
+	
+	
+	// Start or stop deferring thumbnail loading.
+	private void setThumbnailLoadingDeferred(boolean deferred)
+	{
+		// check state
+		if(m_IsThumbnailLoadingDeferred == deferred)
+			return;
+		m_IsThumbnailLoadingDeferred = deferred;
+		if(deferred || m_GridView == null)
+		{
+			if(m_ThumbnailPrefetcher != null)
+				m_ThumbnailPrefetcher.cancel();
+			return;
+		}
+		
+		// load deferred thumbnails of visible items
+		for(int i = 0, count = m_GridView.getChildCount() ; i < count ; ++i)
+		{
+			Object tag = m_GridView.getChildAt(i).getTag();
+			if(tag instanceof GridViewItemHolder && ((GridViewItemHolder)tag).isThumbnailDeferred)
+				this.loadThumbnail((GridViewItemHolder)tag);
+		}
+		
+		// resume prefetching
+		this.prefetchThumbnails();
+	}
+	
+	
 	private String getVideoTime(VideoMedia media) {
 		long timeInmillisec = media.getDuration();
 		long duration = timeInmillisec / 1000;
@@ -35,11 +35,11 @@ import com.oneplus.base.PropertyChangeEventArgs;
 import com.oneplus.base.PropertyChangedCallback;
 import com.oneplus.base.PropertyKey;
 import com.oneplus.base.PropertySource;
+import com.oneplus.gallery.media.Media;
 import com.oneplus.gallery.media.MediaComparator;
 import com.oneplus.gallery.media.MediaList;
 import com.oneplus.gallery.media.MediaSet;
 import com.oneplus.gallery.media.MediaSetList;
-import com.oneplus.media.BitmapPool;
 
 /**
  * Fragment to display media set list.
@@ -332,9 +332,9 @@ public class MediaSetListFragment extends BaseFragment
 				{
 					if(targetGridCount == 1)
 					{
-						BitmapPool.DEFAULT_THUMBNAIL.decode(mediaList.get(0).getFilePath(), 512, 512, 0, new BitmapPool.Callback() {
+						ThumbnailLoader.DEFAULT.loadThumbnail(mediaList.get(0), 512, 512, ThumbnailLoader.FLAG_FULL_THUMBNAIL_ONLY, new ThumbnailLoader.Callback() {
 							@Override
-							public void onBitmapDecoded(Handle handle, String filePath, Bitmap bitmap) {
+							public void onThumbnailLoaded(Handle handle, Media media, Bitmap bitmap, boolean isFullThumbnail) {
 						
 								// update bitmap table
 								m_MediaSetCoverImageTable.put(mediaSet, bitmap);
@@ -347,7 +347,7 @@ public class MediaSetListFragment extends BaseFragment
 								createMediaListCoverImageFromQueue();
 							}
 							
-						}, getHandler());
+						});
 					}
 					else
 					{
@@ -365,9 +365,9 @@ public class MediaSetListFragment extends BaseFragment
 						for(int i=0; i<targetGridCount; i++)
 						{
 							final int index = i;
-							BitmapPool.DEFAULT_THUMBNAIL.decode(mediaList.get(i).getFilePath(), gridSize, gridSize, 0, new BitmapPool.Callback() {
+							ThumbnailLoader.DEFAULT.loadThumbnail(mediaList.get(i), gridSize, gridSize, ThumbnailLoader.FLAG_FULL_THUMBNAIL_ONLY, new ThumbnailLoader.Callback() {
 								@Override
-								public void onBitmapDecoded(Handle handle, String filePath, Bitmap bitmap) {
+								public void onThumbnailLoaded(Handle handle, Media media, Bitmap bitmap, boolean isFullThumbnail) {
 							
 									// gridCoverImageRect
 									int rectLeft = (index * gridSize) % coverWidth;
@@ -400,7 +400,7 @@ public class MediaSetListFragment extends BaseFragment
 									createMediaListCoverImageFromQueue();
 								}
 								
-							}, getHandler());
+							});
 						}
 						
 						
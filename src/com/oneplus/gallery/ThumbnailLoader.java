@@ -0,0 +1,670 @@
+package com.oneplus.gallery;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.oneplus.base.Handle;
+import com.oneplus.base.Log;
+import com.oneplus.gallery.cache.DiskBitmapCache;
+import com.oneplus.gallery.cache.LruBitmapCache;
+import com.oneplus.gallery.media.Media;
+import com.oneplus.gallery.media.MediaStoreItem;
+import com.oneplus.gallery.media.VideoMedia;
+import com.oneplus.media.BitmapPool;
+import com.oneplus.media.CenterCroppedBitmapPool;
+
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Process;
+
+/**
+ * Loads center-cropped thumbnails of media. Cached thumbnail will be provided immediately, otherwise thumbnail will be read from disk cache if available, or embedded thumbnail will be provided first and be upgraded to full thumbnail later. Decoding of same media with same size will be shared by all requests.
+ */
+public final class ThumbnailLoader
+{
+	/**
+	 * Default instance.
+	 */
+	public static final ThumbnailLoader DEFAULT = new ThumbnailLoader("ThumbnailLoader",
+			new CenterCroppedBitmapPool("ThumbnailLoaderSmallBitmapPool", 32 << 20, Bitmap.Config.RGB_565, 4, BitmapPool.FLAG_USE_EMBEDDED_THUMB_ONLY),
+			new CenterCroppedBitmapPool("ThumbnailLoaderBitmapPool", 64 << 20, Bitmap.Config.ARGB_8888, 3),
+			16 << 20, "thumbnails", 64 << 20);
+	/**
+	 * Flag to load full thumbnail only.
+	 */
+	public static final int FLAG_FULL_THUMBNAIL_ONLY = 0x1;
+	/**
+	 * Flag to load thumbnail before other requests.
+	 */
+	public static final int FLAG_URGENT = 0x2;
+	
+	
+	// Constants.
+	private static final long DELAY_SMALL_DECODING_WHILE_READING_DISK_CACHE = 100;
+	private static final int DISK_CACHE_MAX_THUMBNAIL_SIZE = 512;
+	private static final long DISK_CACHE_THREAD_KEEP_ALIVE_TIME = 10000;
+	
+	
+	// Fields.
+	private final LruBitmapCache<ThumbnailKey> m_Cache;
+	private long m_CacheHitCount;
+	private long m_CancelledDecodeCount;
+	private long m_CompletedDecodeCount;
+	private final BitmapPool m_BitmapPool;
+	private DiskBitmapCache m_DiskCache;
+	private final long m_DiskCacheCapacity;
+	private ThreadPoolExecutor m_DiskCacheExecutor;
+	private long m_DiskCacheHitCount;
+	private final String m_DiskCacheName;
+	private boolean m_IsDiskCacheOpened;
+	private final String m_Name;
+	private final HashMap<ThumbnailKey, ThumbnailRequest> m_Requests = new HashMap<>();
+	private final BitmapPool m_SmallBitmapPool;
+	
+	
+	/**
+	 * Call-back to receive loaded thumbnail.
+	 */
+	public interface Callback
+	{
+		/**
+		 * Called when thumbnail loaded.
+		 * @param handle Handle returned from {@link ThumbnailLoader#loadThumbnail(Media, int, int, int, Callback)}, or Null if thumbnail is provided from cache.
+		 * @param media Media.
+		 * @param thumbnail Thumbnail, or Null if fail to decode full thumbnail.
+		 * @param isFullThumbnail True if thumbnail is full thumbnail, False if it is embedded thumbnail which will be upgraded later.
+		 */
+		void onThumbnailLoaded(Handle handle, Media media, Bitmap thumbnail, boolean isFullThumbnail);
+	}
+	
+	
+	// Key of thumbnail.
+	private static final class ThumbnailKey
+	{
+		public final int height;
+		public final Object source;
+		public final int width;
+		
+		public ThumbnailKey(Object source, int width, int height)
+		{
+			this.source = source;
+			this.width = width;
+			this.height = height;
+		}
+		
+		@Override
+		public boolean equals(Object obj)
+		{
+			if(!(obj instanceof ThumbnailKey))
+				return false;
+			ThumbnailKey key = (ThumbnailKey)obj;
+			return (key.width == this.width && key.height == this.height && key.source.equals(this.source));
+		}
+		
+		@Override
+		public int hashCode()
+		{
+			return ((this.source.hashCode() * 31 + this.width) * 31 + this.height);
+		}
+	}
+	
+	
+	// Handle of single thumbnail request.
+	private final class ThumbnailHandle extends Handle
+	{
+		public final Callback callback;
+		public final Media media;
+		public ThumbnailRequest request;
+		
+		public ThumbnailHandle(Media media, Callback callback)
+		{
+			super("LoadThumbnail");
+			this.media = media;
+			this.callback = callback;
+		}
+		
+		@Override
+		protected void onClose(int flags)
+		{
+			cancelRequest(this);
+		}
+	}
+	
+	
+	// Shared decoding of a thumbnail.
+	private final class ThumbnailRequest
+	{
+		public final List<ThumbnailHandle> clients = new ArrayList<>();
+		public Handle decodeHandle;
+		public String diskCacheKey;
+		public int flags;
+		public volatile boolean isCancelled;
+		public boolean isReadingDiskCache;
+		public final ThumbnailKey key;
+		public final Media media;
+		public Bitmap smallThumbnail;
+		public Handle smallDecodeHandle;
+		public final Runnable startSmallDecodingRunnable = new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				if(m_Requests.get(key) == ThumbnailRequest.this)
+					startSmallDecoding(ThumbnailRequest.this);
+			}
+		};
+		public final BitmapPool.Callback decodeCallback = new BitmapPool.Callback()
+		{
+			@Override
+			public void onBitmapDecoded(Handle handle, Uri contentUri, Bitmap bitmap)
+			{
+				onThumbnailDecoded(ThumbnailRequest.this, handle, bitmap);
+			}
+			
+			@Override
+			public void onBitmapDecoded(Handle handle, String filePath, Bitmap bitmap)
+			{
+				onThumbnailDecoded(ThumbnailRequest.this, handle, bitmap);
+			}
+		};
+		public final BitmapPool.Callback smallDecodeCallback = new BitmapPool.Callback()
+		{
+			@Override
+			public void onBitmapDecoded(Handle handle, Uri contentUri, Bitmap bitmap)
+			{
+				onSmallThumbnailDecoded(ThumbnailRequest.this, handle, bitmap);
+			}
+			
+			@Override
+			public void onBitmapDecoded(Handle handle, String filePath, Bitmap bitmap)
+			{
+				onSmallThumbnailDecoded(ThumbnailRequest.this, handle, bitmap);
+			}
+		};
+		
+		public ThumbnailRequest(ThumbnailKey key, Media media, int flags)
+		{
+			this.key = key;
+			this.media = media;
+			this.flags = flags;
+		}
+	}
+	
+	
+	/**
+	 * Initialize new ThumbnailLoader instance.
+	 * @param name Name for logging.
+	 * @param smallBitmapPool Bitmap pool to decode embedded thumbnails.
+	 * @param bitmapPool Bitmap pool to decode full thumbnails.
+	 * @param cacheCapacity Capacity of full thumbnail cache in bytes.
+	 */
+	public ThumbnailLoader(String name, BitmapPool smallBitmapPool, BitmapPool bitmapPool, int cacheCapacity)
+	{
+		this(name, smallBitmapPool, bitmapPool, cacheCapacity, null, 0);
+	}
+	
+	
+	/**
+	 * Initialize new ThumbnailLoader instance.
+	 * @param name Name for logging.
+	 * @param smallBitmapPool Bitmap pool to decode embedded thumbnails.
+	 * @param bitmapPool Bitmap pool to decode full thumbnails.
+	 * @param cacheCapacity Capacity of full thumbnail cache in bytes.
+	 * @param diskCacheName Name of directory in application cache directory to keep full thumbnails of media in media store, or Null to disable disk cache.
+	 * @param diskCacheCapacity Capacity of disk cache in bytes.
+	 */
+	public ThumbnailLoader(String name, BitmapPool smallBitmapPool, BitmapPool bitmapPool, int cacheCapacity, String diskCacheName, long diskCacheCapacity)
+	{
+		if(smallBitmapPool == null || bitmapPool == null)
+			throw new IllegalArgumentException("No bitmap pool");
+		if(diskCacheName != null && diskCacheCapacity <= 0)
+			throw new IllegalArgumentException("Invalid disk cache capacity : " + diskCacheCapacity);
+		m_Name = name;
+		m_SmallBitmapPool = smallBitmapPool;
+		m_BitmapPool = bitmapPool;
+		m_Cache = new LruBitmapCache<>(cacheCapacity);
+		m_DiskCacheName = diskCacheName;
+		m_DiskCacheCapacity = diskCacheCapacity;
+	}
+	
+	
+	// Cancel single thumbnail request.
+	private void cancelRequest(ThumbnailHandle handle)
+	{
+		ThumbnailRequest request = handle.request;
+		if(request == null)
+			return;
+		handle.request = null;
+		request.clients.remove(handle);
+		if(request.clients.isEmpty())
+		{
+			++m_CancelledDecodeCount;
+			request.isCancelled = true;
+			m_Requests.remove(request.key);
+			GalleryApplication.current().getHandler().removeCallbacks(request.startSmallDecodingRunnable);
+			request.smallDecodeHandle = Handle.close(request.smallDecodeHandle);
+			request.decodeHandle = Handle.close(request.decodeHandle);
+		}
+	}
+	
+	
+	// Complete request and notify clients.
+	private void completeRequest(ThumbnailRequest request, Bitmap bitmap)
+	{
+		// remove request
+		GalleryApplication.current().getHandler().removeCallbacks(request.startSmallDecodingRunnable);
+		request.smallDecodeHandle = Handle.close(request.smallDecodeHandle);
+		if(m_Requests.get(request.key) == request)
+			m_Requests.remove(request.key);
+		
+		// notify clients
+		ThumbnailHandle[] clients = request.clients.toArray(new ThumbnailHandle[request.clients.size()]);
+		request.clients.clear();
+		for(int i = 0 ; i < clients.length ; ++i)
+		{
+			ThumbnailHandle client = clients[i];
+			if(client.request != request)
+				continue;
+			client.request = null;
+			client.callback.onThumbnailLoaded(client, client.media, bitmap, true);
+		}
+	}
+	
+	
+	// Create key of thumbnail in disk cache.
+	private String createDiskCacheKey(Media media, int width, int height)
+	{
+		if(m_DiskCacheName == null || width > DISK_CACHE_MAX_THUMBNAIL_SIZE || height > DISK_CACHE_MAX_THUMBNAIL_SIZE || !(media instanceof MediaStoreItem))
+			return null;
+		MediaStoreItem item = (MediaStoreItem)media;
+		if(item.getId() <= 0)
+			return null;
+		return (item.getId() + "_" + item.getDateModified() + "_" + width + "x" + height);
+	}
+	
+	
+	// Create key of thumbnail.
+	private static ThumbnailKey createKey(Media media, int width, int height)
+	{
+		String filePath = media.getFilePath();
+		Object source = (filePath != null ? filePath : media.getContentUri());
+		if(source == null)
+			return null;
+		return new ThumbnailKey(source, width, height);
+	}
+	
+	
+	// Start decoding thumbnail.
+	private Handle decode(BitmapPool pool, Media media, ThumbnailKey key, int flags, BitmapPool.Callback callback)
+	{
+		Handler handler = GalleryApplication.current().getHandler();
+		if(key.source instanceof String)
+			return pool.decode((String)key.source, key.width, key.height, flags, callback, handler);
+		int mediaType = (media instanceof VideoMedia ? BitmapPool.MEDIA_TYPE_VIDEO : BitmapPool.MEDIA_TYPE_PHOTO);
+		return pool.decode(GalleryApplication.current(), (Uri)key.source, mediaType, key.width, key.height, flags, callback, handler);
+	}
+	
+	
+	/**
+	 * Get cached full thumbnail.
+	 * @param media Media.
+	 * @param width Width of thumbnail.
+	 * @param height Height of thumbnail.
+	 * @return Cached thumbnail, or Null if thumbnail is not cached.
+	 */
+	public Bitmap getCachedThumbnail(Media media, int width, int height)
+	{
+		ThumbnailKey key = createKey(media, width, height);
+		return (key != null ? m_Cache.get(key) : null);
+	}
+	
+	
+	/**
+	 * Get capacity of full thumbnail cache.
+	 * @return Capacity in bytes.
+	 */
+	public int getCacheCapacity()
+	{
+		return m_Cache.maxSize();
+	}
+	
+	
+	/**
+	 * Get number of requests which have been provided from cache immediately.
+	 * @return Number of requests.
+	 */
+	public long getCacheHitCount()
+	{
+		return m_CacheHitCount;
+	}
+	
+	
+	/**
+	 * Get number of requests which have been provided from disk cache.
+	 * @return Number of requests.
+	 */
+	public long getDiskCacheHitCount()
+	{
+		return m_DiskCacheHitCount;
+	}
+	
+	
+	// Get disk cache, this method should be called in disk cache thread.
+	private DiskBitmapCache getDiskCache()
+	{
+		if(!m_IsDiskCacheOpened)
+		{
+			m_IsDiskCacheOpened = true;
+			File directory = new File(GalleryApplication.current().getCacheDir(), m_DiskCacheName);
+			m_DiskCache = DiskBitmapCache.open(directory, m_DiskCacheCapacity, DISK_CACHE_MAX_THUMBNAIL_SIZE);
+			if(m_DiskCache != null)
+				Log.v(m_Name, "getDiskCache() - Open disk cache in ", directory);
+		}
+		return m_DiskCache;
+	}
+	
+	
+	// Get executor to access disk cache.
+	private ThreadPoolExecutor getDiskCacheExecutor()
+	{
+		if(m_DiskCacheExecutor == null)
+		{
+			m_DiskCacheExecutor = new ThreadPoolExecutor(1, 1, DISK_CACHE_THREAD_KEEP_ALIVE_TIME, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory()
+			{
+				@Override
+				public Thread newThread(final Runnable r)
+				{
+					return new Thread(new Runnable()
+					{
+						@Override
+						public void run()
+						{
+							Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+							r.run();
+						}
+					}, m_Name + " disk cache");
+				}
+			});
+			m_DiskCacheExecutor.allowCoreThreadTimeOut(true);
+		}
+		return m_DiskCacheExecutor;
+	}
+	
+	
+	/**
+	 * Get number of decodings which have been cancelled before completion because all requests are closed.
+	 * @return Number of decodings.
+	 */
+	public long getCancelledDecodeCount()
+	{
+		return m_CancelledDecodeCount;
+	}
+	
+	
+	/**
+	 * Get number of decodings which have been completed.
+	 * @return Number of decodings.
+	 */
+	public long getCompletedDecodeCount()
+	{
+		return m_CompletedDecodeCount;
+	}
+	
+	
+	/**
+	 * Load thumbnail of media. This method should be called in main thread.
+	 * @param media Media.
+	 * @param width Width of thumbnail.
+	 * @param height Height of thumbnail.
+	 * @param flags Flags:
+	 * <ul>
+	 *   <li>{@link #FLAG_FULL_THUMBNAIL_ONLY}</li>
+	 *   <li>{@link #FLAG_URGENT}</li>
+	 * </ul>
+	 * @param callback Call-back to receive thumbnail.
+	 * @return Handle to loading, or Null if thumbnail is provided from cache immediately or fail to load.
+	 */
+	public Handle loadThumbnail(Media media, int width, int height, int flags, Callback callback)
+	{
+		// check parameters
+		if(media == null || callback == null)
+			return null;
+		ThumbnailKey key = createKey(media, width, height);
+		if(key == null)
+			return null;
+		
+		// use cached thumbnail
+		Bitmap thumbnail = m_Cache.get(key);
+		if(thumbnail != null)
+		{
+			++m_CacheHitCount;
+			callback.onThumbnailLoaded(null, media, thumbnail, true);
+			return null;
+		}
+		
+		// join existing request
+		ThumbnailHandle handle = new ThumbnailHandle(media, callback);
+		ThumbnailRequest request = m_Requests.get(key);
+		if(request != null)
+		{
+			request.clients.add(handle);
+			handle.request = request;
+			this.upgradeRequest(request, flags);
+			if(request.smallThumbnail != null)
+				callback.onThumbnailLoaded(handle, media, request.smallThumbnail, false);
+			return handle;
+		}
+		
+		// create request
+		request = new ThumbnailRequest(key, media, flags);
+		request.clients.add(handle);
+		handle.request = request;
+		m_Requests.put(key, request);
+		
+		// read from disk cache before decoding, embedded thumbnail is decoded only if reading takes too long
+		request.diskCacheKey = this.createDiskCacheKey(media, width, height);
+		if(request.diskCacheKey != null)
+		{
+			this.readDiskCache(request);
+			if((request.flags & FLAG_FULL_THUMBNAIL_ONLY) == 0)
+				GalleryApplication.current().getHandler().postDelayed(request.startSmallDecodingRunnable, DELAY_SMALL_DECODING_WHILE_READING_DISK_CACHE);
+			return handle;
+		}
+		
+		// start decoding
+		if(!this.startDecoding(request))
+		{
+			m_Requests.remove(key);
+			return null;
+		}
+		return handle;
+	}
+	
+	
+	// Called when thumbnail read from disk cache.
+	private void onDiskCacheRead(ThumbnailRequest request, Bitmap bitmap)
+	{
+		// check state
+		request.isReadingDiskCache = false;
+		if(m_Requests.get(request.key) != request)
+			return;
+		
+		// start decoding
+		GalleryApplication.current().getHandler().removeCallbacks(request.startSmallDecodingRunnable);
+		if(bitmap == null)
+		{
+			if(!this.startDecoding(request))
+				this.completeRequest(request, null);
+			return;
+		}
+		
+		// complete
+		++m_DiskCacheHitCount;
+		m_Cache.put(request.key, bitmap);
+		this.completeRequest(request, bitmap);
+	}
+	
+	
+	// Called when embedded thumbnail decoded.
+	private void onSmallThumbnailDecoded(ThumbnailRequest request, Handle handle, Bitmap bitmap)
+	{
+		// check state
+		if(handle != request.smallDecodeHandle)
+			return;
+		request.smallDecodeHandle = null;
+		if(bitmap == null || m_Requests.get(request.key) != request)
+			return;
+		
+		// notify clients
+		request.smallThumbnail = bitmap;
+		ThumbnailHandle[] clients = request.clients.toArray(new ThumbnailHandle[request.clients.size()]);
+		for(int i = 0 ; i < clients.length ; ++i)
+		{
+			if(clients[i].request == request)
+				clients[i].callback.onThumbnailLoaded(clients[i], clients[i].media, bitmap, false);
+		}
+	}
+	
+	
+	// Called when full thumbnail decoded.
+	private void onThumbnailDecoded(ThumbnailRequest request, Handle handle, Bitmap bitmap)
+	{
+		// check state
+		if(handle != request.decodeHandle)
+			return;
+		request.decodeHandle = null;
+		++m_CompletedDecodeCount;
+		if(bitmap != null)
+		{
+			m_Cache.put(request.key, bitmap);
+			if(request.diskCacheKey != null)
+				this.writeDiskCache(request.diskCacheKey, bitmap);
+		}
+		else
+			Log.w(m_Name, "onThumbnailDecoded() - Fail to decode ", request.key.source);
+		
+		// complete
+		this.completeRequest(request, bitmap);
+	}
+	
+	
+	// Read thumbnail from disk cache in background.
+	private void readDiskCache(final ThumbnailRequest request)
+	{
+		final Handler handler = GalleryApplication.current().getHandler();
+		request.isReadingDiskCache = true;
+		this.getDiskCacheExecutor().execute(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				if(request.isCancelled)
+					return;
+				DiskBitmapCache diskCache = getDiskCache();
+				final Bitmap bitmap = (diskCache != null ? diskCache.get(request.diskCacheKey) : null);
+				handler.post(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						onDiskCacheRead(request, bitmap);
+					}
+				});
+			}
+		});
+	}
+	
+	
+	// Start decoding thumbnail, embedded thumbnail is decoded before full thumbnails of other media.
+	private boolean startDecoding(ThumbnailRequest request)
+	{
+		boolean isUrgent = ((request.flags & FLAG_URGENT) != 0);
+		this.startSmallDecoding(request);
+		request.decodeHandle = this.decode(m_BitmapPool, request.media, request.key, BitmapPool.FLAG_ASYNC | (isUrgent && request.smallDecodeHandle == null ? BitmapPool.FLAG_URGENT : 0), request.decodeCallback);
+		if(request.decodeHandle == null)
+		{
+			Log.w(m_Name, "startDecoding() - Fail to start decoding ", request.key.source);
+			request.smallDecodeHandle = Handle.close(request.smallDecodeHandle);
+			return false;
+		}
+		return true;
+	}
+	
+	
+	// Start decoding embedded thumbnail if it is needed and not decoded yet.
+	private void startSmallDecoding(ThumbnailRequest request)
+	{
+		if((request.flags & FLAG_FULL_THUMBNAIL_ONLY) != 0 || request.smallThumbnail != null || request.smallDecodeHandle != null)
+			return;
+		boolean isUrgent = ((request.flags & FLAG_URGENT) != 0);
+		request.smallDecodeHandle = this.decode(m_SmallBitmapPool, request.media, request.key, BitmapPool.FLAG_ASYNC | (isUrgent ? BitmapPool.FLAG_URGENT : 0), request.smallDecodeCallback);
+	}
+	
+	
+	// Upgrade shared request for client which needs embedded thumbnail or urgent loading.
+	private void upgradeRequest(ThumbnailRequest request, int flags)
+	{
+		// merge flags
+		int prevFlags = request.flags;
+		if((flags & FLAG_URGENT) != 0)
+			request.flags |= FLAG_URGENT;
+		if((flags & FLAG_FULL_THUMBNAIL_ONLY) == 0)
+			request.flags &= ~FLAG_FULL_THUMBNAIL_ONLY;
+		if(request.flags == prevFlags)
+			return;
+		boolean isUrgent = ((request.flags & FLAG_URGENT) != 0);
+		boolean isUrgentChanged = (isUrgent && (prevFlags & FLAG_URGENT) == 0);
+		
+		// start or re-queue decoding embedded thumbnail, it will be started later if disk cache is still being read
+		if(request.smallDecodeHandle == null)
+		{
+			if(!request.isReadingDiskCache)
+				this.startSmallDecoding(request);
+			else if((request.flags & FLAG_FULL_THUMBNAIL_ONLY) == 0 && (prevFlags & FLAG_FULL_THUMBNAIL_ONLY) != 0)
+				GalleryApplication.current().getHandler().postDelayed(request.startSmallDecodingRunnable, DELAY_SMALL_DECODING_WHILE_READING_DISK_CACHE);
+		}
+		else if(isUrgentChanged)
+		{
+			Handle smallDecodeHandle = this.decode(m_SmallBitmapPool, request.media, request.key, BitmapPool.FLAG_ASYNC | (isUrgent ? BitmapPool.FLAG_URGENT : 0), request.smallDecodeCallback);
+			if(smallDecodeHandle != null)
+			{
+				Handle.close(request.smallDecodeHandle);
+				request.smallDecodeHandle = smallDecodeHandle;
+			}
+		}
+		
+		// re-queue decoding full thumbnail, new flags will be applied when starting decoding after reading disk cache
+		if(isUrgentChanged && request.decodeHandle != null)
+		{
+			Handle decodeHandle = this.decode(m_BitmapPool, request.media, request.key, BitmapPool.FLAG_ASYNC | BitmapPool.FLAG_URGENT, request.decodeCallback);
+			if(decodeHandle != null)
+			{
+				Handle.close(request.decodeHandle);
+				request.decodeHandle = decodeHandle;
+			}
+		}
+	}
+	
+	
+	// Write thumbnail to disk cache in background.
+	private void writeDiskCache(final String diskCacheKey, final Bitmap bitmap)
+	{
+		this.getDiskCacheExecutor().execute(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				DiskBitmapCache diskCache = getDiskCache();
+				if(diskCache != null)
+					diskCache.put(diskCacheKey, bitmap);
+			}
+		});
+	}
+}
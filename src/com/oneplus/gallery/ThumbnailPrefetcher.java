@@ -0,0 +1,203 @@
+package com.oneplus.gallery;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+
+import com.oneplus.base.Handle;
+import com.oneplus.base.Log;
+import com.oneplus.gallery.media.Media;
+import com.oneplus.gallery.media.MediaList;
+
+import android.graphics.Bitmap;
+
+/**
+ * Prefetches full thumbnails of media which are going to be scrolled into screen. Thumbnails of rows ahead of scrolling direction will be loaded with low priority directly from media list, and loading of rows behind will be cancelled.
+ */
+public final class ThumbnailPrefetcher
+{
+	/**
+	 * Default number of rows to prefetch.
+	 */
+	public static final int DEFAULT_PREFETCH_ROW_COUNT = 4;
+	
+	
+	// Constants.
+	private static final int BYTES_PER_PIXEL = 4;
+	
+	
+	// Fields.
+	private long m_CompletedCount;
+	private int m_Direction = 1;
+	private int m_FirstVisibleIndex = -1;
+	private final ThumbnailLoader m_Loader;
+	private MediaList m_MediaList;
+	private final String m_Name;
+	private final HashMap<Media, Handle> m_PrefetchHandles = new HashMap<>();
+	private long m_PrefetchCount;
+	private final int m_PrefetchRowCount;
+	private final int m_ThumbnailHeight;
+	private final int m_ThumbnailWidth;
+	private final ThumbnailLoader.Callback m_ThumbnailCallback = new ThumbnailLoader.Callback()
+	{
+		@Override
+		public void onThumbnailLoaded(Handle handle, Media media, Bitmap thumbnail, boolean isFullThumbnail)
+		{
+			if(isFullThumbnail && handle != null && m_PrefetchHandles.get(media) == handle)
+			{
+				m_PrefetchHandles.remove(media);
+				++m_CompletedCount;
+			}
+		}
+	};
+	private int m_VisibleCount;
+	
+	
+	/**
+	 * Initialize new ThumbnailPrefetcher instance.
+	 * @param name Name for logging.
+	 * @param loader Thumbnail loader.
+	 * @param thumbnailWidth Width of thumbnail.
+	 * @param thumbnailHeight Height of thumbnail.
+	 * @param prefetchRowCount Maximum number of rows to prefetch.
+	 */
+	public ThumbnailPrefetcher(String name, ThumbnailLoader loader, int thumbnailWidth, int thumbnailHeight, int prefetchRowCount)
+	{
+		if(loader == null)
+			throw new IllegalArgumentException("No thumbnail loader");
+		if(prefetchRowCount < 0)
+			throw new IllegalArgumentException("Invalid row count : " + prefetchRowCount);
+		m_Name = name;
+		m_Loader = loader;
+		m_ThumbnailWidth = thumbnailWidth;
+		m_ThumbnailHeight = thumbnailHeight;
+		m_PrefetchRowCount = prefetchRowCount;
+	}
+	
+	
+	/**
+	 * Cancel all prefetching and reset scrolling state.
+	 */
+	public void cancel()
+	{
+		this.cancelPrefetching(null);
+		m_MediaList = null;
+		m_FirstVisibleIndex = -1;
+		m_VisibleCount = 0;
+	}
+	
+	
+	// Cancel prefetching of media which are not in given set.
+	private void cancelPrefetching(HashSet<Media> targetMedia)
+	{
+		Iterator<Map.Entry<Media, Handle>> iterator = m_PrefetchHandles.entrySet().iterator();
+		while(iterator.hasNext())
+		{
+			Map.Entry<Media, Handle> entry = iterator.next();
+			if(targetMedia != null && targetMedia.contains(entry.getKey()))
+				continue;
+			iterator.remove();
+			Handle.close(entry.getValue());
+		}
+	}
+	
+	
+	/**
+	 * Get number of prefetching which have been completed.
+	 * @return Number of completed prefetching.
+	 */
+	public long getCompletedCount()
+	{
+		return m_CompletedCount;
+	}
+	
+	
+	/**
+	 * Get number of prefetching which have been started.
+	 * @return Number of started prefetching.
+	 */
+	public long getPrefetchCount()
+	{
+		return m_PrefetchCount;
+	}
+	
+	
+	// Get readable string.
+	@Override
+	public String toString()
+	{
+		return ("[" + m_Name + ", Prefetched = " + m_PrefetchCount + ", Completed = " + m_CompletedCount + ", Pending = " + m_PrefetchHandles.size() + "]");
+	}
+	
+	
+	/**
+	 * Update prefetching according to current scrolling position. This method should be called in main thread.
+	 * @param mediaList Media list.
+	 * @param firstVisibleIndex Index of first visible media in list.
+	 * @param visibleCount Number of visible media.
+	 * @param columnCount Number of media in each row.
+	 */
+	public void update(MediaList mediaList, int firstVisibleIndex, int visibleCount, int columnCount)
+	{
+		// check scrolling position
+		if(mediaList == null || visibleCount <= 0 || columnCount <= 0)
+		{
+			this.cancel();
+			return;
+		}
+		if(mediaList != m_MediaList)
+		{
+			this.cancel();
+			m_MediaList = mediaList;
+		}
+		else if(firstVisibleIndex == m_FirstVisibleIndex && visibleCount == m_VisibleCount)
+			return;
+		if(m_FirstVisibleIndex >= 0 && firstVisibleIndex != m_FirstVisibleIndex)
+			m_Direction = (firstVisibleIndex > m_FirstVisibleIndex ? 1 : -1);
+		m_FirstVisibleIndex = firstVisibleIndex;
+		m_VisibleCount = visibleCount;
+		
+		// keep prefetched thumbnails and visible thumbnails within cache budget
+		int thumbnailSize = (m_ThumbnailWidth * m_ThumbnailHeight * BYTES_PER_PIXEL);
+		int maxCount = Math.min(m_PrefetchRowCount * columnCount, (thumbnailSize > 0 ? (m_Loader.getCacheCapacity() / thumbnailSize) - visibleCount : 0));
+		if(maxCount <= 0)
+		{
+			this.cancelPrefetching(null);
+			return;
+		}
+		
+		// collect media ahead of scrolling direction, nearest first
+		int listSize = mediaList.size();
+		HashSet<Media> targetMedia = new HashSet<>();
+		Media[] mediaToPrefetch = new Media[maxCount];
+		int mediaCount = 0;
+		for(int i = 0 ; i < maxCount ; ++i)
+		{
+			int index = (m_Direction > 0 ? firstVisibleIndex + visibleCount + i : firstVisibleIndex - 1 - i);
+			if(index < 0 || index >= listSize)
+				break;
+			Media media = mediaList.get(index);
+			if(media != null && targetMedia.add(media))
+				mediaToPrefetch[mediaCount++] = media;
+		}
+		
+		// cancel prefetching behind scrolling direction
+		this.cancelPrefetching(targetMedia);
+		
+		// start prefetching
+		for(int i = 0 ; i < mediaCount ; ++i)
+		{
+			Media media = mediaToPrefetch[i];
+			if(m_PrefetchHandles.containsKey(media) || m_Loader.getCachedThumbnail(media, m_ThumbnailWidth, m_ThumbnailHeight) != null)
+				continue;
+			Handle handle = m_Loader.loadThumbnail(media, m_ThumbnailWidth, m_ThumbnailHeight, ThumbnailLoader.FLAG_FULL_THUMBNAIL_ONLY, m_ThumbnailCallback);
+			if(Handle.isValid(handle))
+			{
+				m_PrefetchHandles.put(media, handle);
+				++m_PrefetchCount;
+			}
+		}
+		Log.v(m_Name, "update() - Prefetching ", m_PrefetchHandles.size(), " thumbnails, direction : ", m_Direction);
+	}
+}
@@ -0,0 +1,202 @@
+package com.oneplus.gallery.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import com.oneplus.base.Log;
+
+import android.graphics.Bitmap;
+
+/**
+ * Persistent bitmap cache based-on {@link DiskLruCache}. Bitmaps are stored as raw {@link Bitmap.Config#RGB_565} pixels, so they can be restored without decoding and each entry takes half size of {@link Bitmap.Config#ARGB_8888} pixels.
+ */
+public final class DiskBitmapCache implements Closeable
+{
+	// Constants.
+	private static final String TAG = "DiskBitmapCache";
+	private static final int APP_VERSION = 3;
+	private static final int BYTES_PER_PIXEL = 2;
+	private static final int IO_BUFFER_SIZE = 8 << 10;
+	private static final int MAGIC = 0x4F504243;
+	
+	
+	// Fields.
+	private final DiskLruCache m_Cache;
+	private final int m_MaxBitmapSize;
+	
+	
+	// Constructor.
+	private DiskBitmapCache(DiskLruCache cache, int maxBitmapSize)
+	{
+		m_Cache = cache;
+		m_MaxBitmapSize = maxBitmapSize;
+	}
+	
+	
+	/**
+	 * Close cache.
+	 */
+	@Override
+	public void close()
+	{
+		try
+		{
+			m_Cache.close();
+		}
+		catch(IOException ex)
+		{
+			Log.e(TAG, "close() - Fail to close cache", ex);
+		}
+	}
+	
+	
+	/**
+	 * Get cached bitmap. This method will perform I/O, so it should not be called in main thread.
+	 * @param key Key of bitmap, which cannot contain spaces or new lines.
+	 * @return Cached bitmap, or Null if bitmap is not cached.
+	 */
+	public Bitmap get(String key)
+	{
+		DiskLruCache.Snapshot snapshot = null;
+		try
+		{
+			// get entry
+			snapshot = m_Cache.get(key);
+			if(snapshot == null)
+				return null;
+			
+			// read header
+			DataInputStream stream = new DataInputStream(new BufferedInputStream(snapshot.getInputStream(0), IO_BUFFER_SIZE));
+			if(stream.readInt() != MAGIC)
+			{
+				Log.w(TAG, "get() - Invalid entry : ", key);
+				m_Cache.remove(key);
+				return null;
+			}
+			int width = stream.readInt();
+			int height = stream.readInt();
+			if(width <= 0 || height <= 0 || width > m_MaxBitmapSize || height > m_MaxBitmapSize)
+			{
+				Log.w(TAG, "get() - Invalid size in entry : ", key);
+				m_Cache.remove(key);
+				return null;
+			}
+			
+			// read pixels
+			byte[] pixels = new byte[width * height * BYTES_PER_PIXEL];
+			stream.readFully(pixels);
+			Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.RGB_565);
+			bitmap.copyPixelsFromBuffer(ByteBuffer.wrap(pixels));
+			return bitmap;
+		}
+		catch(Throwable ex)
+		{
+			Log.e(TAG, "get() - Fail to read entry : " + key, ex);
+			return null;
+		}
+		finally
+		{
+			if(snapshot != null)
+				snapshot.close();
+		}
+	}
+	
+	
+	/**
+	 * Open cache in given directory. This method will perform I/O, so it should not be called in main thread.
+	 * @param directory Directory which is exclusive to the cache.
+	 * @param capacity Capacity in bytes.
+	 * @param maxBitmapSize Maximum width and height of bitmap in pixels, larger bitmaps will not be cached.
+	 * @return Opened cache, or Null if fail to open.
+	 */
+	public static DiskBitmapCache open(File directory, long capacity, int maxBitmapSize)
+	{
+		if(maxBitmapSize <= 0)
+			throw new IllegalArgumentException("Invalid maximum bitmap size : " + maxBitmapSize);
+		try
+		{
+			return new DiskBitmapCache(DiskLruCache.open(directory, APP_VERSION, 1, capacity), maxBitmapSize);
+		}
+		catch(Throwable ex)
+		{
+			Log.e(TAG, "open() - Fail to open cache in " + directory, ex);
+			return null;
+		}
+	}
+	
+	
+	/**
+	 * Put bitmap to cache. This method will perform I/O, so it should not be called in main thread.
+	 * @param key Key of bitmap, which cannot contain spaces or new lines.
+	 * @param bitmap Bitmap to put, it will be converted to {@link Bitmap.Config#RGB_565} if needed.
+	 * @return True if bitmap is put to cache.
+	 */
+	public boolean put(String key, Bitmap bitmap)
+	{
+		// check bitmap
+		if(bitmap == null || bitmap.isRecycled())
+			return false;
+		if(bitmap.getWidth() > m_MaxBitmapSize || bitmap.getHeight() > m_MaxBitmapSize)
+			return false;
+		
+		// copy pixels
+		Bitmap pixelsBitmap = bitmap;
+		if(bitmap.getConfig() != Bitmap.Config.RGB_565)
+		{
+			pixelsBitmap = bitmap.copy(Bitmap.Config.RGB_565, false);
+			if(pixelsBitmap == null)
+				return false;
+		}
+		ByteBuffer pixels = ByteBuffer.allocate(pixelsBitmap.getByteCount());
+		pixelsBitmap.copyPixelsToBuffer(pixels);
+		if(pixelsBitmap != bitmap)
+			pixelsBitmap.recycle();
+		
+		// write entry
+		DiskLruCache.Editor editor = null;
+		try
+		{
+			editor = m_Cache.edit(key);
+			if(editor == null)
+				return false;
+			DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(editor.newOutputStream(0), IO_BUFFER_SIZE));
+			try
+			{
+				stream.writeInt(MAGIC);
+				stream.writeInt(bitmap.getWidth());
+				stream.writeInt(bitmap.getHeight());
+				stream.write(pixels.array(), 0, pixels.position());
+			}
+			finally
+			{
+				stream.close();
+			}
+			editor.commit();
+			editor = null;
+			return true;
+		}
+		catch(Throwable ex)
+		{
+			Log.e(TAG, "put() - Fail to write entry : " + key, ex);
+			return false;
+		}
+		finally
+		{
+			if(editor != null)
+			{
+				try
+				{
+					editor.abort();
+				}
+				catch(IOException ex)
+				{}
+			}
+		}
+	}
+}
@@ -0,0 +1,417 @@
+package com.oneplus.gallery.cache;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import com.oneplus.base.Log;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+
+/**
+ * Memory-mapped cache file of fixed-size {@link Bitmap.Config#RGB_565} thumbnail slots. Cached thumbnail can be copied into reusable bitmap directly without opening file or decoding, and each update only touches its own slot.
+ */
+public final class ThumbnailAtlas implements Closeable
+{
+	// Constants.
+	private static final String TAG = "ThumbnailAtlas";
+	private static final int BYTES_PER_PIXEL = 2;
+	private static final int HEADER_SIZE = 20;
+	private static final int INDEX_ENTRY_SIZE = 24;
+	private static final int MAGIC = 0x4F505441;
+	private static final int VERSION = 1;
+	
+	
+	// Fields.
+	private final MappedByteBuffer m_Buffer;
+	private Canvas m_Canvas;
+	private Bitmap m_ConvertingBitmap;
+	private final long[] m_DateModifiedTimes;
+	private final RandomAccessFile m_File;
+	private long m_HitCount;
+	private final long[] m_Ids;
+	private boolean m_IsClosed;
+	private long m_MissCount;
+	private Paint m_Paint;
+	private final int m_SlotCount;
+	private final int m_SlotHeight;
+	private final int m_SlotSize;
+	private final int m_SlotWidth;
+	private final long[] m_TakenTimes;
+	
+	
+	// Constructor.
+	private ThumbnailAtlas(RandomAccessFile file, MappedByteBuffer buffer, int slotCount, int slotWidth, int slotHeight)
+	{
+		m_File = file;
+		m_Buffer = buffer;
+		m_SlotCount = slotCount;
+		m_SlotWidth = slotWidth;
+		m_SlotHeight = slotHeight;
+		m_SlotSize = (slotWidth * slotHeight * BYTES_PER_PIXEL);
+		m_Ids = new long[slotCount];
+		m_DateModifiedTimes = new long[slotCount];
+		m_TakenTimes = new long[slotCount];
+	}
+	
+	
+	/**
+	 * Close atlas file.
+	 */
+	@Override
+	public synchronized void close()
+	{
+		if(m_IsClosed)
+			return;
+		m_IsClosed = true;
+		try
+		{
+			m_Buffer.force();
+			m_File.close();
+		}
+		catch(Throwable ex)
+		{
+			Log.e(TAG, "close() - Fail to close file", ex);
+		}
+	}
+	
+	
+	/**
+	 * Check whether thumbnail of given media is in atlas or not.
+	 * @param id Media ID.
+	 * @param dateModified Last modified time of media.
+	 * @return True if thumbnail is in atlas.
+	 */
+	public synchronized boolean contains(long id, long dateModified)
+	{
+		int slot = this.findSlot(id);
+		return (slot >= 0 && m_DateModifiedTimes[slot] == dateModified);
+	}
+	
+	
+	/**
+	 * Copy thumbnail of given media into bitmap.
+	 * @param id Media ID.
+	 * @param dateModified Last modified time of media.
+	 * @param bitmap Mutable {@link Bitmap.Config#RGB_565} bitmap with slot size to receive thumbnail.
+	 * @return True if thumbnail is copied, False if thumbnail is not in atlas.
+	 */
+	public synchronized boolean copyTo(long id, long dateModified, Bitmap bitmap)
+	{
+		// check parameter
+		if(bitmap == null || bitmap.getConfig() != Bitmap.Config.RGB_565 || bitmap.getWidth() != m_SlotWidth || bitmap.getHeight() != m_SlotHeight)
+			throw new IllegalArgumentException("Invalid bitmap");
+		
+		// find slot
+		int slot = this.findSlot(id);
+		if(slot < 0 || m_DateModifiedTimes[slot] != dateModified)
+		{
+			++m_MissCount;
+			return false;
+		}
+		
+		// copy pixels
+		ByteBuffer buffer = m_Buffer.duplicate();
+		int offset = this.getSlotOffset(slot);
+		buffer.limit(offset + m_SlotSize);
+		buffer.position(offset);
+		bitmap.copyPixelsFromBuffer(buffer);
+		++m_HitCount;
+		return true;
+	}
+	
+	
+	// Find slot which contains thumbnail of given media, slot count is small so linear scan is faster than hashing boxed IDs.
+	private int findSlot(long id)
+	{
+		if(id <= 0)
+			return -1;
+		long[] ids = m_Ids;
+		for(int i = ids.length - 1 ; i >= 0 ; --i)
+		{
+			if(ids[i] == id)
+				return i;
+		}
+		return -1;
+	}
+	
+	
+	/**
+	 * Get number of thumbnails which have been copied from atlas.
+	 * @return Number of thumbnails.
+	 */
+	public synchronized long getHitCount()
+	{
+		return m_HitCount;
+	}
+	
+	
+	// Get position of index entry.
+	private static int getIndexEntryOffset(int slot)
+	{
+		return (HEADER_SIZE + slot * INDEX_ENTRY_SIZE);
+	}
+	
+	
+	/**
+	 * Get number of thumbnails which are not in atlas when copying.
+	 * @return Number of thumbnails.
+	 */
+	public synchronized long getMissCount()
+	{
+		return m_MissCount;
+	}
+	
+	
+	/**
+	 * Get number of thumbnails in atlas.
+	 * @return Number of thumbnails.
+	 */
+	public synchronized int getThumbnailCount()
+	{
+		int count = 0;
+		for(int i = m_SlotCount - 1 ; i >= 0 ; --i)
+		{
+			if(m_Ids[i] != 0)
+				++count;
+		}
+		return count;
+	}
+	
+	
+	/**
+	 * Get number of slots.
+	 * @return Number of slots.
+	 */
+	public int getSlotCount()
+	{
+		return m_SlotCount;
+	}
+	
+	
+	/**
+	 * Get height of each slot.
+	 * @return Height in pixels.
+	 */
+	public int getSlotHeight()
+	{
+		return m_SlotHeight;
+	}
+	
+	
+	// Get position of slot pixels.
+	private int getSlotOffset(int slot)
+	{
+		return (getIndexEntryOffset(m_SlotCount) + slot * m_SlotSize);
+	}
+	
+	
+	/**
+	 * Get width of each slot.
+	 * @return Width in pixels.
+	 */
+	public int getSlotWidth()
+	{
+		return m_SlotWidth;
+	}
+	
+	
+	/**
+	 * Open atlas file, file will be re-created if it doesn't match given slot parameters. This method will perform I/O, so it should not be called in main thread.
+	 * @param file Atlas file.
+	 * @param slotCount Number of slots.
+	 * @param slotWidth Width of each slot in pixels.
+	 * @param slotHeight Height of each slot in pixels.
+	 * @return Opened atlas, or Null if fail to open.
+	 */
+	public static ThumbnailAtlas open(File file, int slotCount, int slotWidth, int slotHeight)
+	{
+		// check parameters
+		if(slotCount <= 0 || slotWidth <= 0 || slotHeight <= 0)
+			throw new IllegalArgumentException("Invalid slot parameters");
+		long fileSize = (getIndexEntryOffset(slotCount) + (long)slotCount * slotWidth * slotHeight * BYTES_PER_PIXEL);
+		if(fileSize > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Atlas is too large");
+		
+		RandomAccessFile randomAccessFile = null;
+		try
+		{
+			// map file
+			long time = System.currentTimeMillis();
+			randomAccessFile = new RandomAccessFile(file, "rw");
+			boolean isNewFile = (randomAccessFile.length() != fileSize);
+			if(isNewFile)
+				randomAccessFile.setLength(fileSize);
+			MappedByteBuffer buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+			ThumbnailAtlas atlas = new ThumbnailAtlas(randomAccessFile, buffer, slotCount, slotWidth, slotHeight);
+			
+			// check header
+			if(!isNewFile && (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || buffer.getInt(8) != slotCount || buffer.getInt(12) != slotWidth || buffer.getInt(16) != slotHeight))
+				isNewFile = true;
+			
+			// reset or load index
+			if(isNewFile)
+			{
+				for(int i = 0 ; i < slotCount ; ++i)
+					buffer.putLong(getIndexEntryOffset(i), 0);
+				buffer.putInt(0, MAGIC);
+				buffer.putInt(4, VERSION);
+				buffer.putInt(8, slotCount);
+				buffer.putInt(12, slotWidth);
+				buffer.putInt(16, slotHeight);
+			}
+			else
+				atlas.loadIndex();
+			Log.v(TAG, "open() - Open ", file, " with ", atlas.getThumbnailCount(), " thumbnails, take ", (System.currentTimeMillis() - time), " ms");
+			return atlas;
+		}
+		catch(Throwable ex)
+		{
+			Log.e(TAG, "open() - Fail to open " + file, ex);
+			if(randomAccessFile != null)
+			{
+				try
+				{
+					randomAccessFile.close();
+				}
+				catch(IOException ex2)
+				{}
+			}
+			return null;
+		}
+	}
+	
+	
+	// Load index entries from file.
+	private void loadIndex()
+	{
+		for(int i = 0 ; i < m_SlotCount ; ++i)
+		{
+			int offset = getIndexEntryOffset(i);
+			long id = m_Buffer.getLong(offset);
+			if(id <= 0 || this.findSlot(id) >= 0)
+				continue;
+			m_Ids[i] = id;
+			m_DateModifiedTimes[i] = m_Buffer.getLong(offset + 8);
+			m_TakenTimes[i] = m_Buffer.getLong(offset + 16);
+		}
+	}
+	
+	
+	/**
+	 * Put thumbnail of given media to atlas. Thumbnail of the oldest media will be replaced if all slots are used.
+	 * @param id Media ID.
+	 * @param dateModified Last modified time of media.
+	 * @param takenTime Taken time of media.
+	 * @param thumbnail Thumbnail, it will be scaled and converted if it doesn't match slot size and format.
+	 * @return True if thumbnail is put to atlas, False if media is older than all media in atlas.
+	 */
+	public synchronized boolean put(long id, long dateModified, long takenTime, Bitmap thumbnail)
+	{
+		// check state
+		if(m_IsClosed || id <= 0 || thumbnail == null || thumbnail.isRecycled())
+			return false;
+		
+		// select slot
+		int slot = this.findSlot(id);
+		if(slot < 0)
+		{
+			for(int i = 0 ; i < m_SlotCount ; ++i)
+			{
+				if(m_Ids[i] == 0)
+				{
+					slot = i;
+					break;
+				}
+				if(slot < 0 || m_TakenTimes[i] < m_TakenTimes[slot])
+					slot = i;
+			}
+			if(m_Ids[slot] != 0 && m_TakenTimes[slot] > takenTime)
+				return false;
+		}
+		
+		// convert thumbnail
+		Bitmap bitmap = thumbnail;
+		if(thumbnail.getConfig() != Bitmap.Config.RGB_565 || thumbnail.getWidth() != m_SlotWidth || thumbnail.getHeight() != m_SlotHeight)
+		{
+			if(m_ConvertingBitmap == null)
+			{
+				m_ConvertingBitmap = Bitmap.createBitmap(m_SlotWidth, m_SlotHeight, Bitmap.Config.RGB_565);
+				m_Canvas = new Canvas(m_ConvertingBitmap);
+				m_Paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+			}
+			m_Canvas.drawBitmap(thumbnail, null, new Rect(0, 0, m_SlotWidth, m_SlotHeight), m_Paint);
+			bitmap = m_ConvertingBitmap;
+		}
+		
+		// invalidate index entry before writing pixels
+		int indexOffset = getIndexEntryOffset(slot);
+		m_Buffer.putLong(indexOffset, 0);
+		m_Ids[slot] = 0;
+		
+		// write pixels
+		ByteBuffer buffer = m_Buffer.duplicate();
+		int offset = this.getSlotOffset(slot);
+		buffer.limit(offset + m_SlotSize);
+		buffer.position(offset);
+		bitmap.copyPixelsToBuffer(buffer);
+		
+		// write index entry
+		m_Buffer.putLong(indexOffset + 8, dateModified);
+		m_Buffer.putLong(indexOffset + 16, takenTime);
+		m_Buffer.putLong(indexOffset, id);
+		m_Ids[slot] = id;
+		m_DateModifiedTimes[slot] = dateModified;
+		m_TakenTimes[slot] = takenTime;
+		return true;
+	}
+	
+	
+	/**
+	 * Remove thumbnail of given media.
+	 * @param id Media ID.
+	 * @return True if thumbnail removed.
+	 */
+	public synchronized boolean remove(long id)
+	{
+		int slot = this.findSlot(id);
+		if(slot < 0)
+			return false;
+		m_Ids[slot] = 0;
+		if(!m_IsClosed)
+			m_Buffer.putLong(getIndexEntryOffset(slot), 0);
+		return true;
+	}
+	
+	
+	/**
+	 * Remove thumbnails of given media.
+	 * @param ids Media IDs to remove.
+	 * @return Number of removed thumbnails.
+	 */
+	public synchronized int removeAll(long[] ids)
+	{
+		int count = 0;
+		for(int i = ids.length - 1 ; i >= 0 ; --i)
+		{
+			if(this.remove(ids[i]))
+				++count;
+		}
+		return count;
+	}
+	
+	
+	// Get readable string.
+	@Override
+	public synchronized String toString()
+	{
+		return ("[" + TAG + ", Slots = " + this.getThumbnailCount() + "/" + m_SlotCount + ", Hit = " + m_HitCount + ", Miss = " + m_MissCount + "]");
+	}
+}
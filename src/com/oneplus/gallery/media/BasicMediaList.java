@@ -1,21 +1,39 @@
 package com.oneplus.gallery.media;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
+import com.oneplus.base.EventArgs;
 import com.oneplus.base.ListHandlerBaseObject;
 import com.oneplus.gallery.ListChangeEventArgs;
 
 /**
  * Basic implementation of {@link MediaList}.
+ * Media are kept in chunked storage, so inserting or removing media at arbitrary position doesn't shift the whole list.
  */
 public abstract class BasicMediaList extends ListHandlerBaseObject<Media> implements MediaList
 {
 	// Fields.
+	private int m_BatchUpdateDepth;
 	private final MediaComparator m_Comparator;
-	private final List<Media> m_List = new ArrayList<Media>();
-	private final int m_MaxMediaCount;
+	private final ChunkedList<Media> m_List = new ChunkedList<>();
+	private volatile int m_MaxMediaCount;
+	
+	
+	/**
+	 * Filter to select media in list.
+	 */
+	protected interface MediaFilter
+	{
+		/**
+		 * Check whether given media matches filter or not.
+		 * @param media Media to check.
+		 * @return True if media matches filter.
+		 */
+		boolean matches(Media media);
+	}
 	
 	
 	/**
@@ -38,7 +56,7 @@ public abstract class BasicMediaList extends ListHandlerBaseObject<Media> implem
 	protected int addMedia(Media media)
 	{
 		this.verifyAccess();
-		int index = Collections.binarySearch(m_List, media, m_Comparator);
+		int index = m_List.binarySearch(media, m_Comparator);
 		if(index < 0)
 		{
 			// remove extra media
@@ -75,143 +93,112 @@ public abstract class BasicMediaList extends ListHandlerBaseObject<Media> implem
 		if(mediaList == null || mediaList.isEmpty())
 			return;
 		
-		// add directly
-		if(this.addMediaDirectly(mediaList, isSorted))
-			return;
+		// sort media
+		if(!isSorted)
+		{
+			mediaList = new ArrayList<>(mediaList);
+			Collections.sort(mediaList, m_Comparator);
+		}
 		
-		// add media one-by-one
-		ListChangeEventArgs e;
-		int startIndex = -1, endIndex = -1;
+		// check whether all media should be added to head or tail of current list
+		int currentCount = m_List.size();
+		int searchMode;
+		if(currentCount == 0 || m_Comparator.compare(m_List.get(currentCount - 1), mediaList.get(0)) < 0)
+			searchMode = 1;
+		else if(m_Comparator.compare(mediaList.get(mediaList.size() - 1), m_List.get(0)) < 0)
+			searchMode = -1;
+		else
+			searchMode = 0;
+		
+		// merge sorted media with current list to find insertion position of each run
+		List<List<Media>> runs = new ArrayList<>();
+		List<Integer> runIndices = new ArrayList<>();
+		List<Media> run = null;
+		int runIndex = -1;
+		int addedCount = 0;
+		int listIndex = (searchMode > 0 ? currentCount : 0);
+		Media prevMedia = null;
 		for(int i = 0, count = mediaList.size() ; i < count ; ++i)
 		{
+			// skip duplicate media
 			Media media = mediaList.get(i);
-			int index = Collections.binarySearch(m_List, media, m_Comparator);
-			if(index < 0)
+			if(prevMedia != null && m_Comparator.compare(prevMedia, media) == 0)
+				continue;
+			prevMedia = media;
+			
+			// search first media in current list which is not less than given media, start from previous insertion position
+			if(searchMode == 0 && listIndex < currentCount)
 			{
-				// remove extra media
-				index = ~index;
-				if(m_MaxMediaCount >= 0 && m_List.size() >= m_MaxMediaCount)
-				{
-					if(index >= m_MaxMediaCount)
-						continue;
-					if(startIndex >= 0)
-					{
-						e = ListChangeEventArgs.obtain(startIndex, endIndex);
-						this.raise(EVENT_MEDIA_ADDED, e);
-						e.recycle();
-						startIndex = -1;
-						endIndex = -1;
-					}
-					this.removeMediaInternal(m_MaxMediaCount - 1, m_List.size() - 1);
-				}
-				
-				// add media
-				m_List.add(index, media);
-				
-				// raise event
-				if(startIndex >= 0)
-				{
-					if(index == (endIndex + 1) || index == (startIndex - 1))
-						++endIndex;
-					else
-					{
-						e = ListChangeEventArgs.obtain(startIndex, endIndex);
-						this.raise(EVENT_MEDIA_ADDED, e);
-						e.recycle();
-						startIndex = index;
-						endIndex = index;
-					}
-				}
-				else
+				int result = m_List.binarySearch(media, m_Comparator, listIndex);
+				if(result >= 0)
 				{
-					startIndex = index;
-					endIndex = index;
+					listIndex = result;
+					continue;
 				}
+				listIndex = ~result;
+			}
+			
+			// check maximum media count
+			int index = listIndex;
+			if(m_MaxMediaCount >= 0 && (index + addedCount) >= m_MaxMediaCount)
+				break;
+			
+			// add to run
+			if(run == null || index != runIndex)
+			{
+				run = new ArrayList<>();
+				runIndex = index;
+				runs.add(run);
+				runIndices.add(index);
 			}
+			run.add(media);
+			++addedCount;
+		}
+		if(addedCount == 0)
+			return;
+		
+		// start batch update
+		boolean hasExtraMedia = (m_MaxMediaCount >= 0 && (currentCount + addedCount) > m_MaxMediaCount);
+		boolean isBatchUpdate = (runs.size() > 1 || hasExtraMedia);
+		if(isBatchUpdate)
+			this.beginMediaBatchUpdate();
+		
+		// remove extra media
+		ListChangeEventArgs e;
+		if(hasExtraMedia)
+		{
+			int removingCount = (currentCount + addedCount - m_MaxMediaCount);
+			this.removeMediaInternal(currentCount - removingCount, currentCount - 1);
 		}
-		if(startIndex >= 0)
+		
+		// insert runs
+		addedCount = 0;
+		for(int i = 0, count = runs.size() ; i < count ; ++i)
 		{
-			e = ListChangeEventArgs.obtain(startIndex, endIndex);
+			run = runs.get(i);
+			int startIndex = (runIndices.get(i) + addedCount);
+			m_List.addAll(startIndex, run);
+			addedCount += run.size();
+			e = ListChangeEventArgs.obtain(startIndex, startIndex + run.size() - 1);
 			this.raise(EVENT_MEDIA_ADDED, e);
 			e.recycle();
 		}
+		
+		// complete batch update
+		if(isBatchUpdate)
+			this.endMediaBatchUpdate();
 	}
 	
 	
-	// Add media directly to list.
-	private boolean addMediaDirectly(List<Media> mediaList, boolean isSorted)
+	/**
+	 * Start batch update, {@link #EVENT_MEDIA_BATCH_UPDATE_STARTED} will be raised if this is the outermost batch update.
+	 * Each call must be paired with a call to {@link #endMediaBatchUpdate()}.
+	 */
+	protected final void beginMediaBatchUpdate()
 	{
-		// Initial list
-		ListChangeEventArgs e;
-		int currentCount = m_List.size();
-		if(currentCount == 0)
-		{
-			if(m_MaxMediaCount < 0 || mediaList.size() <= m_MaxMediaCount)
-			{
-				m_List.addAll(mediaList);
-				if(!isSorted)
-					Collections.sort(m_List, m_Comparator);
-			}
-			else
-			{
-				if(isSorted)
-				{
-					for(int i = 0 ; i < m_MaxMediaCount ; ++i)
-						m_List.add(mediaList.get(i));
-				}
-				else
-				{
-					m_List.addAll(mediaList);
-					Collections.sort(m_List, m_Comparator);
-					for(int i = m_List.size() - 1 ; i > m_MaxMediaCount ; --i)
-						m_List.remove(i);
-				}
-			}
-			e = ListChangeEventArgs.obtain(0, m_List.size() - 1);
-			this.raise(EVENT_MEDIA_ADDED, e);
-			e.recycle();
-			return true;
-		}
-		
-		// add directly to head or tail
-		if(isSorted)
-		{
-			if(m_Comparator.compare(m_List.get(currentCount - 1), mediaList.get(0)) < 0)
-			{
-				if(m_MaxMediaCount < 0 || m_MaxMediaCount >= (currentCount + mediaList.size()))
-					m_List.addAll(mediaList);
-				else if(m_MaxMediaCount == currentCount)
-					return true;
-				else
-				{
-					for(int i = 0, count = (m_MaxMediaCount - currentCount) ; i < count ; ++i)
-						m_List.add(mediaList.get(i));
-				}
-				e = ListChangeEventArgs.obtain(currentCount, m_List.size() - 1);
-				this.raise(EVENT_MEDIA_ADDED, e);
-				e.recycle();
-				return true;
-			}
-			else if(m_Comparator.compare(m_List.get(0), mediaList.get(mediaList.size() - 1)) > 0)
-			{
-				if(m_MaxMediaCount < 0 || m_MaxMediaCount >= (currentCount + mediaList.size()))
-					m_List.addAll(0, mediaList);
-				else if(m_MaxMediaCount == currentCount)
-					return true;
-				else
-				{
-					for(int i = (m_MaxMediaCount - currentCount - 1) ; i >= 0 ; --i)
-						m_List.add(0, mediaList.get(i));
-				}
-				e = ListChangeEventArgs.obtain(0, currentCount - 1);
-				this.raise(EVENT_MEDIA_ADDED, e);
-				e.recycle();
-				return true;
-			}
-		}
-		
-		// failed
-		return false;
+		this.verifyAccess();
+		if(m_BatchUpdateDepth++ == 0)
+			this.raise(EVENT_MEDIA_BATCH_UPDATE_STARTED, EventArgs.EMPTY);
 	}
 	
 	
@@ -238,13 +225,26 @@ public abstract class BasicMediaList extends ListHandlerBaseObject<Media> implem
 	{
 		if(object instanceof Media)
 		{
-			int index = Collections.binarySearch(m_List, (Media)object, m_Comparator);
+			int index = m_List.binarySearch((Media)object, m_Comparator);
 			return (index >= 0);
 		}
 		return false;
 	}
 	
 	
+	/**
+	 * Complete batch update, {@link #EVENT_MEDIA_BATCH_UPDATE_ENDED} will be raised if this is the outermost batch update.
+	 */
+	protected final void endMediaBatchUpdate()
+	{
+		this.verifyAccess();
+		if(m_BatchUpdateDepth <= 0)
+			throw new IllegalStateException("No batch update to complete");
+		if(--m_BatchUpdateDepth == 0)
+			this.raise(EVENT_MEDIA_BATCH_UPDATE_ENDED, EventArgs.EMPTY);
+	}
+	
+	
 	// Get media.
 	@Override
 	public Media get(int location)
@@ -279,13 +279,35 @@ public abstract class BasicMediaList extends ListHandlerBaseObject<Media> implem
 	{
 		if(object instanceof Media)
 		{
-			int index = Collections.binarySearch(m_List, (Media)object, m_Comparator);
+			int index = m_List.binarySearch((Media)object, m_Comparator);
 			return (index >= 0 ? index : -1);
 		}
 		return -1;
 	}
 	
 	
+	/**
+	 * Raise {@link #EVENT_MEDIA_UPDATED} if given media is contained in list.
+	 * @param media Updated media.
+	 * @return True if media is contained in list.
+	 */
+	protected boolean notifyMediaUpdated(Media media)
+	{
+		this.verifyAccess();
+		if(media == null)
+			return false;
+		int index = m_List.binarySearch(media, m_Comparator);
+		if(index >= 0 && m_List.get(index) == media)
+		{
+			ListChangeEventArgs e = ListChangeEventArgs.obtain(index);
+			this.raise(EVENT_MEDIA_UPDATED, e);
+			e.recycle();
+			return true;
+		}
+		return false;
+	}
+	
+	
 	/**
 	 * Remove media from list.
 	 * @param media Media to remove.
@@ -296,7 +318,7 @@ public abstract class BasicMediaList extends ListHandlerBaseObject<Media> implem
 		this.verifyAccess();
 		if(media == null)
 			return false;
-		int index = Collections.binarySearch(m_List, media, m_Comparator);
+		int index = m_List.binarySearch(media, m_Comparator);
 		if(index >= 0 && m_List.get(index) == media)
 		{
 			this.removeMediaInternal(index);
@@ -317,6 +339,75 @@ public abstract class BasicMediaList extends ListHandlerBaseObject<Media> implem
 	}
 	
 	
+	/**
+	 * Remove all media which match given filter. The list will be compacted in one pass and one {@link #EVENT_MEDIA_REMOVED} will be raised for each contiguous range of removed media.
+	 * @param filter Filter to select media to remove.
+	 * @return Number of removed media.
+	 */
+	protected int removeMedia(MediaFilter filter)
+	{
+		// check state
+		this.verifyAccess();
+		if(filter == null)
+			return 0;
+		
+		// find ranges to remove
+		int[] ranges = new int[16];
+		int rangeCount = 0;
+		int removedCount = 0;
+		int index = 0;
+		for(Media media : m_List)
+		{
+			if(filter.matches(media))
+			{
+				if(rangeCount > 0 && ranges[rangeCount * 2 - 1] == index)
+					ranges[rangeCount * 2 - 1] = (index + 1);
+				else
+				{
+					if(ranges.length < (rangeCount + 1) * 2)
+						ranges = Arrays.copyOf(ranges, ranges.length * 2);
+					ranges[rangeCount * 2] = index;
+					ranges[rangeCount * 2 + 1] = (index + 1);
+					++rangeCount;
+				}
+				++removedCount;
+			}
+			++index;
+		}
+		if(rangeCount == 0)
+			return 0;
+		
+		// remove media
+		m_List.removeRanges(ranges, rangeCount);
+		
+		// raise events from last range, so indices of each range are still valid when receiving event
+		if(rangeCount > 1)
+			this.beginMediaBatchUpdate();
+		for(int i = rangeCount - 1 ; i >= 0 ; --i)
+		{
+			ListChangeEventArgs e = ListChangeEventArgs.obtain(ranges[i * 2], ranges[i * 2 + 1] - 1);
+			this.raise(EVENT_MEDIA_REMOVED, e);
+			e.recycle();
+		}
+		if(rangeCount > 1)
+			this.endMediaBatchUpdate();
+		return removedCount;
+	}
+	
+	
+	/**
+	 * Remove media in given range from list.
+	 * @param startIndex Index of first media to remove.
+	 * @param endIndex Index of last media to remove.
+	 */
+	protected void removeMedia(int startIndex, int endIndex)
+	{
+		this.verifyAccess();
+		if(startIndex <= endIndex)
+			this.removeMediaInternal(startIndex, endIndex);
+	}
+	
+	
 	// Remove media from list.
 	private void removeMediaInternal(int index)
 	{
@@ -327,13 +418,29 @@ public abstract class BasicMediaList extends ListHandlerBaseObject<Media> implem
 	}
 	private void removeMediaInternal(int startIndex, int endIndex)
 	{
-		for(int i = startIndex ; i <= endIndex ; ++i)
-			m_List.remove(i);
+		m_List.subList(startIndex, endIndex + 1).clear();
 		ListChangeEventArgs e = ListChangeEventArgs.obtain(startIndex, endIndex);
 		this.raise(EVENT_MEDIA_REMOVED, e);
 		e.recycle();
 	}
-
+	
+	
+	/**
+	 * Change maximum number of media allowed in list. Media exceed the new limit will be removed.
+	 * @param maxMediaCount Maximum number of media allowed in list, negative value means unlimited.
+	 */
+	protected void setMaxMediaCount(int maxMediaCount)
+	{
+		this.verifyAccess();
+		if(maxMediaCount < 0)
+			maxMediaCount = -1;
+		if(m_MaxMediaCount == maxMediaCount)
+			return;
+		m_MaxMediaCount = maxMediaCount;
+		if(maxMediaCount >= 0 && m_List.size() > maxMediaCount)
+			this.removeMediaInternal(maxMediaCount, m_List.size() - 1);
+	}
+	
 	
 	// Get media count.
 	@Override
@@ -1,5 +1,7 @@
 package com.oneplus.gallery.media;
 
+import java.io.File;
+
 import android.os.Environment;
 import android.provider.MediaStore.Files.FileColumns;
 
@@ -12,6 +14,10 @@ import com.oneplus.gallery.R;
  */
 public class CameraRollMediaSet extends MediaStoreMediaSet
 {
+	// Constants.
+	private static final String MEDIA_SNAPSHOT_FILE_NAME = "camera_roll_snapshot";
+	
+	
 	/**
 	 * Initialize new CameraRollMediaSet instance.
 	 */
@@ -28,6 +34,16 @@ public class CameraRollMediaSet extends MediaStoreMediaSet
 	}
 	
 	
+	// Get file to persist media snapshot.
+	@Override
+	protected File getMediaSnapshotFile(MediaComparator comparator)
+	{
+		if(comparator == MediaComparator.TAKEN_TIME)
+			return new File(GalleryApplication.current().getFilesDir(), MEDIA_SNAPSHOT_FILE_NAME);
+		return null;
+	}
+	
+	
 	// Set property.
 	@Override
 	public <TValue> boolean set(PropertyKey<TValue> key, TValue value)
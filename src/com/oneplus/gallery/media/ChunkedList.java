@@ -0,0 +1,582 @@
+package com.oneplus.gallery.media;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * List which stores items in fixed-capacity chunks, so inserting or removing at arbitrary position only shifts items inside one chunk.
+ * Sizes of chunks are kept in binary indexed tree, so locating item by index and updating chunk size take O(log(chunk count)). Adjacent chunks which are both less than half full will be merged.
+ * @param <T> Type of item.
+ */
+final class ChunkedList<T> extends AbstractList<T> implements RandomAccess
+{
+	// Constants.
+	private static final int DEFAULT_CHUNK_CAPACITY = 512;
+	private static final int REMOVE_RANGES_DIRECTLY_THRESHOLD = 4;
+	
+	
+	// Fields.
+	private final int m_ChunkCapacity;
+	private final List<Chunk> m_Chunks = new ArrayList<>();
+	private int[] m_ChunkSizeTree = new int[9];
+	private boolean m_IsChunkSizeTreeValid;
+	private int m_Size;
+	
+	
+	// Chunk of items.
+	private static final class Chunk
+	{
+		public final Object[] items;
+		public int size;
+		
+		public Chunk(int capacity)
+		{
+			this.items = new Object[capacity];
+		}
+	}
+	
+	
+	/**
+	 * Initialize new ChunkedList instance.
+	 */
+	public ChunkedList()
+	{
+		this(DEFAULT_CHUNK_CAPACITY);
+	}
+	
+	
+	/**
+	 * Initialize new ChunkedList instance.
+	 * @param chunkCapacity Maximum number of items in each chunk.
+	 */
+	public ChunkedList(int chunkCapacity)
+	{
+		if(chunkCapacity < 2)
+			throw new IllegalArgumentException("Invalid chunk capacity : " + chunkCapacity);
+		m_ChunkCapacity = chunkCapacity;
+	}
+	
+	
+	// Add item.
+	@Override
+	public void add(int index, T item)
+	{
+		// check index
+		if(index < 0 || index > m_Size)
+			throw new IndexOutOfBoundsException("Index : " + index + ", size : " + m_Size);
+		
+		// insert
+		if(m_Chunks.isEmpty())
+		{
+			Chunk chunk = new Chunk(m_ChunkCapacity);
+			chunk.items[0] = item;
+			chunk.size = 1;
+			this.insertChunk(0, chunk);
+		}
+		else
+			this.insertIntoChunk(index, new Object[]{ item }, 1);
+		++m_Size;
+		++this.modCount;
+	}
+	
+	
+	// Add items.
+	@Override
+	public boolean addAll(int index, Collection<? extends T> items)
+	{
+		// check parameter
+		if(index < 0 || index > m_Size)
+			throw new IndexOutOfBoundsException("Index : " + index + ", size : " + m_Size);
+		int count = items.size();
+		if(count == 0)
+			return false;
+		Object[] array = items.toArray();
+		
+		// insert small run into existing chunk
+		if(!m_Chunks.isEmpty() && count <= (m_ChunkCapacity / 2))
+		{
+			this.insertIntoChunk(index, array, count);
+			m_Size += count;
+			++this.modCount;
+			return true;
+		}
+		
+		// split chunk at given position
+		int chunkIndex;
+		if(index == m_Size)
+			chunkIndex = m_Chunks.size();
+		else
+		{
+			chunkIndex = this.findChunk(index);
+			Chunk chunk = m_Chunks.get(chunkIndex);
+			int offset = (index - this.getChunkStartIndex(chunkIndex));
+			if(offset > 0)
+			{
+				Chunk newChunk = new Chunk(m_ChunkCapacity);
+				newChunk.size = (chunk.size - offset);
+				System.arraycopy(chunk.items, offset, newChunk.items, 0, newChunk.size);
+				Arrays.fill(chunk.items, offset, chunk.size, null);
+				chunk.size = offset;
+				++chunkIndex;
+				m_Chunks.add(chunkIndex, newChunk);
+			}
+		}
+		
+		// fill tail of previous chunk
+		int arrayIndex = 0;
+		if(chunkIndex > 0)
+		{
+			Chunk prevChunk = m_Chunks.get(chunkIndex - 1);
+			int fillCount = Math.min(m_ChunkCapacity - prevChunk.size, count);
+			System.arraycopy(array, 0, prevChunk.items, prevChunk.size, fillCount);
+			prevChunk.size += fillCount;
+			arrayIndex = fillCount;
+		}
+		
+		// create new chunks
+		List<Chunk> newChunks = new ArrayList<>();
+		while(arrayIndex < count)
+		{
+			Chunk newChunk = new Chunk(m_ChunkCapacity);
+			newChunk.size = Math.min(m_ChunkCapacity, count - arrayIndex);
+			System.arraycopy(array, arrayIndex, newChunk.items, 0, newChunk.size);
+			arrayIndex += newChunk.size;
+			newChunks.add(newChunk);
+		}
+		if(!newChunks.isEmpty())
+			m_Chunks.addAll(chunkIndex, newChunks);
+		
+		// merge under-filled chunks around inserted items
+		this.mergeChunks(chunkIndex + newChunks.size() - 1);
+		this.mergeChunks(chunkIndex - 1);
+		
+		// complete
+		m_Size += count;
+		m_IsChunkSizeTreeValid = false;
+		++this.modCount;
+		return true;
+	}
+	
+	
+	/**
+	 * Search item by binary search.
+	 * @param item Item to search.
+	 * @param comparator Comparator which defines order of items in this list.
+	 * @return Index of item, or (-(insertion point) - 1) if item is not contained in list.
+	 */
+	public int binarySearch(T item, Comparator<? super T> comparator)
+	{
+		return this.binarySearch(item, comparator, 0);
+	}
+	
+	
+	/**
+	 * Search item by binary search, only items at or after given index will be searched.
+	 * @param item Item to search.
+	 * @param comparator Comparator which defines order of items in this list.
+	 * @param fromIndex Index of first item to search.
+	 * @return Index of item, or (-(insertion point) - 1) if item is not contained in list. Insertion point will not be less than fromIndex.
+	 */
+	public int binarySearch(T item, Comparator<? super T> comparator, int fromIndex)
+	{
+		// check index
+		if(fromIndex < 0 || fromIndex > m_Size)
+			throw new IndexOutOfBoundsException("Index : " + fromIndex + ", size : " + m_Size);
+		if(fromIndex == m_Size)
+			return ~m_Size;
+		
+		// find chunk
+		int low = (fromIndex > 0 ? this.findChunk(fromIndex) : 0);
+		int firstChunkIndex = low;
+		int high = (m_Chunks.size() - 1);
+		int chunkIndex = -1;
+		while(low <= high)
+		{
+			int mid = ((low + high) >>> 1);
+			Chunk chunk = m_Chunks.get(mid);
+			@SuppressWarnings("unchecked")
+			int result = comparator.compare((T)chunk.items[chunk.size - 1], item);
+			if(result < 0)
+				low = (mid + 1);
+			else
+			{
+				chunkIndex = mid;
+				high = (mid - 1);
+			}
+		}
+		if(chunkIndex < 0)
+			return ~m_Size;
+		
+		// search in chunk
+		Chunk chunk = m_Chunks.get(chunkIndex);
+		int startIndex = this.getChunkStartIndex(chunkIndex);
+		int fromIndexInChunk = (chunkIndex == firstChunkIndex ? Math.max(0, fromIndex - startIndex) : 0);
+		@SuppressWarnings("unchecked")
+		int index = Arrays.binarySearch((T[])chunk.items, fromIndexInChunk, chunk.size, item, comparator);
+		if(index >= 0)
+			return (startIndex + index);
+		return ~(startIndex + ~index);
+	}
+	
+	
+	// Rebuild binary indexed tree of chunk sizes.
+	private void buildChunkSizeTree()
+	{
+		int chunkCount = m_Chunks.size();
+		if(m_ChunkSizeTree.length <= chunkCount)
+			m_ChunkSizeTree = new int[Math.max(chunkCount + 1, m_ChunkSizeTree.length * 2)];
+		for(int i = 1 ; i <= chunkCount ; ++i)
+			m_ChunkSizeTree[i] = m_Chunks.get(i - 1).size;
+		for(int i = 1 ; i <= chunkCount ; ++i)
+		{
+			int parent = (i + (i & -i));
+			if(parent <= chunkCount)
+				m_ChunkSizeTree[parent] += m_ChunkSizeTree[i];
+		}
+		m_IsChunkSizeTreeValid = true;
+	}
+	
+	
+	// Clear list.
+	@Override
+	public void clear()
+	{
+		if(m_Size == 0)
+			return;
+		m_Chunks.clear();
+		m_Size = 0;
+		m_IsChunkSizeTreeValid = false;
+		++this.modCount;
+	}
+	
+	
+	// Find index of chunk which contains given item index.
+	private int findChunk(int index)
+	{
+		if(!m_IsChunkSizeTreeValid)
+			this.buildChunkSizeTree();
+		int chunkCount = m_Chunks.size();
+		int position = 0;
+		for(int step = Integer.highestOneBit(chunkCount) ; step > 0 ; step >>= 1)
+		{
+			int next = (position + step);
+			if(next <= chunkCount && m_ChunkSizeTree[next] <= index)
+			{
+				position = next;
+				index -= m_ChunkSizeTree[next];
+			}
+		}
+		return position;
+	}
+	
+	
+	// Get item.
+	@SuppressWarnings("unchecked")
+	@Override
+	public T get(int index)
+	{
+		if(index < 0 || index >= m_Size)
+			throw new IndexOutOfBoundsException("Index : " + index + ", size : " + m_Size);
+		int chunkIndex = this.findChunk(index);
+		return (T)m_Chunks.get(chunkIndex).items[index - this.getChunkStartIndex(chunkIndex)];
+	}
+	
+	
+	/**
+	 * Get number of chunks.
+	 * @return Number of chunks.
+	 */
+	int getChunkCount()
+	{
+		return m_Chunks.size();
+	}
+	
+	
+	// Get index of first item in given chunk.
+	private int getChunkStartIndex(int chunkIndex)
+	{
+		if(!m_IsChunkSizeTreeValid)
+			this.buildChunkSizeTree();
+		int startIndex = 0;
+		for(int i = chunkIndex ; i > 0 ; i -= (i & -i))
+			startIndex += m_ChunkSizeTree[i];
+		return startIndex;
+	}
+	
+	
+	// Insert new chunk.
+	private void insertChunk(int chunkIndex, Chunk chunk)
+	{
+		m_Chunks.add(chunkIndex, chunk);
+		m_IsChunkSizeTreeValid = false;
+	}
+	
+	
+	// Insert items into chunk which contains given position, items will be moved to neighbour chunk or chunk will be split if there is no enough space.
+	private void insertIntoChunk(int index, Object[] items, int count)
+	{
+		// find chunk
+		int chunkIndex;
+		int offset;
+		if(index == m_Size)
+		{
+			chunkIndex = (m_Chunks.size() - 1);
+			offset = m_Chunks.get(chunkIndex).size;
+		}
+		else
+		{
+			chunkIndex = this.findChunk(index);
+			offset = (index - this.getChunkStartIndex(chunkIndex));
+		}
+		Chunk chunk = m_Chunks.get(chunkIndex);
+		
+		// move items after insertion position to next chunk
+		int requiredCount = (chunk.size + count - m_ChunkCapacity);
+		if(requiredCount > 0 && chunkIndex < m_Chunks.size() - 1)
+		{
+			Chunk nextChunk = m_Chunks.get(chunkIndex + 1);
+			int moveCount = Math.min(Math.max(requiredCount, (chunk.size - nextChunk.size) / 2), Math.min(m_ChunkCapacity - nextChunk.size, chunk.size - offset));
+			if(moveCount >= requiredCount)
+			{
+				System.arraycopy(nextChunk.items, 0, nextChunk.items, moveCount, nextChunk.size);
+				System.arraycopy(chunk.items, chunk.size - moveCount, nextChunk.items, 0, moveCount);
+				Arrays.fill(chunk.items, chunk.size - moveCount, chunk.size, null);
+				chunk.size -= moveCount;
+				nextChunk.size += moveCount;
+				this.updateChunkSize(chunkIndex, -moveCount);
+				this.updateChunkSize(chunkIndex + 1, moveCount);
+				requiredCount = 0;
+			}
+		}
+		
+		// move items before insertion position to previous chunk
+		if(requiredCount > 0 && chunkIndex > 0)
+		{
+			Chunk prevChunk = m_Chunks.get(chunkIndex - 1);
+			int moveCount = Math.min(Math.max(requiredCount, (chunk.size - prevChunk.size) / 2), Math.min(m_ChunkCapacity - prevChunk.size, offset));
+			if(moveCount >= requiredCount)
+			{
+				System.arraycopy(chunk.items, 0, prevChunk.items, prevChunk.size, moveCount);
+				System.arraycopy(chunk.items, moveCount, chunk.items, 0, chunk.size - moveCount);
+				Arrays.fill(chunk.items, chunk.size - moveCount, chunk.size, null);
+				chunk.size -= moveCount;
+				prevChunk.size += moveCount;
+				offset -= moveCount;
+				this.updateChunkSize(chunkIndex, -moveCount);
+				this.updateChunkSize(chunkIndex - 1, moveCount);
+				requiredCount = 0;
+			}
+		}
+		
+		// split full chunk
+		if(requiredCount > 0)
+		{
+			Chunk newChunk = new Chunk(m_ChunkCapacity);
+			int half = (chunk.size / 2);
+			newChunk.size = (chunk.size - half);
+			System.arraycopy(chunk.items, half, newChunk.items, 0, newChunk.size);
+			Arrays.fill(chunk.items, half, chunk.size, null);
+			chunk.size = half;
+			this.insertChunk(chunkIndex + 1, newChunk);
+			if(offset > half)
+			{
+				chunk = newChunk;
+				offset -= half;
+				++chunkIndex;
+			}
+		}
+		
+		// insert
+		System.arraycopy(chunk.items, offset, chunk.items, offset + count, chunk.size - offset);
+		System.arraycopy(items, 0, chunk.items, offset, count);
+		chunk.size += count;
+		this.updateChunkSize(chunkIndex, count);
+	}
+	
+	
+	// Merge given chunk and next chunk if both of them are less than half full.
+	private boolean mergeChunks(int chunkIndex)
+	{
+		if(chunkIndex < 0 || chunkIndex >= m_Chunks.size() - 1)
+			return false;
+		Chunk chunk = m_Chunks.get(chunkIndex);
+		Chunk nextChunk = m_Chunks.get(chunkIndex + 1);
+		int halfCapacity = (m_ChunkCapacity / 2);
+		if(chunk.size >= halfCapacity || nextChunk.size >= halfCapacity)
+			return false;
+		System.arraycopy(nextChunk.items, 0, chunk.items, chunk.size, nextChunk.size);
+		chunk.size += nextChunk.size;
+		m_Chunks.remove(chunkIndex + 1);
+		m_IsChunkSizeTreeValid = false;
+		return true;
+	}
+	
+	
+	// Remove item.
+	@SuppressWarnings("unchecked")
+	@Override
+	public T remove(int index)
+	{
+		// remove from chunk
+		if(index < 0 || index >= m_Size)
+			throw new IndexOutOfBoundsException("Index : " + index + ", size : " + m_Size);
+		int chunkIndex = this.findChunk(index);
+		Chunk chunk = m_Chunks.get(chunkIndex);
+		int offset = (index - this.getChunkStartIndex(chunkIndex));
+		T item = (T)chunk.items[offset];
+		System.arraycopy(chunk.items, offset + 1, chunk.items, offset, chunk.size - offset - 1);
+		chunk.items[--chunk.size] = null;
+		--m_Size;
+		++this.modCount;
+		
+		// remove empty chunk or merge with neighbours
+		if(chunk.size == 0)
+		{
+			m_Chunks.remove(chunkIndex);
+			m_IsChunkSizeTreeValid = false;
+		}
+		else
+		{
+			this.updateChunkSize(chunkIndex, -1);
+			if(!this.mergeChunks(chunkIndex))
+				this.mergeChunks(chunkIndex - 1);
+		}
+		return item;
+	}
+	
+	
+	// Remove items in range.
+	@Override
+	protected void removeRange(int fromIndex, int toIndex)
+	{
+		// check range
+		if(fromIndex < 0 || toIndex > m_Size || fromIndex > toIndex)
+			throw new IndexOutOfBoundsException("Range : [" + fromIndex + ", " + toIndex + "), size : " + m_Size);
+		if(fromIndex == toIndex)
+			return;
+		if(fromIndex == 0 && toIndex == m_Size)
+		{
+			this.clear();
+			return;
+		}
+		
+		// remove from chunks
+		int firstChunkIndex = this.findChunk(fromIndex);
+		int chunkIndex = firstChunkIndex;
+		int remaining = (toIndex - fromIndex);
+		int offset = (fromIndex - this.getChunkStartIndex(chunkIndex));
+		while(remaining > 0)
+		{
+			Chunk chunk = m_Chunks.get(chunkIndex);
+			int count = Math.min(remaining, chunk.size - offset);
+			if(count == chunk.size)
+				m_Chunks.remove(chunkIndex);
+			else
+			{
+				System.arraycopy(chunk.items, offset + count, chunk.items, offset, chunk.size - offset - count);
+				Arrays.fill(chunk.items, chunk.size - count, chunk.size, null);
+				chunk.size -= count;
+				++chunkIndex;
+			}
+			remaining -= count;
+			offset = 0;
+		}
+		m_Size -= (toIndex - fromIndex);
+		m_IsChunkSizeTreeValid = false;
+		++this.modCount;
+		
+		// merge under-filled chunks around removed range
+		this.mergeChunks(firstChunkIndex);
+		this.mergeChunks(firstChunkIndex - 1);
+	}
+	
+	
+	/**
+	 * Remove items in multiple ranges.
+	 * @param ranges Sorted and non-overlapping ranges, each range is stored as pair of first index (inclusive) and last index (exclusive).
+	 * @param rangeCount Number of ranges.
+	 */
+	public void removeRanges(int[] ranges, int rangeCount)
+	{
+		// check state
+		if(rangeCount <= 0)
+			return;
+		
+		// remove directly
+		if(rangeCount <= REMOVE_RANGES_DIRECTLY_THRESHOLD)
+		{
+			for(int i = rangeCount - 1 ; i >= 0 ; --i)
+				this.removeRange(ranges[i * 2], ranges[i * 2 + 1]);
+			return;
+		}
+		
+		// compact in one pass
+		List<Chunk> newChunks = new ArrayList<>();
+		Chunk newChunk = null;
+		int index = 0;
+		int rangeIndex = 0;
+		int newSize = 0;
+		for(int i = 0, chunkCount = m_Chunks.size() ; i < chunkCount ; ++i)
+		{
+			Chunk chunk = m_Chunks.get(i);
+			for(int j = 0 ; j < chunk.size ; ++j, ++index)
+			{
+				while(rangeIndex < rangeCount && index >= ranges[rangeIndex * 2 + 1])
+					++rangeIndex;
+				if(rangeIndex < rangeCount && index >= ranges[rangeIndex * 2])
+					continue;
+				if(newChunk == null || newChunk.size >= m_ChunkCapacity)
+				{
+					newChunk = new Chunk(m_ChunkCapacity);
+					newChunks.add(newChunk);
+				}
+				newChunk.items[newChunk.size++] = chunk.items[j];
+				++newSize;
+			}
+		}
+		m_Chunks.clear();
+		m_Chunks.addAll(newChunks);
+		m_Size = newSize;
+		m_IsChunkSizeTreeValid = false;
+		++this.modCount;
+	}
+	
+	
+	// Set item.
+	@SuppressWarnings("unchecked")
+	@Override
+	public T set(int index, T item)
+	{
+		if(index < 0 || index >= m_Size)
+			throw new IndexOutOfBoundsException("Index : " + index + ", size : " + m_Size);
+		int chunkIndex = this.findChunk(index);
+		Chunk chunk = m_Chunks.get(chunkIndex);
+		int offset = (index - this.getChunkStartIndex(chunkIndex));
+		T prevItem = (T)chunk.items[offset];
+		chunk.items[offset] = item;
+		return prevItem;
+	}
+	
+	
+	// Get size.
+	@Override
+	public int size()
+	{
+		return m_Size;
+	}
+	
+	
+	// Update size of given chunk in binary indexed tree.
+	private void updateChunkSize(int chunkIndex, int delta)
+	{
+		if(!m_IsChunkSizeTreeValid)
+			return;
+		for(int i = chunkIndex + 1, chunkCount = m_Chunks.size() ; i <= chunkCount ; i += (i & -i))
+			m_ChunkSizeTree[i] += delta;
+	}
+}
@@ -0,0 +1,279 @@
+package com.oneplus.gallery.media;
+
+import com.oneplus.base.Log;
+
+import android.os.Handler;
+import android.os.SystemClock;
+
+/**
+ * Adaptive debounce scheduler for content changes. Isolated change will be handled immediately, while handling of continuous changes will be delayed with exponentially extended delay until changes stop or maximum latency reached.
+ */
+public final class ContentChangeScheduler
+{
+	/**
+	 * Default quiet period to treat a change as isolated change, in milliseconds.
+	 */
+	public static final long DEFAULT_IDLE_THRESHOLD = 1000;
+	/**
+	 * Default initial delay to handle continuous changes, in milliseconds.
+	 */
+	public static final long DEFAULT_INITIAL_DELAY = 100;
+	/**
+	 * Default maximum delay after last change, in milliseconds.
+	 */
+	public static final long DEFAULT_MAX_DELAY = 1600;
+	/**
+	 * Default maximum latency from first pending change to handling, in milliseconds.
+	 */
+	public static final long DEFAULT_MAX_LATENCY = 3000;
+	
+	
+	// Fields.
+	private final Runnable m_Action;
+	private long m_ChangeCount;
+	private long m_CurrentDelay;
+	private long m_ExtensionCount;
+	private long m_HandledCount;
+	private final Handler m_Handler;
+	private long m_IdleThreshold = DEFAULT_IDLE_THRESHOLD;
+	private long m_InitialDelay = DEFAULT_INITIAL_DELAY;
+	private boolean m_IsScheduled;
+	private long m_LastChangeTime = -1;
+	private long m_LeadingEdgeCount;
+	private long m_MaxDelay = DEFAULT_MAX_DELAY;
+	private long m_MaxLatency = DEFAULT_MAX_LATENCY;
+	private long m_MaxLatencyCount;
+	private final String m_Name;
+	private long m_PendingChangeCount;
+	private long m_PendingStartTime;
+	private long m_ScheduledTime;
+	private final Runnable m_ScheduledRunnable = new Runnable()
+	{
+		@Override
+		public void run()
+		{
+			handleChanges();
+		}
+	};
+	
+	
+	/**
+	 * Initialize new ContentChangeScheduler instance.
+	 * @param name Name for logging.
+	 * @param handler Handler to handle changes.
+	 * @param action Action to handle changes.
+	 */
+	public ContentChangeScheduler(String name, Handler handler, Runnable action)
+	{
+		if(handler == null)
+			throw new IllegalArgumentException("No handler");
+		if(action == null)
+			throw new IllegalArgumentException("No action");
+		m_Name = name;
+		m_Handler = handler;
+		m_Action = action;
+	}
+	
+	
+	/**
+	 * Cancel pending handling.
+	 */
+	public synchronized void cancel()
+	{
+		if(!m_IsScheduled)
+			return;
+		m_IsScheduled = false;
+		m_PendingChangeCount = 0;
+		m_Handler.removeCallbacks(m_ScheduledRunnable);
+	}
+	
+	
+	/**
+	 * Get number of notified changes.
+	 * @return Number of changes.
+	 */
+	public synchronized long getChangeCount()
+	{
+		return m_ChangeCount;
+	}
+	
+	
+	/**
+	 * Get number of times that delay has been extended by continuous changes.
+	 * @return Number of extensions.
+	 */
+	public synchronized long getExtensionCount()
+	{
+		return m_ExtensionCount;
+	}
+	
+	
+	/**
+	 * Get number of times that changes have been handled.
+	 * @return Number of handling.
+	 */
+	public synchronized long getHandledCount()
+	{
+		return m_HandledCount;
+	}
+	
+	
+	/**
+	 * Get quiet period to treat a change as isolated change.
+	 * @return Quiet period in milliseconds.
+	 */
+	public synchronized long getIdleThreshold()
+	{
+		return m_IdleThreshold;
+	}
+	
+	
+	/**
+	 * Get initial delay to handle continuous changes.
+	 * @return Delay in milliseconds.
+	 */
+	public synchronized long getInitialDelay()
+	{
+		return m_InitialDelay;
+	}
+	
+	
+	/**
+	 * Get number of isolated changes which have been handled immediately.
+	 * @return Number of isolated changes.
+	 */
+	public synchronized long getLeadingEdgeCount()
+	{
+		return m_LeadingEdgeCount;
+	}
+	
+	
+	/**
+	 * Get maximum delay after last change.
+	 * @return Delay in milliseconds.
+	 */
+	public synchronized long getMaxDelay()
+	{
+		return m_MaxDelay;
+	}
+	
+	
+	/**
+	 * Get maximum latency from first pending change to handling.
+	 * @return Latency in milliseconds.
+	 */
+	public synchronized long getMaxLatency()
+	{
+		return m_MaxLatency;
+	}
+	
+	
+	/**
+	 * Get number of times that handling has been forced by maximum latency.
+	 * @return Number of times.
+	 */
+	public synchronized long getMaxLatencyCount()
+	{
+		return m_MaxLatencyCount;
+	}
+	
+	
+	// Handle pending changes.
+	private void handleChanges()
+	{
+		synchronized(this)
+		{
+			if(!m_IsScheduled)
+				return;
+			m_IsScheduled = false;
+			++m_HandledCount;
+			if(m_PendingChangeCount > 1)
+			{
+				long latency = (SystemClock.uptimeMillis() - m_PendingStartTime);
+				if(latency >= m_MaxLatency)
+					++m_MaxLatencyCount;
+				Log.v(m_Name, "handleChanges() - Handle ", m_PendingChangeCount, " changes, latency : ", latency, " ms");
+			}
+			m_PendingChangeCount = 0;
+		}
+		m_Action.run();
+	}
+	
+	
+	/**
+	 * Notify that content has been changed.
+	 */
+	public synchronized void notifyChange()
+	{
+		long time = SystemClock.uptimeMillis();
+		long lastChangeTime = m_LastChangeTime;
+		m_LastChangeTime = time;
+		++m_ChangeCount;
+		++m_PendingChangeCount;
+		
+		// extend delay while changes continue
+		if(m_IsScheduled)
+		{
+			if(m_ScheduledTime <= time)
+				return;
+			m_CurrentDelay = Math.min(Math.max(m_CurrentDelay * 2, m_InitialDelay), m_MaxDelay);
+			long scheduledTime = Math.min(time + m_CurrentDelay, m_PendingStartTime + m_MaxLatency);
+			if(scheduledTime > m_ScheduledTime)
+			{
+				++m_ExtensionCount;
+				this.schedule(scheduledTime);
+			}
+			return;
+		}
+		
+		// handle isolated change immediately
+		m_IsScheduled = true;
+		m_PendingStartTime = time;
+		if(lastChangeTime < 0 || (time - lastChangeTime) >= m_IdleThreshold)
+		{
+			++m_LeadingEdgeCount;
+			m_CurrentDelay = 0;
+			this.schedule(time);
+			return;
+		}
+		
+		// start delay for continuous changes
+		m_CurrentDelay = Math.min(m_InitialDelay, m_MaxDelay);
+		this.schedule(time + m_CurrentDelay);
+	}
+	
+	
+	// Schedule handling at given time.
+	private void schedule(long uptimeMillis)
+	{
+		m_ScheduledTime = uptimeMillis;
+		m_Handler.removeCallbacks(m_ScheduledRunnable);
+		m_Handler.postAtTime(m_ScheduledRunnable, uptimeMillis);
+	}
+	
+	
+	/**
+	 * Change scheduling parameters.
+	 * @param idleThreshold Quiet period to treat a change as isolated change, in milliseconds.
+	 * @param initialDelay Initial delay to handle continuous changes, in milliseconds.
+	 * @param maxDelay Maximum delay after last change, in milliseconds.
+	 * @param maxLatency Maximum latency from first pending change to handling, in milliseconds.
+	 */
+	public synchronized void setParameters(long idleThreshold, long initialDelay, long maxDelay, long maxLatency)
+	{
+		if(idleThreshold < 0 || initialDelay <= 0 || maxDelay < initialDelay || maxLatency < 0)
+			throw new IllegalArgumentException("Invalid parameters");
+		m_IdleThreshold = idleThreshold;
+		m_InitialDelay = initialDelay;
+		m_MaxDelay = maxDelay;
+		m_MaxLatency = maxLatency;
+	}
+	
+	
+	// Get readable string.
+	@Override
+	public synchronized String toString()
+	{
+		return ("[" + m_Name + ", Changes = " + m_ChangeCount + ", Handled = " + m_HandledCount + ", Leading edge = " + m_LeadingEdgeCount + ", Extensions = " + m_ExtensionCount + ", Max latency = " + m_MaxLatencyCount + "]");
+	}
+}
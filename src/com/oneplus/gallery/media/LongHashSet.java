@@ -0,0 +1,216 @@
+package com.oneplus.gallery.media;
+
+import java.util.Arrays;
+
+/**
+ * Hash set of primitive long values based-on open addressing, which avoids boxing media IDs.
+ */
+final class LongHashSet
+{
+	// Constants.
+	private static final int DEFAULT_CAPACITY = 16;
+	
+	
+	// Fields.
+	private long[] m_Keys;
+	private int m_Mask;
+	private int m_Size;
+	private boolean[] m_Used;
+	
+	
+	/**
+	 * Initialize new LongHashSet instance.
+	 */
+	public LongHashSet()
+	{
+		this(DEFAULT_CAPACITY);
+	}
+	
+	
+	/**
+	 * Initialize new LongHashSet instance.
+	 * @param capacity Expected number of values.
+	 */
+	public LongHashSet(int capacity)
+	{
+		this.allocate(getTableSize(capacity));
+	}
+	
+	
+	/**
+	 * Add value to set.
+	 * @param value Value to add.
+	 * @return True if value added, False if value is already in set.
+	 */
+	public boolean add(long value)
+	{
+		int index = this.indexOf(value);
+		if(m_Used[index])
+			return false;
+		m_Keys[index] = value;
+		m_Used[index] = true;
+		if(++m_Size * 2 > m_Keys.length)
+			this.rehash(m_Keys.length * 2);
+		return true;
+	}
+	
+	
+	/**
+	 * Add all values in given set.
+	 * @param set Set of values to add.
+	 */
+	public void addAll(LongHashSet set)
+	{
+		long[] keys = set.m_Keys;
+		boolean[] used = set.m_Used;
+		for(int i = keys.length - 1 ; i >= 0 ; --i)
+		{
+			if(used[i])
+				this.add(keys[i]);
+		}
+	}
+	
+	
+	// Allocate hash table.
+	private void allocate(int tableSize)
+	{
+		m_Keys = new long[tableSize];
+		m_Used = new boolean[tableSize];
+		m_Mask = (tableSize - 1);
+	}
+	
+	
+	/**
+	 * Remove all values.
+	 */
+	public void clear()
+	{
+		if(m_Size == 0)
+			return;
+		Arrays.fill(m_Used, false);
+		m_Size = 0;
+	}
+	
+	
+	/**
+	 * Check whether given value is in set or not.
+	 * @param value Value to check.
+	 * @return True if value is in set.
+	 */
+	public boolean contains(long value)
+	{
+		return m_Used[this.indexOf(value)];
+	}
+	
+	
+	// Get size of hash table for given capacity.
+	static int getTableSize(int capacity)
+	{
+		int tableSize = DEFAULT_CAPACITY;
+		while(tableSize < capacity * 2)
+			tableSize <<= 1;
+		return tableSize;
+	}
+	
+	
+	// Calculate hash code of value.
+	static int hash(long value)
+	{
+		int hash = (int)(value ^ (value >>> 32)) * 0x9E3779B9;
+		return (hash ^ (hash >>> 16));
+	}
+	
+	
+	// Find slot of given value, or empty slot to put value.
+	private int indexOf(long value)
+	{
+		int index = (hash(value) & m_Mask);
+		while(m_Used[index] && m_Keys[index] != value)
+			index = ((index + 1) & m_Mask);
+		return index;
+	}
+	
+	
+	/**
+	 * Check whether set is empty or not.
+	 * @return True if set is empty.
+	 */
+	public boolean isEmpty()
+	{
+		return (m_Size == 0);
+	}
+	
+	
+	// Rebuild hash table.
+	private void rehash(int tableSize)
+	{
+		long[] keys = m_Keys;
+		boolean[] used = m_Used;
+		this.allocate(tableSize);
+		for(int i = keys.length - 1 ; i >= 0 ; --i)
+		{
+			if(!used[i])
+				continue;
+			int index = this.indexOf(keys[i]);
+			m_Keys[index] = keys[i];
+			m_Used[index] = true;
+		}
+	}
+	
+	
+	/**
+	 * Remove value from set.
+	 * @param value Value to remove.
+	 * @return True if value removed.
+	 */
+	public boolean remove(long value)
+	{
+		// find value
+		int index = this.indexOf(value);
+		if(!m_Used[index])
+			return false;
+		
+		// shift following values in the same probe sequence back
+		int next = ((index + 1) & m_Mask);
+		while(m_Used[next])
+		{
+			int home = (hash(m_Keys[next]) & m_Mask);
+			if(((next - home) & m_Mask) >= ((next - index) & m_Mask))
+			{
+				m_Keys[index] = m_Keys[next];
+				index = next;
+			}
+			next = ((next + 1) & m_Mask);
+		}
+		m_Used[index] = false;
+		--m_Size;
+		return true;
+	}
+	
+	
+	/**
+	 * Get number of values.
+	 * @return Number of values.
+	 */
+	public int size()
+	{
+		return m_Size;
+	}
+	
+	
+	/**
+	 * Copy values to array.
+	 * @return Array of values.
+	 */
+	public long[] toArray()
+	{
+		long[] array = new long[m_Size];
+		int count = 0;
+		for(int i = m_Keys.length - 1 ; i >= 0 ; --i)
+		{
+			if(m_Used[i])
+				array[count++] = m_Keys[i];
+		}
+		return array;
+	}
+}
@@ -0,0 +1,131 @@
+package com.oneplus.gallery.media;
+
+/**
+ * Hash map from primitive long keys to primitive long values based-on open addressing.
+ */
+final class LongLongHashMap
+{
+	// Fields.
+	private long[] m_Keys;
+	private int m_Mask;
+	private int m_Size;
+	private boolean[] m_Used;
+	private long[] m_Values;
+	
+	
+	/**
+	 * Initialize new LongLongHashMap instance.
+	 * @param capacity Expected number of entries.
+	 */
+	public LongLongHashMap(int capacity)
+	{
+		this.allocate(LongHashSet.getTableSize(capacity));
+	}
+	
+	
+	// Allocate hash table.
+	private void allocate(int tableSize)
+	{
+		m_Keys = new long[tableSize];
+		m_Values = new long[tableSize];
+		m_Used = new boolean[tableSize];
+		m_Mask = (tableSize - 1);
+	}
+	
+	
+	/**
+	 * Check whether given key is in map or not.
+	 * @param key Key to check.
+	 * @return True if key is in map.
+	 */
+	public boolean containsKey(long key)
+	{
+		return m_Used[this.indexOf(key)];
+	}
+	
+	
+	/**
+	 * Copy all keys to new set.
+	 * @return Set of keys.
+	 */
+	public LongHashSet copyKeys()
+	{
+		LongHashSet keys = new LongHashSet(m_Size);
+		for(int i = m_Keys.length - 1 ; i >= 0 ; --i)
+		{
+			if(m_Used[i])
+				keys.add(m_Keys[i]);
+		}
+		return keys;
+	}
+	
+	
+	/**
+	 * Get value of given key.
+	 * @param key Key.
+	 * @param defaultValue Value to return if key is not in map.
+	 * @return Value of key.
+	 */
+	public long get(long key, long defaultValue)
+	{
+		int index = this.indexOf(key);
+		return (m_Used[index] ? m_Values[index] : defaultValue);
+	}
+	
+	
+	// Find slot of given key, or empty slot to put key.
+	private int indexOf(long key)
+	{
+		int index = (LongHashSet.hash(key) & m_Mask);
+		while(m_Used[index] && m_Keys[index] != key)
+			index = ((index + 1) & m_Mask);
+		return index;
+	}
+	
+	
+	/**
+	 * Put value of given key.
+	 * @param key Key.
+	 * @param value Value.
+	 */
+	public void put(long key, long value)
+	{
+		int index = this.indexOf(key);
+		m_Values[index] = value;
+		if(m_Used[index])
+			return;
+		m_Keys[index] = key;
+		m_Used[index] = true;
+		if(++m_Size * 2 > m_Keys.length)
+			this.rehash(m_Keys.length * 2);
+	}
+	
+	
+	// Rebuild hash table.
+	private void rehash(int tableSize)
+	{
+		long[] keys = m_Keys;
+		long[] values = m_Values;
+		boolean[] used = m_Used;
+		this.allocate(tableSize);
+		for(int i = keys.length - 1 ; i >= 0 ; --i)
+		{
+			if(!used[i])
+				continue;
+			int index = this.indexOf(keys[i]);
+			m_Keys[index] = keys[i];
+			m_Values[index] = values[i];
+			m_Used[index] = true;
+		}
+	}
+	
+	
+	/**
+	 * Get number of entries.
+	 * @return Number of entries.
+	 */
+	public int size()
+	{
+		return m_Size;
+	}
+}
@@ -0,0 +1,149 @@
+package com.oneplus.gallery.media;
+
+/**
+ * Hash map from primitive long keys to objects based-on open addressing, which avoids boxing media IDs.
+ * @param <V> Type of value.
+ */
+final class LongObjectHashMap<V>
+{
+	// Constants.
+	private static final int DEFAULT_CAPACITY = 16;
+	
+	
+	// Fields.
+	private long[] m_Keys;
+	private int m_Mask;
+	private int m_Size;
+	private boolean[] m_Used;
+	private Object[] m_Values;
+	
+	
+	/**
+	 * Initialize new LongObjectHashMap instance.
+	 */
+	public LongObjectHashMap()
+	{
+		this(DEFAULT_CAPACITY);
+	}
+	
+	
+	/**
+	 * Initialize new LongObjectHashMap instance.
+	 * @param capacity Expected number of entries.
+	 */
+	public LongObjectHashMap(int capacity)
+	{
+		this.allocate(LongHashSet.getTableSize(capacity));
+	}
+	
+	
+	// Allocate hash table.
+	private void allocate(int tableSize)
+	{
+		m_Keys = new long[tableSize];
+		m_Values = new Object[tableSize];
+		m_Used = new boolean[tableSize];
+		m_Mask = (tableSize - 1);
+	}
+	
+	
+	/**
+	 * Get value of given key.
+	 * @param key Key.
+	 * @return Value of key, or Null if key is not in map.
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(long key)
+	{
+		return (V)m_Values[this.indexOf(key)];
+	}
+	
+	
+	// Find slot of given key, or empty slot to put key.
+	private int indexOf(long key)
+	{
+		int index = (LongHashSet.hash(key) & m_Mask);
+		while(m_Used[index] && m_Keys[index] != key)
+			index = ((index + 1) & m_Mask);
+		return index;
+	}
+	
+	
+	/**
+	 * Put value of given key.
+	 * @param key Key.
+	 * @param value Value.
+	 */
+	public void put(long key, V value)
+	{
+		int index = this.indexOf(key);
+		m_Values[index] = value;
+		if(m_Used[index])
+			return;
+		m_Keys[index] = key;
+		m_Used[index] = true;
+		if(++m_Size * 2 > m_Keys.length)
+			this.rehash(m_Keys.length * 2);
+	}
+	
+	
+	// Rebuild hash table.
+	private void rehash(int tableSize)
+	{
+		long[] keys = m_Keys;
+		Object[] values = m_Values;
+		boolean[] used = m_Used;
+		this.allocate(tableSize);
+		for(int i = keys.length - 1 ; i >= 0 ; --i)
+		{
+			if(!used[i])
+				continue;
+			int index = this.indexOf(keys[i]);
+			m_Keys[index] = keys[i];
+			m_Values[index] = values[i];
+			m_Used[index] = true;
+		}
+	}
+	
+	
+	/**
+	 * Remove given key from map.
+	 * @param key Key to remove.
+	 * @return True if key removed.
+	 */
+	public boolean remove(long key)
+	{
+		// find key
+		int index = this.indexOf(key);
+		if(!m_Used[index])
+			return false;
+		
+		// shift following entries in the same probe sequence back
+		int next = ((index + 1) & m_Mask);
+		while(m_Used[next])
+		{
+			int home = (LongHashSet.hash(m_Keys[next]) & m_Mask);
+			if(((next - home) & m_Mask) >= ((next - index) & m_Mask))
+			{
+				m_Keys[index] = m_Keys[next];
+				m_Values[index] = m_Values[next];
+				index = next;
+			}
+			next = ((next + 1) & m_Mask);
+		}
+		m_Used[index] = false;
+		m_Values[index] = null;
+		--m_Size;
+		return true;
+	}
+	
+	
+	/**
+	 * Get number of entries.
+	 * @return Number of entries.
+	 */
+	public int size()
+	{
+		return m_Size;
+	}
+}
@@ -2,6 +2,7 @@ package com.oneplus.gallery.media;
 
 import java.util.List;
 
+import com.oneplus.base.EventArgs;
 import com.oneplus.base.EventKey;
 import com.oneplus.base.HandlerObject;
 import com.oneplus.base.BaseObject;
@@ -16,8 +17,21 @@ public interface MediaList extends List<Media>, BaseObject, HandlerObject
 	 * Raised when media added.
 	 */
 	EventKey<ListChangeEventArgs> EVENT_MEDIA_ADDED = new EventKey<>("MediaAdded", ListChangeEventArgs.class, MediaList.class);
+	/**
+	 * Raised after raising all {@link #EVENT_MEDIA_ADDED} and {@link #EVENT_MEDIA_REMOVED} events of single batch update.
+	 */
+	EventKey<EventArgs> EVENT_MEDIA_BATCH_UPDATE_ENDED = new EventKey<>("MediaBatchUpdateEnded", EventArgs.class, MediaList.class);
+	/**
+	 * Raised before raising multiple {@link #EVENT_MEDIA_ADDED} and {@link #EVENT_MEDIA_REMOVED} events for single update.
+	 * Content of list may already be in final state when receiving events in batch update.
+	 */
+	EventKey<EventArgs> EVENT_MEDIA_BATCH_UPDATE_STARTED = new EventKey<>("MediaBatchUpdateStarted", EventArgs.class, MediaList.class);
 	/**
 	 * Raised when media removed.
 	 */
 	EventKey<ListChangeEventArgs> EVENT_MEDIA_REMOVED = new EventKey<>("MediaRemoved", ListChangeEventArgs.class, MediaList.class);
+	/**
+	 * Raised when media in given range are updated or become available after loading, but positions of media are not changed.
+	 */
+	EventKey<ListChangeEventArgs> EVENT_MEDIA_UPDATED = new EventKey<>("MediaUpdated", ListChangeEventArgs.class, MediaList.class);
 }
@@ -1,14 +1,23 @@
 package com.oneplus.gallery.media;
 
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
 
+import com.oneplus.base.EventArgs;
 import com.oneplus.base.Handle;
+import com.oneplus.base.HandleSet;
 import com.oneplus.base.ListHandlerBaseObject;
 import com.oneplus.base.Log;
 import com.oneplus.gallery.GalleryApplication;
@@ -20,25 +29,55 @@ import android.content.ContentProviderClient;
 import android.content.ContentResolver;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.DeadObjectException;
 import android.os.Environment;
 import android.os.Handler;
 import android.os.HandlerThread;
 import android.os.Looper;
 import android.os.Message;
 import android.os.RemoteException;
+import android.os.SystemClock;
 import android.provider.MediaStore.Files;
 import android.provider.MediaStore.Files.FileColumns;
+import android.provider.MediaStore.Images;
+import android.provider.MediaStore.Video;
 
 /**
  * Media manager.
  */
 public class MediaManager
 {
+	/**
+	 * Priority of content provider access to load media which are visible on screen.
+	 */
+	public static final int PRIORITY_VISIBLE_MEDIA = 0;
+	/**
+	 * Priority of content provider access to load media set list and covers of media sets.
+	 */
+	public static final int PRIORITY_MEDIA_SET_LIST = 1;
+	/**
+	 * Priority of content provider access to query number of media.
+	 */
+	public static final int PRIORITY_MEDIA_COUNT = 2;
+	/**
+	 * Priority of content provider access for background operations such as indexing.
+	 */
+	public static final int PRIORITY_BACKGROUND = 3;
+	
+	
 	// Constants.
 	private static final String TAG = "MediaManager";
+	private static final int CONTENT_WORKER_THREAD_COUNT = 3;
 	private static final Uri CONTENT_URI_FILE = Files.getContentUri("external");
-	private static final String[] DIR_COLUMNS = new String[]{
-		FileColumns.PARENT,
+	private static final Uri CONTENT_URI_IMAGE = Images.Media.EXTERNAL_CONTENT_URI;
+	private static final Uri CONTENT_URI_VIDEO = Video.Media.EXTERNAL_CONTENT_URI;
+	private static final long DELAY_REFRESH_DIR_MEDIA_SETS = 100;
+	private static final long DELAY_RELEASE_IDLE_CONTENT_PROVIDER_CLIENTS = 10000;
+	private static final long DELAY_REFRESH_MEDIA_COUNTS = 100;
+	private static final long DELAY_ROUTE_MEDIA_CHANGES = 1500;
+	private static final int MAX_ROUTED_MEDIA_CHANGES = 512;
+	private static final String[] DIR_PATH_COLUMNS = new String[]{
+		FileColumns._ID,
 		FileColumns.DATA,
 	};
 	private static final String DIR_QUERY_CONDITION = 
@@ -48,23 +87,82 @@ public class MediaManager
 			+ ")"
 			+ " AND " + FileColumns.DATA + " LIKE ?"
 	;
-	private static final int MSG_ACCESS_CONTENT_PROVIDER = 10000;
 	private static final int MSG_REGISTER_CONTENT_CHANGED_CB = 10010;
 	private static final int MSG_UNREGISTER_CONTENT_CHANGED_CB = 10011;
-	private static final int MSG_DIR_MEDIA_SET_CREATED = 10020;
-	private static final int MSG_DIR_MEDIA_SET_DELETED = 10021;
+	private static final int MSG_DIR_MEDIA_SETS_CHANGED = 10020;
+	private static final int MSG_REFRESH_DIR_MEDIA_SETS = 10021;
+	private static final int MSG_REFRESH_MEDIA_COUNTS = 10030;
+	private static final int MSG_MEDIA_COUNTS_REFRESHED = 10031;
+	private static final int MSG_MEDIA_CHANGES_ROUTED = 10041;
+	private static final String[] MEDIA_COUNT_COLUMNS = new String[]{
+		FileColumns.PARENT,
+		"Count(" + FileColumns._ID + ")",
+		"Max(" + FileColumns._ID + ")",
+		FileColumns.DATA,
+	};
+	private static final int MEDIA_COUNT_COLUMN_COUNT = 1;
+	private static final int MEDIA_COUNT_COLUMN_DATA = 3;
+	private static final int MEDIA_COUNT_COLUMN_PARENT = 0;
+	private static final String MEDIA_QUERY_CONDITION = 
+			"(" 
+					+ FileColumns.MEDIA_TYPE + "=" + FileColumns.MEDIA_TYPE_IMAGE
+					+ " OR " + FileColumns.MEDIA_TYPE + "=" + FileColumns.MEDIA_TYPE_VIDEO
+			+ ")"
+	;
 	
 	
 	// Fields.
 	private static final List<MediaSetListImpl> m_ActiveMediaSetLists = new ArrayList<>();
 	private static CameraRollMediaSet m_CameraRollMediaSet;
+	private static final HashMap<Object, ArrayDeque<ContentProviderAccessHandle>> m_ContentAccessGroupQueues = new HashMap<>();
+	private static final PriorityQueue<ContentProviderAccessHandle> m_ContentAccessQueue = new PriorityQueue<>(16, new Comparator<ContentProviderAccessHandle>()
+	{
+		@Override
+		public int compare(ContentProviderAccessHandle lhs, ContentProviderAccessHandle rhs)
+		{
+			if(lhs.priority != rhs.priority)
+				return (lhs.priority - rhs.priority);
+			if(lhs.sequence < rhs.sequence)
+				return -1;
+			if(lhs.sequence > rhs.sequence)
+				return 1;
+			return 0;
+		}
+	});
+	private static long m_ContentAccessSequence;
+	private static final List<PooledContentProviderClient> m_ContentProviderClients = new ArrayList<>();
 	private static HashMap<Uri, ContentObserver> m_ContentObservers;
-	private static ContentResolver m_ContentResolver;
+	private static volatile ContentResolver m_ContentResolver;
 	private static volatile HandlerThread m_ContentThread;
 	private static volatile Handler m_ContentThreadHandler;
+	private static Thread[] m_ContentWorkerThreads;
 	private static final HashMap<Integer, DirectoryMediaSet> m_DirectoryMediaSets = new HashMap<>();
 	private static volatile Handler m_Handler;
+	private static volatile ContentChangeScheduler m_MediaChangeScheduler;
+	private static final LongHashSet m_ChangedMediaIds = new LongHashSet();
+	private static boolean m_IsAllMediaChanged;
+	private static boolean m_IsIdleContentProviderClientsReleaseScheduled;
 	private static final Object m_Lock = new Object();
+	private static HandleSet m_MediaChangedCBHandles;
+	private static final ContentChangeCallback m_MediaChangedCallback = new ContentChangeCallback()
+	{
+		@Override
+		public void onContentChanged(Uri contentUri)
+		{
+			onMediaChanged(contentUri);
+		}
+	};
+	private static final List<MediaStoreMediaSet> m_MediaCountRefreshingSets = new ArrayList<>();
+	private static final ReferenceQueue<MediaStoreMedia> m_MediaReferenceQueue = new ReferenceQueue<>();
+	private static final LongObjectHashMap<MediaReference> m_MediaRegistry = new LongObjectHashMap<>();
+	private static final Runnable m_ReleaseIdleContentProviderClientsRunnable = new Runnable()
+	{
+		@Override
+		public void run()
+		{
+			releaseIdleContentProviderClients();
+		}
+	};
 	
 	
 	/**
@@ -109,17 +207,72 @@ public class MediaManager
 	}
 	
 	
+	// Information of directory which contains media.
+	private static final class DirectoryInfo
+	{
+		public final int id;
+		public final int mediaCount;
+		public final String path;
+		
+		public DirectoryInfo(int id, String path, int mediaCount)
+		{
+			this.id = id;
+			this.path = path;
+			this.mediaCount = mediaCount;
+		}
+	}
+	
+	
+	// Content provider client pooled for single worker thread, unstable client is not thread-safe to share.
+	private static final class PooledContentProviderClient
+	{
+		public final String authority;
+		public final ContentProviderClient client;
+		public boolean isDead;
+		public long lastUsedTime;
+		public int refCount;
+		public final Thread thread;
+		
+		public PooledContentProviderClient(String authority, ContentProviderClient client, Thread thread)
+		{
+			this.authority = authority;
+			this.client = client;
+			this.thread = thread;
+		}
+	}
+	
+	
+	// Weak reference to registered media.
+	private static final class MediaReference extends WeakReference<MediaStoreMedia>
+	{
+		public final long id;
+		
+		public MediaReference(MediaStoreMedia media, ReferenceQueue<MediaStoreMedia> queue)
+		{
+			super(media, queue);
+			this.id = media.getId();
+		}
+	}
+	
+	
 	// Handle for content provider access.
 	private static final class ContentProviderAccessHandle extends Handle
 	{
 		public final ContentProviderAccessCallback callback;
 		public final Uri contentUri;
+		public final Object group;
+		public boolean isRunning;
+		public int priority;
+		public final long sequence;
 		
-		public ContentProviderAccessHandle(Uri contentUri, ContentProviderAccessCallback callback)
+		public ContentProviderAccessHandle(Uri contentUri, ContentProviderAccessCallback callback, int priority, Object group, long sequence)
 		{
 			super("ContentProviderAccess");
 			this.contentUri = contentUri;
 			this.callback = callback;
+			this.priority = priority;
+			this.group = group;
+			this.sequence = sequence;
 		}
 		
 		public void complete()
@@ -237,6 +390,55 @@ public class MediaManager
 			e.recycle();
 		}
 		
+		// Add media sets and raise single event for each added range.
+		public void addMediaSets(List<? extends MediaSet> sets)
+		{
+			// add media sets
+			if(sets.isEmpty())
+				return;
+			if(sets.size() == 1)
+			{
+				this.addMediaSet(sets.get(0));
+				return;
+			}
+			m_List.addAll(sets);
+			Collections.sort(m_List, this);
+			
+			// raise events
+			int[] ranges = new int[sets.size() * 2];
+			int rangeCount = this.findRanges(new HashSet<MediaSet>(sets), ranges);
+			if(rangeCount > 1)
+				this.raise(EVENT_MEDIA_SET_BATCH_UPDATE_STARTED, EventArgs.EMPTY);
+			for(int i = 0 ; i < rangeCount ; ++i)
+			{
+				ListChangeEventArgs e = ListChangeEventArgs.obtain(ranges[i * 2], ranges[i * 2 + 1]);
+				this.raise(EVENT_MEDIA_SET_ADDED, e);
+				e.recycle();
+			}
+			if(rangeCount > 1)
+				this.raise(EVENT_MEDIA_SET_BATCH_UPDATE_ENDED, EventArgs.EMPTY);
+		}
+		
+		// Find ranges of given media sets, return number of ranges.
+		private int findRanges(Set<MediaSet> sets, int[] ranges)
+		{
+			int rangeCount = 0;
+			for(int i = 0, size = m_List.size() ; i < size ; ++i)
+			{
+				if(!sets.contains(m_List.get(i)))
+					continue;
+				if(rangeCount > 0 && ranges[rangeCount * 2 - 1] == i - 1)
+					ranges[rangeCount * 2 - 1] = i;
+				else
+				{
+					ranges[rangeCount * 2] = i;
+					ranges[rangeCount * 2 + 1] = i;
+					++rangeCount;
+				}
+			}
+			return rangeCount;
+		}
+		
 		// Compare media sets.
 		@Override
 		public int compare(MediaSet lhs, MediaSet rhs)
@@ -306,6 +508,30 @@ public class MediaManager
 			e.recycle();
 			return true;
 		}
+		
+		// Remove media sets and raise single event for each removed range.
+		public void removeMediaSets(List<? extends MediaSet> sets)
+		{
+			// remove media sets
+			if(sets.isEmpty())
+				return;
+			int[] ranges = new int[sets.size() * 2];
+			int rangeCount = this.findRanges(new HashSet<MediaSet>(sets), ranges);
+			for(int i = rangeCount - 1 ; i >= 0 ; --i)
+				m_List.subList(ranges[i * 2], ranges[i * 2 + 1] + 1).clear();
+			
+			// raise events
+			if(rangeCount > 1)
+				this.raise(EVENT_MEDIA_SET_BATCH_UPDATE_STARTED, EventArgs.EMPTY);
+			for(int i = rangeCount - 1 ; i >= 0 ; --i)
+			{
+				ListChangeEventArgs e = ListChangeEventArgs.obtain(ranges[i * 2], ranges[i * 2 + 1]);
+				this.raise(EVENT_MEDIA_SET_REMOVED, e);
+				e.recycle();
+			}
+			if(rangeCount > 1)
+				this.raise(EVENT_MEDIA_SET_BATCH_UPDATE_ENDED, EventArgs.EMPTY);
+		}
 
 		// Get list size.
 		@Override
@@ -322,12 +548,26 @@ public class MediaManager
 	
 	
 	/**
-	 * Access content provider in content thread.
+	 * Access content provider in worker thread with {@link #PRIORITY_MEDIA_SET_LIST} priority.
 	 * @param contentUri Content URI to access.
 	 * @param callback Call-back to access content provider.
 	 * @return Handle to this operation.
 	 */
 	public static Handle accessContentProvider(Uri contentUri, ContentProviderAccessCallback callback)
+	{
+		return accessContentProvider(contentUri, callback, PRIORITY_MEDIA_SET_LIST, null);
+	}
+	
+	
+	/**
+	 * Access content provider in worker thread.
+	 * @param contentUri Content URI to access.
+	 * @param callback Call-back to access content provider.
+	 * @param priority Priority of access, one of {@link #PRIORITY_VISIBLE_MEDIA}, {@link #PRIORITY_MEDIA_SET_LIST}, {@link #PRIORITY_MEDIA_COUNT} and {@link #PRIORITY_BACKGROUND}.
+	 * @param group Accesses in same group will be performed one-by-one in request order, or Null to perform without ordering.
+	 * @return Handle to this operation. Closing handle before performing access will remove it from queue.
+	 */
+	public static Handle accessContentProvider(Uri contentUri, ContentProviderAccessCallback callback, int priority, Object group)
 	{
 		if(contentUri == null)
 		{
@@ -339,30 +579,67 @@ public class MediaManager
 			Log.e(TAG, "accessContentProvider() - No call-back");
 			return null;
 		}
-		ContentProviderAccessHandle handle = new ContentProviderAccessHandle(contentUri, callback);
 		synchronized(m_Lock)
 		{
-			startContentThread();
-			if(!m_ContentThreadHandler.sendMessage(Message.obtain(m_ContentThreadHandler, MSG_ACCESS_CONTENT_PROVIDER, handle)))
+			// start worker threads
+			startContentWorkerThreads();
+			
+			// enqueue
+			ContentProviderAccessHandle handle = new ContentProviderAccessHandle(contentUri, callback, priority, group, m_ContentAccessSequence++);
+			if(group != null)
 			{
-				Log.e(TAG, "accessContentProvider() - Fail to send message to content thread");
-				return null;
+				ArrayDeque<ContentProviderAccessHandle> groupQueue = m_ContentAccessGroupQueues.get(group);
+				if(groupQueue == null)
+				{
+					groupQueue = new ArrayDeque<>();
+					m_ContentAccessGroupQueues.put(group, groupQueue);
+				}
+				groupQueue.add(handle);
+				if(groupQueue.size() == 1)
+					m_ContentAccessQueue.add(handle);
+				else
+				{
+					// raise priority of pending access at head of group
+					ContentProviderAccessHandle headHandle = groupQueue.peek();
+					if(!headHandle.isRunning && headHandle.priority > priority && m_ContentAccessQueue.remove(headHandle))
+					{
+						headHandle.priority = priority;
+						m_ContentAccessQueue.add(headHandle);
+					}
+				}
 			}
+			else
+				m_ContentAccessQueue.add(handle);
+			m_Lock.notifyAll();
+			return handle;
 		}
-		return handle;
 	}
 	
 	
-	// Access content provider (in content thread)
+	// Access content provider (in worker thread)
 	private static void accessContentProvider(ContentProviderAccessHandle handle)
 	{
-		ContentProviderClient client = null;
 		try
 		{
 			if(m_ContentResolver == null)
 				m_ContentResolver = GalleryApplication.current().getContentResolver();
-			client = m_ContentResolver.acquireUnstableContentProviderClient(handle.contentUri);
-			handle.callback.onAccessContentProvider(m_ContentResolver, handle.contentUri, client);
+			PooledContentProviderClient client = acquireContentProviderClient(handle.contentUri);
+			try
+			{
+				handle.callback.onAccessContentProvider(m_ContentResolver, handle.contentUri, (client != null ? client.client : null));
+			}
+			catch(DeadObjectException ex)
+			{
+				// call-back may have posted partial results, so don't run it again
+				if(client != null)
+					invalidateContentProviderClient(client);
+				throw ex;
+			}
+			finally
+			{
+				if(client != null)
+					releaseContentProviderClient(client);
+			}
 		}
 		catch(Throwable ex)
 		{
@@ -370,18 +647,59 @@ public class MediaManager
 		}
 		finally
 		{
-			if(client != null)
-				client.release();
 			handle.complete();
 		}
 	}
 	
 	
+	// Acquire content provider client pooled for current thread (in worker thread)
+	private static PooledContentProviderClient acquireContentProviderClient(Uri contentUri)
+	{
+		String authority = contentUri.getAuthority();
+		Thread thread = Thread.currentThread();
+		synchronized(m_ContentProviderClients)
+		{
+			PooledContentProviderClient client = null;
+			for(int i = m_ContentProviderClients.size() - 1 ; i >= 0 ; --i)
+			{
+				PooledContentProviderClient candidate = m_ContentProviderClients.get(i);
+				if(candidate.thread == thread && candidate.authority.equals(authority))
+				{
+					client = candidate;
+					break;
+				}
+			}
+			if(client == null)
+			{
+				ContentProviderClient providerClient = m_ContentResolver.acquireUnstableContentProviderClient(contentUri);
+				if(providerClient == null)
+					return null;
+				Log.v(TAG, "acquireContentProviderClient() - Acquire client of ", authority, " for ", thread.getName());
+				client = new PooledContentProviderClient(authority, providerClient, thread);
+				m_ContentProviderClients.add(client);
+			}
+			++client.refCount;
+			return client;
+		}
+	}
+	
+	
 	// Cancel content provider access.
 	private static void cancelContentProviderAccess(ContentProviderAccessHandle handle)
 	{
-		if(m_ContentThreadHandler != null)
-			m_ContentThreadHandler.removeMessages(MSG_ACCESS_CONTENT_PROVIDER, handle);
+		synchronized(m_Lock)
+		{
+			if(handle.isRunning)
+				return;
+			if(m_ContentAccessQueue.remove(handle))
+				onContentProviderAccessRemoved(handle);
+			else if(handle.group != null)
+			{
+				ArrayDeque<ContentProviderAccessHandle> groupQueue = m_ContentAccessGroupQueues.get(handle.group);
+				if(groupQueue != null)
+					groupQueue.remove(handle);
+			}
+		}
 	}
 	
 	
@@ -402,9 +720,20 @@ public class MediaManager
 		
 		// create system sets
 		if(m_CameraRollMediaSet == null)
+		{
 			m_CameraRollMediaSet = new CameraRollMediaSet();
+			m_CameraRollMediaSet.setMediaChangeRouted(true);
+		}
 		list.addMediaSet(m_CameraRollMediaSet);
 		
+		// start routing media changes
+		if(!Handle.isValid(m_MediaChangedCBHandles))
+		{
+			m_MediaChangedCBHandles = new HandleSet();
+			m_MediaChangedCBHandles.addHandle(registerContentChangedCallback(CONTENT_URI_IMAGE, m_MediaChangedCallback));
+			m_MediaChangedCBHandles.addHandle(registerContentChangedCallback(CONTENT_URI_VIDEO, m_MediaChangedCallback));
+		}
+		
 		// refresh directory sets
 		if(m_ActiveMediaSetLists.size() == 1)
 			refreshDirectoryMediaSets();
@@ -427,10 +756,6 @@ public class MediaManager
 	{
 		switch(msg.what)
 		{
-			case MSG_ACCESS_CONTENT_PROVIDER:
-				accessContentProvider((ContentProviderAccessHandle)msg.obj);
-				break;
-				
 			case MSG_REGISTER_CONTENT_CHANGED_CB:
 				registerContentChangedCallback((ContentChangeCallbackHandle)msg.obj);
 				break;
@@ -443,17 +768,40 @@ public class MediaManager
 	
 	
 	// Handle main thread message.
+	@SuppressWarnings("unchecked")
 	private static void handleMessage(Message msg)
 	{
 		switch(msg.what)
 		{
-			case MSG_DIR_MEDIA_SET_CREATED:
-				onDirectoryMediaSetCreated(msg.arg1, (String)msg.obj);
+			case MSG_DIR_MEDIA_SETS_CHANGED:
+			{
+				Object[] params = (Object[])msg.obj;
+				onDirectoryMediaSetsChanged((List<DirectoryInfo>)params[0], (List<Integer>)params[1]);
+				break;
+			}
+			
+			case MSG_MEDIA_CHANGES_ROUTED:
+			{
+				Object[] params = (Object[])msg.obj;
+				onMediaChangesRouted((LongHashSet)params[0], (HashMap<Integer, List<MediaStoreMedia>>)params[1], (List<MediaStoreMedia>)params[2], msg.arg1 != 0);
+				break;
+			}
+			
+			case MSG_MEDIA_COUNTS_REFRESHED:
+			{
+				Object[] params = (Object[])msg.obj;
+				onMediaCountsRefreshed((MediaStoreMediaSet[])params[0], (HashMap<Integer, Integer>)params[1], msg.arg1);
+				break;
+			}
+			
+			case MSG_REFRESH_DIR_MEDIA_SETS:
+				refreshDirectoryMediaSets();
 				break;
 				
-			case MSG_DIR_MEDIA_SET_DELETED:
-				onDirectoryMediaSetDeleted(msg.arg1);
+			case MSG_REFRESH_MEDIA_COUNTS:
+				refreshMediaCounts();
 				break;
+			
 		}
 	}
 	
@@ -473,6 +821,24 @@ public class MediaManager
 				MediaManager.handleMessage(msg);
 			}
 		};
+		m_MediaChangeScheduler = new ContentChangeScheduler(TAG, m_Handler, new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				routeMediaChanges();
+			}
+		});
+	}
+	
+	
+	/**
+	 * Get scheduler which routes changed media to media sets, it can be used to tune scheduling parameters or to read counters.
+	 * @return Media change scheduler, or Null if media manager is not initialized yet.
+	 */
+	public static ContentChangeScheduler getMediaChangeScheduler()
+	{
+		return m_MediaChangeScheduler;
 	}
 	
 	
@@ -486,28 +852,192 @@ public class MediaManager
 	}
 	
 	
-	// Called when new directory media set created. (in main thread)
-	private static void onDirectoryMediaSetCreated(int id, String path)
+	// Stop pooling content provider client whose provider process died.
+	private static void invalidateContentProviderClient(PooledContentProviderClient client)
+	{
+		synchronized(m_ContentProviderClients)
+		{
+			client.isDead = true;
+			m_ContentProviderClients.remove(client);
+		}
+	}
+	
+	
+	// Invalidate pooled content provider client which wraps given client.
+	private static void invalidateContentProviderClient(ContentProviderClient providerClient)
+	{
+		synchronized(m_ContentProviderClients)
+		{
+			for(int i = m_ContentProviderClients.size() - 1 ; i >= 0 ; --i)
+			{
+				PooledContentProviderClient client = m_ContentProviderClients.get(i);
+				if(client.client == providerClient)
+				{
+					invalidateContentProviderClient(client);
+					return;
+				}
+			}
+		}
+	}
+	
+	
+	/**
+	 * Get {@link MediaStoreMedia} instance for given media store row. Existing instance will be updated and returned if it is still in use, so media shared by several media sets exists only once.
+	 * @param row Values of media.
+	 * @param handler Handler.
+	 * @return Media instance, or Null if row is not a photo or video.
+	 */
+	static MediaStoreMedia obtainMedia(MediaStoreMedia.Row row, Handler handler)
 	{
-		if(m_ActiveMediaSetLists.isEmpty() || m_DirectoryMediaSets.containsKey(id))
+		synchronized(m_MediaRegistry)
+		{
+			// remove collected media
+			purgeMediaRegistry();
+			
+			// use existing media
+			MediaReference reference = m_MediaRegistry.get(row.id);
+			MediaStoreMedia media = (reference != null ? reference.get() : null);
+			if(media != null && media.getHandler().getLooper() == handler.getLooper() && media.update(row))
+				return media;
+			
+			// create new media
+			media = MediaStoreMedia.newInstance(row, handler);
+			if(media != null)
+				m_MediaRegistry.put(row.id, new MediaReference(media, m_MediaReferenceQueue));
+			else if(reference != null)
+				m_MediaRegistry.remove(row.id);
+			return media;
+		}
+	}
+	
+	
+	// Called when directories have been created or deleted. (in main thread)
+	private static void onDirectoryMediaSetsChanged(List<DirectoryInfo> createdDirs, List<Integer> deletedDirIds)
+	{
+		// check state
+		if(m_ActiveMediaSetLists.isEmpty())
 			return;
-		DirectoryMediaSet set = new DirectoryMediaSet(path, id);
-		m_DirectoryMediaSets.put(id, set);
+		
+		// create media sets
+		List<DirectoryMediaSet> createdSets = new ArrayList<>();
+		for(int i = 0, count = createdDirs.size() ; i < count ; ++i)
+		{
+			DirectoryInfo dirInfo = createdDirs.get(i);
+			if(m_DirectoryMediaSets.containsKey(dirInfo.id))
+				continue;
+			DirectoryMediaSet set = new DirectoryMediaSet(dirInfo.path, dirInfo.id);
+			set.setMediaChangeRouted(true);
+			set.setMediaCount(dirInfo.mediaCount);
+			m_DirectoryMediaSets.put(dirInfo.id, set);
+			createdSets.add(set);
+		}
+		
+		// remove media sets
+		List<DirectoryMediaSet> deletedSets = new ArrayList<>();
+		for(int i = deletedDirIds.size() - 1 ; i >= 0 ; --i)
+		{
+			DirectoryMediaSet set = m_DirectoryMediaSets.remove(deletedDirIds.get(i));
+			if(set != null)
+				deletedSets.add(set);
+		}
+		
+		// update lists
+		Log.v(TAG, "onDirectoryMediaSetsChanged() - Created : ", createdSets.size(), ", deleted : ", deletedSets.size());
 		for(int i = m_ActiveMediaSetLists.size() - 1 ; i >= 0 ; --i)
-			m_ActiveMediaSetLists.get(i).addMediaSet(set);
+		{
+			MediaSetListImpl list = m_ActiveMediaSetLists.get(i);
+			list.removeMediaSets(deletedSets);
+			list.addMediaSets(createdSets);
+		}
+		for(int i = deletedSets.size() - 1 ; i >= 0 ; --i)
+			deletedSets.get(i).release();
 	}
 	
 	
-	// Called when directory media set deleted. (in main thread)
-	private static void onDirectoryMediaSetDeleted(int id)
+	// Called when media in media store changed. (in content thread)
+	private static void onMediaChanged(Uri contentUri)
 	{
-		DirectoryMediaSet set = m_DirectoryMediaSets.get(id);
-		if(set == null)
+		// check media ID, media sets handle other changes by themselves
+		long id = parseMediaId(contentUri);
+		if(id <= 0)
+		{
+			scheduleDirectoryMediaSetsRefresh(DELAY_ROUTE_MEDIA_CHANGES);
 			return;
-		m_DirectoryMediaSets.remove(id);
-		for(int i = m_ActiveMediaSetLists.size() - 1 ; i >= 0 ; --i)
-			m_ActiveMediaSetLists.get(i).removeMediaSet(set);
-		set.release();
+		}
+		
+		// collect changed media
+		synchronized(m_Lock)
+		{
+			if(m_IsAllMediaChanged)
+				return;
+			m_ChangedMediaIds.add(id);
+			if(m_ChangedMediaIds.size() > MAX_ROUTED_MEDIA_CHANGES)
+			{
+				m_IsAllMediaChanged = true;
+				m_ChangedMediaIds.clear();
+			}
+		}
+		
+		// route later
+		m_MediaChangeScheduler.notifyChange();
+	}
+	
+	
+	// Called when changed media has been routed to media sets. (in main thread)
+	private static void onMediaChangesRouted(LongHashSet mediaIds, HashMap<Integer, List<MediaStoreMedia>> dirMedia, List<MediaStoreMedia> cameraRollMedia, boolean hasDeletedMedia)
+	{
+		// check whether directories may be created or deleted
+		boolean refreshDirs = hasDeletedMedia;
+		if(!refreshDirs)
+		{
+			String picturesPath = (Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_PICTURES).getAbsolutePath() + "/");
+			for(Map.Entry<Integer, List<MediaStoreMedia>> entry : dirMedia.entrySet())
+			{
+				if(m_DirectoryMediaSets.containsKey(entry.getKey()))
+					continue;
+				String filePath = entry.getValue().get(0).getFilePath();
+				if(filePath != null && filePath.startsWith(picturesPath))
+				{
+					refreshDirs = true;
+					break;
+				}
+			}
+		}
+		if(refreshDirs)
+			scheduleDirectoryMediaSetsRefresh(DELAY_REFRESH_DIR_MEDIA_SETS);
+		
+		// notify media sets
+		if(m_CameraRollMediaSet != null)
+			m_CameraRollMediaSet.onMediaStoreMediaChanged(mediaIds, cameraRollMedia, hasDeletedMedia);
+		for(DirectoryMediaSet set : m_DirectoryMediaSets.values())
+		{
+			List<MediaStoreMedia> media = dirMedia.get(set.getDirectoryId());
+			set.onMediaStoreMediaChanged(mediaIds, (media != null ? media : Collections.<MediaStoreMedia>emptyList()), hasDeletedMedia);
+		}
+	}
+	
+	
+	// Called when media counts of directories refreshed. (in main thread)
+	private static void onMediaCountsRefreshed(MediaStoreMediaSet[] sets, HashMap<Integer, Integer> dirMediaCounts, int cameraRollMediaCount)
+	{
+		boolean hasEmptyDir = false;
+		for(int i = sets.length - 1 ; i >= 0 ; --i)
+		{
+			MediaStoreMediaSet set = sets[i];
+			if(set instanceof DirectoryMediaSet)
+			{
+				Integer count = dirMediaCounts.get(((DirectoryMediaSet)set).getDirectoryId());
+				set.setMediaCount(count != null ? count : 0);
+				if(count == null && !set.get(MediaSet.PROP_IS_RELEASED))
+					hasEmptyDir = true;
+			}
+			else if(set instanceof CameraRollMediaSet)
+				set.setMediaCount(cameraRollMediaCount);
+		}
+		
+		// directory may be emptied by moving media out, rediscover to remove it
+		if(hasEmptyDir)
+			scheduleDirectoryMediaSetsRefresh(DELAY_REFRESH_DIR_MEDIA_SETS);
 	}
 	
 	
@@ -520,6 +1050,9 @@ public class MediaManager
 			
 			if(m_ActiveMediaSetLists.isEmpty())
 			{
+				// stop routing media changes
+				m_MediaChangedCBHandles = Handle.close(m_MediaChangedCBHandles);
+				
 				// release system sets
 				if(m_CameraRollMediaSet != null)
 				{
@@ -536,6 +1069,67 @@ public class MediaManager
 	}
 	
 	
+	// Called when values of media have been updated without changing media store row. (in media thread)
+	static void onMediaUpdated(MediaStoreMedia media)
+	{
+		if(m_CameraRollMediaSet != null)
+			m_CameraRollMediaSet.onMediaUpdated(media);
+		for(DirectoryMediaSet set : m_DirectoryMediaSets.values())
+			set.onMediaUpdated(media);
+	}
+	
+	
+	// Called when content provider access completed or removed from queue. (in locked state)
+	private static void onContentProviderAccessRemoved(ContentProviderAccessHandle handle)
+	{
+		// check group
+		if(handle.group == null)
+			return;
+		ArrayDeque<ContentProviderAccessHandle> groupQueue = m_ContentAccessGroupQueues.get(handle.group);
+		if(groupQueue == null || groupQueue.peek() != handle)
+			return;
+		
+		// start next access in group
+		groupQueue.poll();
+		ContentProviderAccessHandle nextHandle = groupQueue.peek();
+		if(nextHandle == null)
+		{
+			m_ContentAccessGroupQueues.remove(handle.group);
+			return;
+		}
+		for(ContentProviderAccessHandle pendingHandle : groupQueue)
+		{
+			if(pendingHandle.priority < nextHandle.priority)
+				nextHandle.priority = pendingHandle.priority;
+		}
+		m_ContentAccessQueue.add(nextHandle);
+		m_Lock.notifyAll();
+	}
+	
+	
+	/**
+	 * Parse media ID from content URI.
+	 * @param contentUri Content URI.
+	 * @return Media ID, or -1 if content URI doesn't point to specific media.
+	 */
+	static long parseMediaId(Uri contentUri)
+	{
+		if(contentUri == null)
+			return -1;
+		String segment = contentUri.getLastPathSegment();
+		if(segment == null)
+			return -1;
+		try
+		{
+			return Long.parseLong(segment);
+		}
+		catch(NumberFormatException ex)
+		{
+			return -1;
+		}
+	}
+	
+	
 	/**
 	 * Post action to content thread.
 	 * @param r Action to run.
@@ -562,6 +1156,117 @@ public class MediaManager
 	}
 	
 	
+	// Release pooled content provider client (in worker thread)
+	private static void releaseContentProviderClient(PooledContentProviderClient client)
+	{
+		synchronized(m_ContentProviderClients)
+		{
+			if(--client.refCount > 0)
+				return;
+			if(client.isDead)
+			{
+				client.client.release();
+				return;
+			}
+			client.lastUsedTime = SystemClock.uptimeMillis();
+			if(m_IsIdleContentProviderClientsReleaseScheduled)
+				return;
+			m_IsIdleContentProviderClientsReleaseScheduled = true;
+		}
+		postToContentThread(m_ReleaseIdleContentProviderClientsRunnable, DELAY_RELEASE_IDLE_CONTENT_PROVIDER_CLIENTS);
+	}
+	
+	
+	// Release content provider clients which are not used for a while (in content thread)
+	private static void releaseIdleContentProviderClients()
+	{
+		long time = SystemClock.uptimeMillis();
+		long nextReleaseTime = Long.MAX_VALUE;
+		synchronized(m_ContentProviderClients)
+		{
+			m_IsIdleContentProviderClientsReleaseScheduled = false;
+			Iterator<PooledContentProviderClient> iterator = m_ContentProviderClients.iterator();
+			while(iterator.hasNext())
+			{
+				PooledContentProviderClient client = iterator.next();
+				if(client.refCount > 0)
+					continue;
+				long releaseTime = (client.lastUsedTime + DELAY_RELEASE_IDLE_CONTENT_PROVIDER_CLIENTS);
+				if(releaseTime <= time)
+				{
+					Log.v(TAG, "releaseIdleContentProviderClients() - Release client of ", client.authority, " for ", client.thread.getName());
+					iterator.remove();
+					client.client.release();
+				}
+				else if(releaseTime < nextReleaseTime)
+					nextReleaseTime = releaseTime;
+			}
+			if(nextReleaseTime == Long.MAX_VALUE)
+				return;
+			m_IsIdleContentProviderClientsReleaseScheduled = true;
+		}
+		postToContentThread(m_ReleaseIdleContentProviderClientsRunnable, nextReleaseTime - time);
+	}
+	
+	
+	// Remove entries of collected media from registry.
+	private static void purgeMediaRegistry()
+	{
+		MediaReference reference = (MediaReference)m_MediaReferenceQueue.poll();
+		while(reference != null)
+		{
+			if(m_MediaRegistry.get(reference.id) == reference)
+				m_MediaRegistry.remove(reference.id);
+			reference = (MediaReference)m_MediaReferenceQueue.poll();
+		}
+	}
+	
+	
+	/**
+	 * Query content provider in {@link ContentProviderAccessCallback}. If content provider died, only this query will be retried with new client, so results posted by call-back before will not be posted again.
+	 * @param client Content provider client given to call-back.
+	 * @param contentUri Content URI to query.
+	 * @param projection Columns to query.
+	 * @param selection Selection.
+	 * @param selectionArgs Selection arguments.
+	 * @param sortOrder Sort order.
+	 * @return Cursor, or Null if fail to query.
+	 */
+	static Cursor query(ContentProviderClient client, Uri contentUri, String[] projection, String selection, String[] selectionArgs, String sortOrder) throws RemoteException
+	{
+		// query with given client
+		DeadObjectException deadObjectException;
+		try
+		{
+			return client.query(contentUri, projection, selection, selectionArgs, sortOrder);
+		}
+		catch(DeadObjectException ex)
+		{
+			Log.w(TAG, "query() - Content provider of ", contentUri.getAuthority(), " died, retry with new client");
+			invalidateContentProviderClient(client);
+			deadObjectException = ex;
+		}
+		
+		// retry with new client
+		PooledContentProviderClient newClient = acquireContentProviderClient(contentUri);
+		if(newClient == null)
+			throw deadObjectException;
+		try
+		{
+			return newClient.client.query(contentUri, projection, selection, selectionArgs, sortOrder);
+		}
+		catch(DeadObjectException ex)
+		{
+			invalidateContentProviderClient(newClient);
+			throw ex;
+		}
+		finally
+		{
+			releaseContentProviderClient(newClient);
+		}
+	}
+	
+	
 	/**
 	 * Register content change call-back.
 	 * @param contentUri Content URI to listen.
@@ -609,11 +1314,7 @@ public class MediaManager
 	private static void refreshDirectoryMediaSets()
 	{
 		// get current directory ID
-		final HashSet<Integer> dirIdTable;
-		if(m_DirectoryMediaSets != null)
-			dirIdTable = new HashSet<>(m_DirectoryMediaSets.keySet());
-		else
-			dirIdTable = new HashSet<>();
+		final HashSet<Integer> dirIdTable = new HashSet<>(m_DirectoryMediaSets.keySet());
 		
 		// refresh
 		accessContentProvider(CONTENT_URI_FILE, new ContentProviderAccessCallback()
@@ -621,34 +1322,170 @@ public class MediaManager
 			@Override
 			public void onAccessContentProvider(ContentResolver contentResolver, Uri contentUri, ContentProviderClient client) throws RemoteException
 			{
+				// count media in each directory
 				String picturesPath = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_PICTURES).getAbsolutePath();
-				Cursor cursor = client.query(contentUri, DIR_COLUMNS, DIR_QUERY_CONDITION, new String[]{ picturesPath + "/%" }, null);
-				if(cursor != null)
+				Cursor cursor = queryDirectoryMediaCounts(client, contentUri, DIR_QUERY_CONDITION, new String[]{ picturesPath + "/%" });
+				if(cursor == null)
+					return;
+				List<Integer> createdDirIds = new ArrayList<>();
+				List<Integer> createdDirMediaCounts = new ArrayList<>();
+				List<Integer> deletedDirIds;
+				try
 				{
-					try
+					// find created directories
+					while(cursor.moveToNext())
 					{
-						// add media sets
-						HashSet<Integer> newDirIdTable = new HashSet<>();
-						while(cursor.moveToNext())
+						int id = cursor.getInt(MEDIA_COUNT_COLUMN_PARENT);
+						int mediaCount = cursor.getInt(MEDIA_COUNT_COLUMN_COUNT);
+						if(mediaCount > 0 && !dirIdTable.remove(id))
 						{
-							int id = cursor.getInt(0);
-							if(dirIdTable.remove(id) || !newDirIdTable.add(id))
-								continue;
-							String path = Path.getDirectoryPath(cursor.getString(1));
-							Message.obtain(m_Handler, MSG_DIR_MEDIA_SET_CREATED, id, 0, path).sendToTarget();
+							createdDirIds.add(id);
+							createdDirMediaCounts.add(mediaCount);
 						}
-						
-						// remove media sets
-						for(int id : dirIdTable)
-							Message.obtain(m_Handler, MSG_DIR_MEDIA_SET_DELETED, id, 0).sendToTarget();
 					}
-					finally
+					
+					// find deleted directories
+					deletedDirIds = new ArrayList<>(dirIdTable);
+				}
+				finally
+				{
+					cursor.close();
+				}
+				
+				// get paths of created directories
+				List<DirectoryInfo> createdDirs = new ArrayList<>();
+				if(!createdDirIds.isEmpty())
+				{
+					HashMap<Integer, String> dirPaths = queryDirectoryPaths(client, contentUri, createdDirIds);
+					for(int i = 0, count = createdDirIds.size() ; i < count ; ++i)
 					{
-						cursor.close();
+						String path = dirPaths.get(createdDirIds.get(i));
+						if(path != null)
+							createdDirs.add(new DirectoryInfo(createdDirIds.get(i), path, createdDirMediaCounts.get(i)));
 					}
 				}
+				if(!createdDirs.isEmpty() || !deletedDirIds.isEmpty())
+					Message.obtain(m_Handler, MSG_DIR_MEDIA_SETS_CHANGED, new Object[]{ createdDirs, deletedDirIds }).sendToTarget();
 			}
-		});
+		}, PRIORITY_MEDIA_SET_LIST, MediaManager.class);
+	}
+	
+	
+	// Query paths of given directories. (in content thread)
+	private static HashMap<Integer, String> queryDirectoryPaths(ContentProviderClient client, Uri contentUri, List<Integer> dirIds) throws RemoteException
+	{
+		// query directory entries
+		HashMap<Integer, String> dirPaths = new HashMap<>();
+		StringBuilder condition = new StringBuilder(FileColumns._ID + " IN (");
+		for(int i = 0, count = dirIds.size() ; i < count ; ++i)
+		{
+			if(i > 0)
+				condition.append(',');
+			condition.append(dirIds.get(i));
+		}
+		condition.append(')');
+		Cursor cursor = query(client, contentUri, DIR_PATH_COLUMNS, condition.toString(), null, null);
+		if(cursor != null)
+		{
+			try
+			{
+				while(cursor.moveToNext())
+				{
+					String path = cursor.getString(1);
+					if(path != null)
+						dirPaths.put(cursor.getInt(0), path);
+				}
+			}
+			finally
+			{
+				cursor.close();
+			}
+		}
+		
+		// use path of first media if directory is not in media store
+		for(int i = 0, count = dirIds.size() ; i < count ; ++i)
+		{
+			int dirId = dirIds.get(i);
+			if(dirPaths.containsKey(dirId))
+				continue;
+			cursor = query(client, contentUri, new String[]{ FileColumns.DATA }, MEDIA_QUERY_CONDITION + " AND " + FileColumns.PARENT + "=" + dirId, null, FileColumns._ID + " LIMIT 1");
+			if(cursor == null)
+				continue;
+			try
+			{
+				if(cursor.moveToNext() && cursor.getString(0) != null)
+					dirPaths.put(dirId, Path.getDirectoryPath(cursor.getString(0)));
+			}
+			finally
+			{
+				cursor.close();
+			}
+		}
+		return dirPaths;
+	}
+	
+	
+	/**
+	 * Query media count of each directory by single aggregate query. Each row contains parent ID, media count, latest media ID and file path of latest media in the directory.
+	 * @param client Content provider client.
+	 * @param contentUri Content URI of files.
+	 * @param condition Query condition of media.
+	 * @param conditionArgs Query condition arguments.
+	 * @return Cursor of directories, or Null if fail to query.
+	 */
+	private static Cursor queryDirectoryMediaCounts(ContentProviderClient client, Uri contentUri, String condition, String[] conditionArgs) throws RemoteException
+	{
+		// media provider on API 22 takes no GROUP BY argument but wraps selection as "WHERE (selection)", so close the parenthesis and open another one around the column
+		String groupedCondition = ("(" + condition + ")) GROUP BY (" + FileColumns.PARENT);
+		
+		// bare DATA column is taken from the row of Max(_id) by SQLite
+		return query(client, contentUri, MEDIA_COUNT_COLUMNS, groupedCondition, conditionArgs, null);
+	}
+	
+	
+	// Refresh media counts of all requested media sets by single query. (in main thread)
+	private static void refreshMediaCounts()
+	{
+		// collect media sets
+		if(m_MediaCountRefreshingSets.isEmpty())
+			return;
+		final MediaStoreMediaSet[] sets = new MediaStoreMediaSet[m_MediaCountRefreshingSets.size()];
+		m_MediaCountRefreshingSets.toArray(sets);
+		m_MediaCountRefreshingSets.clear();
+		Log.v(TAG, "refreshMediaCounts() - Refresh ", sets.length, " media sets");
+		
+		// refresh
+		accessContentProvider(CONTENT_URI_FILE, new ContentProviderAccessCallback()
+		{
+			@Override
+			public void onAccessContentProvider(ContentResolver contentResolver, Uri contentUri, ContentProviderClient client) throws RemoteException
+			{
+				String cameraRollPath = (Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DCIM).getAbsolutePath() + "/");
+				HashMap<Integer, Integer> dirMediaCounts = new HashMap<>();
+				int cameraRollMediaCount = 0;
+				
+				// count media in each directory, camera roll contains all directories under DCIM
+				Cursor cursor = queryDirectoryMediaCounts(client, contentUri, MEDIA_QUERY_CONDITION, null);
+				if(cursor == null)
+					return;
+				try
+				{
+					while(cursor.moveToNext())
+					{
+						int count = cursor.getInt(MEDIA_COUNT_COLUMN_COUNT);
+						dirMediaCounts.put(cursor.getInt(MEDIA_COUNT_COLUMN_PARENT), count);
+						String filePath = cursor.getString(MEDIA_COUNT_COLUMN_DATA);
+						if(filePath != null && filePath.regionMatches(true, 0, cameraRollPath, 0, cameraRollPath.length()))
+							cameraRollMediaCount += count;
+					}
+				}
+				finally
+				{
+					cursor.close();
+				}
+				Message.obtain(m_Handler, MSG_MEDIA_COUNTS_REFRESHED, cameraRollMediaCount, 0, new Object[]{ sets, dirMediaCounts }).sendToTarget();
+			}
+		}, PRIORITY_MEDIA_COUNT, MediaManager.class);
 	}
 	
 	
@@ -671,6 +1508,128 @@ public class MediaManager
 	}
 	
 	
+	/**
+	 * Request refreshing media count of given media set together with other media sets by single query.
+	 * @param set Media set to refresh.
+	 * @return True if refresh has been scheduled, False if media count of given set cannot be refreshed by media manager.
+	 */
+	static boolean requestMediaCountRefresh(MediaStoreMediaSet set)
+	{
+		// check state
+		if(m_Handler == null || !(set instanceof DirectoryMediaSet || set instanceof CameraRollMediaSet))
+			return false;
+		
+		// schedule refresh
+		if(!m_MediaCountRefreshingSets.contains(set))
+			m_MediaCountRefreshingSets.add(set);
+		if(!m_Handler.hasMessages(MSG_REFRESH_MEDIA_COUNTS))
+			m_Handler.sendEmptyMessageDelayed(MSG_REFRESH_MEDIA_COUNTS, DELAY_REFRESH_MEDIA_COUNTS);
+		return true;
+	}
+	
+	
+	// Route changed media to media sets which they belong to. (in main thread)
+	private static void routeMediaChanges()
+	{
+		// collect changed media
+		final LongHashSet mediaIds = new LongHashSet();
+		boolean isAllMediaChanged;
+		synchronized(m_Lock)
+		{
+			isAllMediaChanged = m_IsAllMediaChanged;
+			mediaIds.addAll(m_ChangedMediaIds);
+			m_IsAllMediaChanged = false;
+			m_ChangedMediaIds.clear();
+		}
+		
+		// refresh all media sets
+		if(isAllMediaChanged)
+		{
+			Log.v(TAG, "routeMediaChanges() - Too many changes, refresh all media sets");
+			scheduleDirectoryMediaSetsRefresh(DELAY_REFRESH_DIR_MEDIA_SETS);
+			if(m_CameraRollMediaSet != null)
+				m_CameraRollMediaSet.handleMediaStoreContentChange();
+			for(DirectoryMediaSet set : m_DirectoryMediaSets.values())
+				set.handleMediaStoreContentChange();
+			return;
+		}
+		if(mediaIds.isEmpty())
+			return;
+		Log.v(TAG, "routeMediaChanges() - Route ", mediaIds.size(), " changed media");
+		
+		// query changed media
+		StringBuilder condition = new StringBuilder(MEDIA_QUERY_CONDITION);
+		condition.append(" AND ").append(FileColumns._ID).append(" IN (");
+		long[] idArray = mediaIds.toArray();
+		for(int i = 0 ; i < idArray.length ; ++i)
+		{
+			if(i > 0)
+				condition.append(',');
+			condition.append(idArray[i]);
+		}
+		condition.append(')');
+		final String mediaCondition = condition.toString();
+		accessContentProvider(CONTENT_URI_FILE, new ContentProviderAccessCallback()
+		{
+			@Override
+			public void onAccessContentProvider(ContentResolver contentResolver, Uri contentUri, ContentProviderClient client) throws RemoteException
+			{
+				String cameraRollPath = (Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DCIM).getAbsolutePath() + "/");
+				String[] columns = Arrays.copyOf(MediaStoreMedia.MEDIA_COLUMNS, MediaStoreMedia.MEDIA_COLUMNS.length + 1);
+				columns[columns.length - 1] = FileColumns.PARENT;
+				HashMap<Integer, List<MediaStoreMedia>> dirMedia = new HashMap<>();
+				List<MediaStoreMedia> cameraRollMedia = new ArrayList<>();
+				int mediaCount = 0;
+				Cursor cursor = query(client, contentUri, columns, mediaCondition, null, null);
+				if(cursor == null)
+					return;
+				try
+				{
+					int parentColumn = (columns.length - 1);
+					MediaStoreRowReader reader = new MediaStoreRowReader(cursor);
+					while(cursor.moveToNext())
+					{
+						// create media
+						++mediaCount;
+						MediaStoreMedia media = reader.createMedia(m_Handler);
+						if(media == null)
+							continue;
+						
+						// route to directory
+						int dirId = cursor.getInt(parentColumn);
+						List<MediaStoreMedia> mediaList = dirMedia.get(dirId);
+						if(mediaList == null)
+						{
+							mediaList = new ArrayList<>();
+							dirMedia.put(dirId, mediaList);
+						}
+						mediaList.add(media);
+						
+						// route to camera roll
+						String filePath = media.getFilePath();
+						if(filePath != null && filePath.regionMatches(true, 0, cameraRollPath, 0, cameraRollPath.length()))
+							cameraRollMedia.add(media);
+					}
+				}
+				finally
+				{
+					cursor.close();
+				}
+				boolean hasDeletedMedia = (mediaCount < mediaIds.size());
+				Message.obtain(m_Handler, MSG_MEDIA_CHANGES_ROUTED, (hasDeletedMedia ? 1 : 0), 0, new Object[]{ mediaIds, dirMedia, cameraRollMedia }).sendToTarget();
+			}
+		}, PRIORITY_VISIBLE_MEDIA, MediaManager.class);
+	}
+	
+	
+	// Schedule refreshing directory media sets.
+	private static void scheduleDirectoryMediaSetsRefresh(long delayMillis)
+	{
+		if(!m_Handler.hasMessages(MSG_REFRESH_DIR_MEDIA_SETS))
+			m_Handler.sendEmptyMessageDelayed(MSG_REFRESH_DIR_MEDIA_SETS, delayMillis);
+	}
+	
+	
 	// Start content thread.
 	private static void startContentThread()
 	{
@@ -697,6 +1656,66 @@ public class MediaManager
 	}
 	
 	
+	// Start worker threads to access content provider. (in locked state)
+	private static void startContentWorkerThreads()
+	{
+		if(m_ContentWorkerThreads != null)
+			return;
+		Log.v(TAG, "startContentWorkerThreads() - Start ", CONTENT_WORKER_THREAD_COUNT, " threads");
+		m_ContentWorkerThreads = new Thread[CONTENT_WORKER_THREAD_COUNT];
+		for(int i = 0 ; i < CONTENT_WORKER_THREAD_COUNT ; ++i)
+		{
+			m_ContentWorkerThreads[i] = new Thread("Gallery media content worker " + i)
+			{
+				@Override
+				public void run()
+				{
+					runContentWorkerThread();
+				}
+			};
+			m_ContentWorkerThreads[i].start();
+		}
+	}
+	
+	
+	// Entry of worker thread to access content provider.
+	private static void runContentWorkerThread()
+	{
+		while(true)
+		{
+			// wait for next access
+			ContentProviderAccessHandle handle;
+			synchronized(m_Lock)
+			{
+				while(m_ContentAccessQueue.isEmpty())
+				{
+					try
+					{
+						m_Lock.wait();
+					}
+					catch(InterruptedException ex)
+					{
+						Log.w(TAG, "runContentWorkerThread() - Interrupted");
+						return;
+					}
+				}
+				handle = m_ContentAccessQueue.poll();
+				handle.isRunning = true;
+			}
+			
+			// access
+			accessContentProvider(handle);
+			
+			// complete
+			synchronized(m_Lock)
+			{
+				handle.isRunning = false;
+				onContentProviderAccessRemoved(handle);
+			}
+		}
+	}
+	
+	
 	// Register content change call-back (in content thread)
 	private static void unregisterContentChangedCallback(ContentChangeCallbackHandle handle)
 	{
@@ -21,6 +21,17 @@ public interface MediaSet extends BaseObject, HandlerObject
 	PropertyKey<String> PROP_NAME = new PropertyKey<>("Name", String.class, MediaSet.class, 0, null);
 	
 	
+	/**
+	 * Flag for {@link #openMediaList(MediaComparator, int, int)} to keep media in primitive-packed table and create {@link Media} only when accessing.
+	 */
+	int FLAG_PACKED = 0x1;
+	/**
+	 * Flag for {@link #openMediaList(MediaComparator, int, int)} to know number of media first and load media page-by-page around accessed position.
+	 * Media which is not loaded yet will be Null, and {@link MediaList#EVENT_MEDIA_UPDATED} will be raised after loading.
+	 */
+	int FLAG_VIRTUAL = 0x2;
+	
+	
 	/**
 	 * Media set type.
 	 */
@@ -56,7 +67,11 @@ public interface MediaSet extends BaseObject, HandlerObject
 	 * Open media list.
 	 * @param comparator {@link Comparator} to sort media in list.
 	 * @param maxMediaCount Maximum number of media allowed in list, negative value means unlimited.
-	 * @param flags Flags, reserved.
+	 * @param flags Flags :
+	 * <ul>
+	 *   <li>{@link #FLAG_PACKED}</li>
+	 *   <li>{@link #FLAG_VIRTUAL}</li>
+	 * </ul>
 	 * @return Media list.
 	 */
 	MediaList openMediaList(MediaComparator comparator, int maxMediaCount, int flags);
@@ -3,6 +3,7 @@ package com.oneplus.gallery.media;
 import java.util.List;
 
 import com.oneplus.base.BaseObject;
+import com.oneplus.base.EventArgs;
 import com.oneplus.base.EventKey;
 import com.oneplus.base.HandlerObject;
 import com.oneplus.gallery.ListChangeEventArgs;
@@ -16,6 +17,15 @@ public interface MediaSetList extends List<MediaSet>, BaseObject, HandlerObject
 	 * Raised when media set added.
 	 */
 	EventKey<ListChangeEventArgs> EVENT_MEDIA_SET_ADDED = new EventKey<>("MediaSetAdded", ListChangeEventArgs.class, MediaSetList.class);
+	/**
+	 * Raised after raising all {@link #EVENT_MEDIA_SET_ADDED} and {@link #EVENT_MEDIA_SET_REMOVED} events of single batch update.
+	 */
+	EventKey<EventArgs> EVENT_MEDIA_SET_BATCH_UPDATE_ENDED = new EventKey<>("MediaSetBatchUpdateEnded", EventArgs.class, MediaSetList.class);
+	/**
+	 * Raised before raising multiple {@link #EVENT_MEDIA_SET_ADDED} and {@link #EVENT_MEDIA_SET_REMOVED} events for single update.
+	 * Content of list may already be in final state when receiving events in batch update.
+	 */
+	EventKey<EventArgs> EVENT_MEDIA_SET_BATCH_UPDATE_STARTED = new EventKey<>("MediaSetBatchUpdateStarted", EventArgs.class, MediaSetList.class);
 	/**
 	 * Raised when media set removed.
 	 */
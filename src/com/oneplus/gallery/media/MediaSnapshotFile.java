@@ -0,0 +1,324 @@
+package com.oneplus.gallery.media;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import com.oneplus.base.Log;
+
+import android.os.Handler;
+import android.provider.MediaStore.Files.FileColumns;
+
+/**
+ * Compact binary file which keeps sorted media list, so media list can be restored without querying media store.
+ */
+final class MediaSnapshotFile
+{
+	// Constants.
+	private static final String TAG = "MediaSnapshotFile";
+	private static final int MAGIC = 0x4F504D53;
+	private static final int VERSION = 1;
+	
+	
+	// Constructor.
+	private MediaSnapshotFile()
+	{}
+	
+	
+	// Read string.
+	private static String getString(ByteBuffer buffer)
+	{
+		int length = buffer.getInt();
+		if(length < 0)
+			return null;
+		char[] chars = new char[length];
+		buffer.asCharBuffer().get(chars);
+		buffer.position(buffer.position() + length * 2);
+		return new String(chars);
+	}
+	
+	
+	// Write string.
+	private static void putString(ByteBuffer buffer, String str)
+	{
+		if(str == null)
+		{
+			buffer.putInt(-1);
+			return;
+		}
+		buffer.putInt(str.length());
+		buffer.asCharBuffer().put(str);
+		buffer.position(buffer.position() + str.length() * 2);
+	}
+	
+	
+	/**
+	 * Read media from file.
+	 * @param file File to read.
+	 * @param key Key to identify content of file, for example query condition. Null will be returned if key doesn't match.
+	 * @param handler Handler for created media.
+	 * @return Sorted media, or Null if file is unavailable.
+	 */
+	public static List<Media> read(File file, String key, Handler handler)
+	{
+		// check file
+		if(!file.exists())
+			return null;
+		long time = System.currentTimeMillis();
+		
+		// read whole file
+		byte[] data;
+		FileInputStream stream = null;
+		try
+		{
+			stream = new FileInputStream(file);
+			data = new byte[(int)file.length()];
+			int offset = 0;
+			while(offset < data.length)
+			{
+				int readCount = stream.read(data, offset, data.length - offset);
+				if(readCount <= 0)
+					break;
+				offset += readCount;
+			}
+			if(offset < data.length)
+			{
+				Log.e(TAG, "read() - Unexpected end of file");
+				return null;
+			}
+		}
+		catch(Throwable ex)
+		{
+			Log.e(TAG, "read() - Fail to read file", ex);
+			return null;
+		}
+		finally
+		{
+			if(stream != null)
+			{
+				try
+				{
+					stream.close();
+				}
+				catch(Throwable ex)
+				{}
+			}
+		}
+		
+		try
+		{
+			// check header
+			ByteBuffer buffer = ByteBuffer.wrap(data);
+			if(buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+			{
+				Log.w(TAG, "read() - Unsupported file");
+				return null;
+			}
+			String fileKey = getString(buffer);
+			if(key != null ? !key.equals(fileKey) : fileKey != null)
+			{
+				Log.w(TAG, "read() - Key changed");
+				return null;
+			}
+			
+			// read MIME types
+			String[] mimeTypes = new String[buffer.getShort()];
+			for(int i = 0 ; i < mimeTypes.length ; ++i)
+				mimeTypes[i] = getString(buffer);
+			
+			// read columns
+			int count = buffer.getInt();
+			long[] ids = new long[count];
+			long[] takenTimes = new long[count];
+			long[] dateModifiedTimes = new long[count];
+			long[] durations = new long[count];
+			int[] widths = new int[count];
+			int[] heights = new int[count];
+			byte[] mediaTypes = new byte[count];
+			short[] mimeTypeIndices = new short[count];
+			int[] filePathOffsets = new int[count + 1];
+			buffer.asLongBuffer().get(ids);
+			buffer.position(buffer.position() + count * 8);
+			buffer.asLongBuffer().get(takenTimes);
+			buffer.position(buffer.position() + count * 8);
+			buffer.asLongBuffer().get(dateModifiedTimes);
+			buffer.position(buffer.position() + count * 8);
+			buffer.asLongBuffer().get(durations);
+			buffer.position(buffer.position() + count * 8);
+			buffer.asIntBuffer().get(widths);
+			buffer.position(buffer.position() + count * 4);
+			buffer.asIntBuffer().get(heights);
+			buffer.position(buffer.position() + count * 4);
+			buffer.get(mediaTypes);
+			buffer.asShortBuffer().get(mimeTypeIndices);
+			buffer.position(buffer.position() + count * 2);
+			buffer.asIntBuffer().get(filePathOffsets);
+			buffer.position(buffer.position() + (count + 1) * 4);
+			CharBuffer filePathChars = buffer.asCharBuffer();
+			
+			// create media
+			List<Media> mediaList = new ArrayList<>(count);
+			MediaStoreMedia.Row row = new MediaStoreMedia.Row();
+			char[] chars = new char[256];
+			for(int i = 0 ; i < count ; ++i)
+			{
+				int pathLength = (filePathOffsets[i + 1] - filePathOffsets[i]);
+				if(pathLength > 0)
+				{
+					if(chars.length < pathLength)
+						chars = new char[pathLength];
+					filePathChars.position(filePathOffsets[i]);
+					filePathChars.get(chars, 0, pathLength);
+					row.filePath = new String(chars, 0, pathLength);
+				}
+				else
+					row.filePath = null;
+				row.id = ids[i];
+				row.takenTime = takenTimes[i];
+				row.dateModified = dateModifiedTimes[i];
+				row.duration = durations[i];
+				row.width = widths[i];
+				row.height = heights[i];
+				row.mediaType = mediaTypes[i];
+				row.mimeType = (mimeTypeIndices[i] >= 0 ? mimeTypes[mimeTypeIndices[i]] : null);
+				MediaStoreMedia media = MediaStoreMedia.create(row, handler);
+				if(media != null)
+					mediaList.add(media);
+			}
+			Log.v(TAG, "read() - Read ", count, " media, take ", (System.currentTimeMillis() - time), " ms");
+			return mediaList;
+		}
+		catch(Throwable ex)
+		{
+			Log.e(TAG, "read() - Invalid file", ex);
+			return null;
+		}
+	}
+	
+	
+	/**
+	 * Write media to file.
+	 * @param file File to write.
+	 * @param key Key to identify content of file.
+	 * @param mediaList Sorted media to write.
+	 * @return True if media written successfully.
+	 */
+	public static boolean write(File file, String key, List<Media> mediaList)
+	{
+		// collect MIME types and file path size
+		long time = System.currentTimeMillis();
+		int count = mediaList.size();
+		HashMap<String, Short> mimeTypeIndices = new HashMap<>();
+		List<String> mimeTypes = new ArrayList<>();
+		int headerSize = (4 + 4 + 4 + (key != null ? key.length() * 2 : 0) + 2);
+		int filePathCharCount = 0;
+		for(int i = 0 ; i < count ; ++i)
+		{
+			Media media = mediaList.get(i);
+			String mimeType = media.getMimeType();
+			if(mimeType != null && !mimeTypeIndices.containsKey(mimeType))
+			{
+				mimeTypeIndices.put(mimeType, (short)mimeTypes.size());
+				mimeTypes.add(mimeType);
+				headerSize += (4 + mimeType.length() * 2);
+			}
+			String filePath = media.getFilePath();
+			if(filePath != null)
+				filePathCharCount += filePath.length();
+		}
+		
+		// write header
+		int size = (headerSize + 4 + count * (8 * 4 + 4 * 2 + 1 + 2) + (count + 1) * 4 + filePathCharCount * 2);
+		ByteBuffer buffer = ByteBuffer.allocate(size);
+		buffer.putInt(MAGIC);
+		buffer.putInt(VERSION);
+		putString(buffer, key);
+		buffer.putShort((short)mimeTypes.size());
+		for(int i = 0, mimeTypeCount = mimeTypes.size() ; i < mimeTypeCount ; ++i)
+			putString(buffer, mimeTypes.get(i));
+		buffer.putInt(count);
+		
+		// write columns
+		int start = buffer.position();
+		for(int i = 0 ; i < count ; ++i)
+		{
+			Media media = mediaList.get(i);
+			int position = (start + i * 8);
+			buffer.putLong(position, (media instanceof MediaStoreMedia ? ((MediaStoreMedia)media).getId() : 0));
+			position += (count * 8);
+			buffer.putLong(position, media.getTakenTime());
+			position += (count * 8);
+			buffer.putLong(position, (media instanceof MediaStoreMedia ? ((MediaStoreMedia)media).getDateModified() : 0));
+			position += (count * 8);
+			buffer.putLong(position, (media instanceof VideoMedia ? ((VideoMedia)media).getDuration() : 0));
+			position = (start + count * 32 + i * 4);
+			buffer.putInt(position, (media instanceof MediaStoreMedia ? ((MediaStoreMedia)media).peekWidth() : media.getWidth()));
+			position += (count * 4);
+			buffer.putInt(position, (media instanceof MediaStoreMedia ? ((MediaStoreMedia)media).peekHeight() : media.getHeight()));
+			buffer.put(start + count * 40 + i, (byte)(media instanceof VideoMedia ? FileColumns.MEDIA_TYPE_VIDEO : FileColumns.MEDIA_TYPE_IMAGE));
+			String mimeType = media.getMimeType();
+			buffer.putShort(start + count * 41 + i * 2, (mimeType != null ? mimeTypeIndices.get(mimeType) : -1));
+		}
+		buffer.position(start + count * 43);
+		
+		// write file paths
+		int filePathOffset = 0;
+		int filePathStart = (buffer.position() + (count + 1) * 4);
+		CharBuffer filePathChars = ((ByteBuffer)buffer.duplicate().position(filePathStart)).asCharBuffer();
+		for(int i = 0 ; i < count ; ++i)
+		{
+			buffer.putInt(filePathOffset);
+			String filePath = mediaList.get(i).getFilePath();
+			if(filePath != null)
+			{
+				filePathChars.put(filePath);
+				filePathOffset += filePath.length();
+			}
+		}
+		buffer.putInt(filePathOffset);
+		
+		// write to temporary file
+		File tempFile = new File(file.getAbsolutePath() + ".tmp");
+		FileOutputStream stream = null;
+		try
+		{
+			stream = new FileOutputStream(tempFile);
+			stream.write(buffer.array(), 0, size);
+			stream.close();
+			stream = null;
+		}
+		catch(Throwable ex)
+		{
+			Log.e(TAG, "write() - Fail to write file", ex);
+			return false;
+		}
+		finally
+		{
+			if(stream != null)
+			{
+				try
+				{
+					stream.close();
+				}
+				catch(Throwable ex)
+				{}
+				tempFile.delete();
+			}
+		}
+		
+		// replace file
+		if(!tempFile.renameTo(file))
+		{
+			Log.e(TAG, "write() - Fail to replace file");
+			tempFile.delete();
+			return false;
+		}
+		Log.v(TAG, "write() - Write ", count, " media, take ", (System.currentTimeMillis() - time), " ms");
+		return true;
+	}
+}
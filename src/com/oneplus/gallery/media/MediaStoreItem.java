@@ -0,0 +1,20 @@
+package com.oneplus.gallery.media;
+
+/**
+ * Media which is identified by a row in media store.
+ */
+public interface MediaStoreItem extends Media
+{
+	/**
+	 * Get last modified time in media store.
+	 * @return Last modified time in seconds.
+	 */
+	long getDateModified();
+	
+	
+	/**
+	 * Get media ID in media store.
+	 * @return Media ID.
+	 */
+	long getId();
+}
@@ -2,6 +2,7 @@ package com.oneplus.gallery.media;
 
 import com.oneplus.database.CursorUtils;
 
+import android.content.ContentUris;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Handler;
@@ -13,7 +14,7 @@ import android.provider.MediaStore.Video.VideoColumns;
 /**
  * {@link Media} implementation based-on media store.
  */
-public abstract class MediaStoreMedia implements Media
+public abstract class MediaStoreMedia implements MediaStoreItem
 {
 	/**
 	 * Columns to be queried from media store.
@@ -24,6 +25,7 @@ public abstract class MediaStoreMedia implements Media
 		FileColumns.DATA,
 		FileColumns.SIZE,
 		MediaColumns.MIME_TYPE,
+		MediaColumns.DATE_MODIFIED,
 		ImageColumns.DATE_TAKEN,
 		MediaColumns.WIDTH,
 		MediaColumns.HEIGHT,
@@ -33,87 +35,146 @@ public abstract class MediaStoreMedia implements Media
 	
 	
 	// Fields.
-	private final Uri m_ContentUri;
+	private volatile Uri m_ContentUri;
+	private final long m_DateModified;
 	private final String m_FilePath;
 	private final Handler m_Handler;
+	private final long m_Id;
 	private final String m_MimeType;
 	private final int[] m_Size = new int[2];
 	private long m_TakenTime;
 	
 	
+	/**
+	 * Values of single media in media store.
+	 */
+	public static class Row
+	{
+		/**
+		 * Last modified time in seconds.
+		 */
+		public long dateModified;
+		/**
+		 * Duration of video in milliseconds.
+		 */
+		public long duration;
+		/**
+		 * File path.
+		 */
+		public String filePath;
+		/**
+		 * Height.
+		 */
+		public int height;
+		/**
+		 * Media ID.
+		 */
+		public long id;
+		/**
+		 * Media type defined in {@link FileColumns}.
+		 */
+		public int mediaType;
+		/**
+		 * MIME type.
+		 */
+		public String mimeType;
+		/**
+		 * Orientation in degrees.
+		 */
+		public int orientation;
+		/**
+		 * Taken time in milliseconds.
+		 */
+		public long takenTime;
+		/**
+		 * Width.
+		 */
+		public int width;
+	}
+	
+	
 	/**
 	 * Initialize new MediaStoreMedia instance.
-	 * @param contentUri Content URI.
-	 * @param cursor Cursor to read data.
+	 * @param row Values of media.
 	 * @param handler Handler.
 	 */
-	protected MediaStoreMedia(Uri contentUri, Cursor cursor, Handler handler)
+	protected MediaStoreMedia(Row row, Handler handler)
 	{
 		// check parameter
 		if(handler == null)
 			throw new IllegalArgumentException("No handler");
 		
-		// save handler
+		// save values
 		m_Handler = handler;
-		
-		// get content URI
-		m_ContentUri = contentUri;
-		
-		// get file path
-		m_FilePath = CursorUtils.getString(cursor, MediaColumns.DATA);
-		
-		// get MIME type
-		m_MimeType = CursorUtils.getString(cursor, FileColumns.MIME_TYPE);
-		
-		// get size
-		this.setupSize(cursor, m_Size);
-		
-		// get taken time
-		m_TakenTime = this.setupTakenTime(cursor);
+		m_Id = row.id;
+		m_DateModified = row.dateModified;
+		m_FilePath = row.filePath;
+		m_MimeType = row.mimeType;
+		m_Size[0] = row.width;
+		m_Size[1] = row.height;
+		m_TakenTime = row.takenTime;
 	}
 	
 	
 	/**
-	 * Create {@link MediaStoreMedia} instance.
+	 * Create {@link MediaStoreMedia} instance. Use {@link MediaStoreRowReader} instead to create media from multiple rows.
 	 * @param cursor Cursor to read data.
 	 * @param handler Handler.
 	 * @return Create media instance, or Null if fail to create.
 	 */
 	public static MediaStoreMedia create(Cursor cursor, Handler handler)
 	{
-		// create media by media type
-		switch(CursorUtils.getInt(cursor, FileColumns.MEDIA_TYPE, FileColumns.MEDIA_TYPE_NONE))
+		return new MediaStoreRowReader(cursor).createMedia(handler);
+	}
+	
+	
+	/**
+	 * Create {@link MediaStoreMedia} instance. Existing instance with same media ID will be returned if it is still in use.
+	 * @param row Values of media.
+	 * @param handler Handler.
+	 * @return Create media instance, or Null if fail to create.
+	 */
+	public static MediaStoreMedia create(Row row, Handler handler)
+	{
+		if(row.id > 0)
+			return MediaManager.obtainMedia(row, handler);
+		return newInstance(row, handler);
+	}
+	
+	
+	// Create new media instance without checking registered media.
+	static MediaStoreMedia newInstance(Row row, Handler handler)
+	{
+		switch(row.mediaType)
 		{
 			case FileColumns.MEDIA_TYPE_IMAGE:
-				return new PhotoMediaStoreMedia(cursor, handler);
+				return new PhotoMediaStoreMedia(row, handler);
 			case FileColumns.MEDIA_TYPE_VIDEO:
-				return new VideoMediaStoreMedia(cursor, handler);
-			case FileColumns.MEDIA_TYPE_NONE:
-				break;
+				return new VideoMediaStoreMedia(row, handler);
 			default:
 				return null;
 		}
-		
-		// create media by MIME type
-		String mimeType = CursorUtils.getString(cursor, FileColumns.MIME_TYPE);
-		if(mimeType != null)
-		{
-			if(mimeType.startsWith("image/"))
-				return new PhotoMediaStoreMedia(cursor, handler);
-			if(mimeType.startsWith("video/"))
-				return new VideoMediaStoreMedia(cursor, handler);
-		}
-		
-		// cannot check file type
-		return null;
 	}
 	
 	
-	// Get content URI.
+	/**
+	 * Get base content URI of this type of media.
+	 * @return Base content URI.
+	 */
+	protected abstract Uri getBaseContentUri();
+	
+	
+	// Get content URI, which will be created when first use.
 	@Override
 	public Uri getContentUri()
 	{
-		return m_ContentUri;
+		Uri contentUri = m_ContentUri;
+		if(contentUri == null && m_Id > 0)
+		{
+			contentUri = ContentUris.withAppendedId(this.getBaseContentUri(), m_Id);
+			m_ContentUri = contentUri;
+		}
+		return contentUri;
 	}
 	
 	
@@ -148,6 +209,14 @@ public abstract class MediaStoreMedia implements Media
 	}
 	
 	
+	// Get last modified time in media store.
+	@Override
+	public long getDateModified()
+	{
+		return m_DateModified;
+	}
+	
+	
 	// Get file path.
 	@Override
 	public String getFilePath()
@@ -168,10 +237,19 @@ public abstract class MediaStoreMedia implements Media
 	@Override
 	public int getHeight()
 	{
+		this.onSizeRequested();
 		return m_Size[1];
 	}
 	
 	
+	// Get media ID in media store.
+	@Override
+	public long getId()
+	{
+		return m_Id;
+	}
+	
+	
 	// Get MIME type.
 	@Override
 	public String getMimeType()
@@ -191,6 +269,27 @@ public abstract class MediaStoreMedia implements Media
 	// Get width.
 	@Override
 	public int getWidth()
+	{
+		this.onSizeRequested();
+		return m_Size[0];
+	}
+	
+	
+	/**
+	 * Get current height without triggering size resolving.
+	 * @return Height.
+	 */
+	final int peekHeight()
+	{
+		return m_Size[1];
+	}
+	
+	
+	/**
+	 * Get current width without triggering size resolving.
+	 * @return Width.
+	 */
+	final int peekWidth()
 	{
 		return m_Size[0];
 	}
@@ -202,7 +301,7 @@ public abstract class MediaStoreMedia implements Media
 	{
 		if(m_FilePath != null)
 			return m_FilePath.hashCode();
-		return m_ContentUri.hashCode();
+		return (int)(m_Id ^ (m_Id >>> 32));
 	}
 	
 	
@@ -215,25 +314,65 @@ public abstract class MediaStoreMedia implements Media
 	
 	
 	/**
-	 * Setup media size.
-	 * @param cursor Cursor.
-	 * @param result Result array to receive width and height.
+	 * Update values from media store row.
+	 * @param row Values of media. Note that row may be reused after calling this method.
+	 * @return True if media updated in place, False if new instance is needed because identity or sorting related values have been changed.
 	 */
-	protected void setupSize(Cursor cursor, int[] result)
+	boolean update(Row row)
 	{
-		result[0] = CursorUtils.getInt(cursor, MediaColumns.WIDTH, 0);
-		result[1] = CursorUtils.getInt(cursor, MediaColumns.HEIGHT, 0);
+		// check values which identify or sort media
+		if(row.id != m_Id || row.dateModified != m_DateModified || row.takenTime != m_TakenTime)
+			return false;
+		if(row.filePath != null ? !row.filePath.equals(m_FilePath) : m_FilePath != null)
+			return false;
+		if(row.mimeType != null ? !row.mimeType.equals(m_MimeType) : m_MimeType != null)
+			return false;
+		if((row.mediaType == FileColumns.MEDIA_TYPE_VIDEO) != (this instanceof VideoMedia))
+			return false;
+		
+		// update other values
+		this.onUpdate(row);
+		return true;
 	}
 	
 	
 	/**
-	 * Setup taken time.
-	 * @param cursor Cursor.
-	 * @return Taken time in milliseconds.
+	 * Called when updating values from media store row. Values should be applied in media thread.
+	 * @param row Values of media. Note that row may be reused after returning.
 	 */
-	protected long setupTakenTime(Cursor cursor)
+	protected void onUpdate(Row row)
 	{
-		return CursorUtils.getLong(cursor, ImageColumns.DATE_TAKEN, 0);
+		final int width = row.width;
+		final int height = row.height;
+		if(width == m_Size[0] && height == m_Size[1])
+			return;
+		m_Handler.post(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				updateSize(width, height);
+			}
+		});
+	}
+	
+	
+	/**
+	 * Called when width or height is requested. Subclass can start resolving actual size here.
+	 */
+	protected void onSizeRequested()
+	{}
+	
+	
+	/**
+	 * Set media size without notifying media lists. This method should be called only when constructing media.
+	 * @param width Width.
+	 * @param height Height.
+	 */
+	protected final void setSize(int width, int height)
+	{
+		m_Size[0] = width;
+		m_Size[1] = height;
 	}
 	
 	
@@ -242,7 +381,22 @@ public abstract class MediaStoreMedia implements Media
 	public String toString()
 	{
 		if(m_FilePath != null)
-			return ("[" + m_ContentUri + ", File = " + m_FilePath + "]");
-		return ("[" + m_ContentUri + "]");
+			return ("[" + this.getContentUri() + ", File = " + m_FilePath + "]");
+		return ("[" + this.getContentUri() + "]");
+	}
+	
+	
+	/**
+	 * Update media size after resolving actual size, media lists which contain this media will be notified if size is changed. This method should be called in media thread.
+	 * @param width Width.
+	 * @param height Height.
+	 */
+	protected void updateSize(int width, int height)
+	{
+		if(width == m_Size[0] && height == m_Size[1])
+			return;
+		m_Size[0] = width;
+		m_Size[1] = height;
+		MediaManager.onMediaUpdated(this);
 	}
 }
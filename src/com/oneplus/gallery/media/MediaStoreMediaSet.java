@@ -1,12 +1,20 @@
 package com.oneplus.gallery.media;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import android.content.ContentProviderClient;
 import android.content.ContentResolver;
+import android.content.res.Resources;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Handler;
@@ -15,13 +23,23 @@ import android.os.RemoteException;
 import android.provider.MediaStore.Files;
 import android.provider.MediaStore.Files.FileColumns;
 import android.provider.MediaStore.Images;
+import android.provider.MediaStore.MediaColumns;
 import android.provider.MediaStore.Video;
+import android.util.DisplayMetrics;
 
+import com.oneplus.base.EventArgs;
+import com.oneplus.base.EventHandler;
+import com.oneplus.base.EventKey;
+import com.oneplus.base.EventSource;
 import com.oneplus.base.Handle;
 import com.oneplus.base.HandleSet;
 import com.oneplus.base.HandlerBaseObject;
 import com.oneplus.base.HandlerUtils;
+import com.oneplus.base.ListHandlerBaseObject;
 import com.oneplus.base.Log;
+import com.oneplus.gallery.GalleryApplication;
+import com.oneplus.gallery.ListChangeEventArgs;
+import com.oneplus.gallery.R;
 
 /**
  * Media set based-on media store.
@@ -32,15 +50,34 @@ public abstract class MediaStoreMediaSet extends HandlerBaseObject implements Me
 	private static final Uri CONTENT_URI_FILE = Files.getContentUri("external");
 	private static final Uri CONTENT_URI_IMAGE = Images.Media.EXTERNAL_CONTENT_URI;
 	private static final Uri CONTENT_URI_VIDEO = Video.Media.EXTERNAL_CONTENT_URI;
-	private static final long DURATION_HANDLE_MS_CONTENT_CHANGE_DELAY = 1500;
 	private static final int MSG_MEDIA_COUNT_CHANGED = -10000;
-	private static final int MSG_HANDLE_MS_CONTENT_CHANGE = -10001;
 	private static final int MSG_ADD_MEDIA_TO_MEDIA_LIST = -10010;
-	private static final int MSG_REMOVE_MEDIA_FROM_MEDIA_LIST = -10011;
+	private static final int MSG_MEDIA_LIST_REFRESHED = -10011;
+	private static final int MSG_SET_MEDIA_TABLE = -10012;
+	private static final int MSG_SET_VIRTUAL_MEDIA_COUNT = -10013;
+	private static final int MSG_VIRTUAL_MEDIA_PAGE_LOADED = -10014;
+	private static final int MSG_SAVE_MEDIA_SNAPSHOT = -10015;
+	private static final int MSG_MEDIA_SNAPSHOT_RESTORED = -10016;
+	private static final long DELAY_SAVE_MEDIA_SNAPSHOT = 5000;
+	private static final long DURATION_MEDIA_BATCH_BUDGET_NANOS = 8000000;
+	private static final int MEDIA_BATCH_SIZE_DEFAULT = 64;
+	private static final int MEDIA_BATCH_SIZE_MAX = 1024;
+	private static final int MEDIA_BATCH_SIZE_MIN = 32;
+	private static final int MEDIA_ID_QUERY_CHUNK_SIZE = 500;
+	private static final int VIRTUAL_MEDIA_PAGE_SIZE = 128;
+	private static final int VIRTUAL_MEDIA_MAX_PAGE_COUNT = 8;
+	
+	
+	// Static fields.
+	private static volatile int m_FirstScreenMediaCount;
 	
 	
 	// Fields.
-	private List<MediaListImpl> m_ActiveMediaLists;
+	private List<MediaListViewImpl> m_ActiveMediaLists;
+	private volatile long m_MediaAddingTimePerItem;
+	private List<PackedMediaListImpl> m_ActivePackedMediaLists;
+	private final ContentChangeScheduler m_ContentChangeScheduler;
+	private List<VirtualMediaListImpl> m_ActiveVirtualMediaLists;
 	private volatile Handle m_MediaCountRefreshHandle;
 	private final MediaManager.ContentChangeCallback m_MediaStoreContentChangedCB = new MediaManager.ContentChangeCallback()
 	{
@@ -50,6 +87,8 @@ public abstract class MediaStoreMediaSet extends HandlerBaseObject implements Me
 			onMediaStoreContentChanged(contentUri);
 		}
 	};
+	private volatile boolean m_IsMediaChangeRouted;
+	private Map<MediaComparator, MediaListImpl> m_MediaSnapshots;
 	private HandleSet m_MediaStoreContentChangedCBHandles;
 	private final Type m_Type;
 	private String m_QueryCondition;
@@ -65,36 +104,462 @@ public abstract class MediaStoreMediaSet extends HandlerBaseObject implements Me
 	};
 	
 	
-	// Media list implementation.
+	// Canonical sorted media snapshot shared by all media lists with same comparator.
 	private final class MediaListImpl extends BasicMediaList
 	{
+		public volatile long maxDateModified;
+		public volatile long maxMediaId;
+		public Handle refreshHandle;
+		public volatile int refreshGeneration;
+		public final List<MediaListViewImpl> views = new ArrayList<>();
+		
 		public MediaListImpl(MediaComparator comparator, int maxMediaCount)
 		{
 			super(comparator, maxMediaCount);
 		}
 		
-		public void getAllContentUris(Set<Uri> result)
+		public void getAllMedia(LongLongHashMap result)
+		{
+			for(int i = this.size() - 1 ; i >= 0 ; --i)
+			{
+				MediaStoreMedia media = (MediaStoreMedia)this.get(i);
+				result.put(media.getId(), media.getDateModified());
+			}
+		}
+		
+		public void getMedia(LongHashSet mediaIds, LongLongHashMap result)
 		{
 			for(int i = this.size() - 1 ; i >= 0 ; --i)
-				result.add(this.get(i).getContentUri());
+			{
+				MediaStoreMedia media = (MediaStoreMedia)this.get(i);
+				if(mediaIds.contains(media.getId()))
+					result.put(media.getId(), media.getDateModified());
+			}
 		}
 		
 		@Override
 		public void release()
 		{
 			super.release();
+			this.refreshHandle = Handle.close(this.refreshHandle);
+			++this.refreshGeneration;
 			this.clearMedia();
 			onMediaListReleased(this);
 		}
 		
-		public void removeMedia(Set<Uri> contentUris)
+		public int removeMedia(final LongHashSet mediaIds)
 		{
-			for(int i = this.size() - 1 ; i >= 0 ; --i)
+			return this.removeMedia(new MediaFilter()
+			{
+				@Override
+				public boolean matches(Media media)
+				{
+					return mediaIds.contains(((MediaStoreMedia)media).getId());
+				}
+			});
+		}
+		
+		public void updateHighWaterMarks(MediaStoreMedia media)
+		{
+			if(media.getId() > this.maxMediaId)
+				this.maxMediaId = media.getId();
+			if(media.getDateModified() > this.maxDateModified)
+				this.maxDateModified = media.getDateModified();
+		}
+		
+		public void updateHighWaterMarks(List<Media> mediaList)
+		{
+			long maxMediaId = this.maxMediaId;
+			long maxDateModified = this.maxDateModified;
+			for(int i = mediaList.size() - 1 ; i >= 0 ; --i)
+			{
+				MediaStoreMedia media = (MediaStoreMedia)mediaList.get(i);
+				if(media.getId() > maxMediaId)
+					maxMediaId = media.getId();
+				if(media.getDateModified() > maxDateModified)
+					maxDateModified = media.getDateModified();
+			}
+			this.maxMediaId = maxMediaId;
+			this.maxDateModified = maxDateModified;
+		}
+	}
+	
+	
+	// Media list which mirrors leading part of media snapshot.
+	private final class MediaListViewImpl extends BasicMediaList
+	{
+		public final MediaListImpl snapshot;
+		private boolean m_IsSnapshotBatchUpdating;
+		private final EventHandler<EventArgs> m_SnapshotBatchUpdateEndedHandler = new EventHandler<EventArgs>()
+		{
+			@Override
+			public void onEventReceived(EventSource source, EventKey<EventArgs> key, EventArgs e)
+			{
+				m_IsSnapshotBatchUpdating = false;
+				fillFromSnapshot();
+				endMediaBatchUpdate();
+			}
+		};
+		private final EventHandler<EventArgs> m_SnapshotBatchUpdateStartedHandler = new EventHandler<EventArgs>()
+		{
+			@Override
+			public void onEventReceived(EventSource source, EventKey<EventArgs> key, EventArgs e)
+			{
+				m_IsSnapshotBatchUpdating = true;
+				beginMediaBatchUpdate();
+			}
+		};
+		private final EventHandler<ListChangeEventArgs> m_SnapshotMediaAddedHandler = new EventHandler<ListChangeEventArgs>()
+		{
+			@Override
+			public void onEventReceived(EventSource source, EventKey<ListChangeEventArgs> key, ListChangeEventArgs e)
+			{
+				onSnapshotMediaAdded(e);
+			}
+		};
+		private final EventHandler<ListChangeEventArgs> m_SnapshotMediaRemovedHandler = new EventHandler<ListChangeEventArgs>()
+		{
+			@Override
+			public void onEventReceived(EventSource source, EventKey<ListChangeEventArgs> key, ListChangeEventArgs e)
+			{
+				onSnapshotMediaRemoved(e);
+			}
+		};
+		private final EventHandler<ListChangeEventArgs> m_SnapshotMediaUpdatedHandler = new EventHandler<ListChangeEventArgs>()
+		{
+			@Override
+			public void onEventReceived(EventSource source, EventKey<ListChangeEventArgs> key, ListChangeEventArgs e)
+			{
+				onSnapshotMediaUpdated(e);
+			}
+		};
+		
+		public MediaListViewImpl(MediaListImpl snapshot, int maxMediaCount)
+		{
+			super(snapshot.getComparator(), maxMediaCount);
+			this.snapshot = snapshot;
+			snapshot.addHandler(EVENT_MEDIA_ADDED, m_SnapshotMediaAddedHandler);
+			snapshot.addHandler(EVENT_MEDIA_REMOVED, m_SnapshotMediaRemovedHandler);
+			snapshot.addHandler(EVENT_MEDIA_UPDATED, m_SnapshotMediaUpdatedHandler);
+			snapshot.addHandler(EVENT_MEDIA_BATCH_UPDATE_STARTED, m_SnapshotBatchUpdateStartedHandler);
+			snapshot.addHandler(EVENT_MEDIA_BATCH_UPDATE_ENDED, m_SnapshotBatchUpdateEndedHandler);
+			this.fillFromSnapshot();
+		}
+		
+		private void fillFromSnapshot()
+		{
+			int count = this.snapshot.size();
+			int maxMediaCount = this.getMaxMediaCount();
+			if(maxMediaCount >= 0 && count > maxMediaCount)
+				count = maxMediaCount;
+			int index = this.size();
+			if(index >= count)
+				return;
+			List<Media> mediaList = new ArrayList<>(count - index);
+			for( ; index < count ; ++index)
+				mediaList.add(this.snapshot.get(index));
+			this.addMedia(mediaList, true);
+		}
+		
+		private void onSnapshotMediaAdded(ListChangeEventArgs e)
+		{
+			int startIndex = e.getStartIndex();
+			int endIndex = e.getEndIndex();
+			int maxMediaCount = this.getMaxMediaCount();
+			if(maxMediaCount >= 0)
+			{
+				if(startIndex >= maxMediaCount)
+					return;
+				endIndex = Math.min(endIndex, maxMediaCount - 1);
+			}
+			List<Media> mediaList = new ArrayList<>(endIndex - startIndex + 1);
+			for(int i = startIndex ; i <= endIndex ; ++i)
+				mediaList.add(this.snapshot.get(i));
+			this.addMedia(mediaList, true);
+		}
+		
+		private void onSnapshotMediaRemoved(ListChangeEventArgs e)
+		{
+			// remove media in same range, content of snapshot may be already in final state during batch update
+			int startIndex = e.getStartIndex();
+			int endIndex = Math.min(e.getEndIndex(), this.size() - 1);
+			if(startIndex <= endIndex)
+				this.removeMedia(startIndex, endIndex);
+			
+			// refill from snapshot
+			if(!m_IsSnapshotBatchUpdating)
+				this.fillFromSnapshot();
+		}
+		
+		private void onSnapshotMediaUpdated(ListChangeEventArgs e)
+		{
+			int startIndex = e.getStartIndex();
+			int endIndex = Math.min(e.getEndIndex(), this.size() - 1);
+			if(startIndex > endIndex)
+				return;
+			ListChangeEventArgs newArgs = ListChangeEventArgs.obtain(startIndex, endIndex);
+			this.raise(EVENT_MEDIA_UPDATED, newArgs);
+			newArgs.recycle();
+		}
+		
+		@Override
+		public void release()
+		{
+			super.release();
+			this.snapshot.removeHandler(EVENT_MEDIA_ADDED, m_SnapshotMediaAddedHandler);
+			this.snapshot.removeHandler(EVENT_MEDIA_REMOVED, m_SnapshotMediaRemovedHandler);
+			this.snapshot.removeHandler(EVENT_MEDIA_UPDATED, m_SnapshotMediaUpdatedHandler);
+			this.snapshot.removeHandler(EVENT_MEDIA_BATCH_UPDATE_STARTED, m_SnapshotBatchUpdateStartedHandler);
+			this.snapshot.removeHandler(EVENT_MEDIA_BATCH_UPDATE_ENDED, m_SnapshotBatchUpdateEndedHandler);
+			this.clearMedia();
+			onMediaListReleased(this);
+		}
+	}
+	
+	
+	// Media list implementation based-on packed media table.
+	private final class PackedMediaListImpl extends ListHandlerBaseObject<Media> implements MediaList
+	{
+		public final MediaComparator comparator;
+		public final int maxMediaCount;
+		public Handle refreshHandle;
+		public volatile int refreshGeneration;
+		private MediaTable m_Table;
+		
+		public PackedMediaListImpl(MediaComparator comparator, int maxMediaCount)
+		{
+			this.comparator = comparator;
+			this.maxMediaCount = maxMediaCount;
+		}
+		
+		public void applyTable(MediaTable table, int[] removedRanges, int[] addedRanges)
+		{
+			// replace table, content of list is in final state when receiving events
+			m_Table = table;
+			
+			// raise removal events from last range, so indices of each range are still valid
+			ListChangeEventArgs e;
+			int removedRangeCount = (removedRanges.length / 2);
+			int addedRangeCount = (addedRanges.length / 2);
+			boolean isBatchUpdate = ((removedRangeCount + addedRangeCount) > 1);
+			if(isBatchUpdate)
+				this.raise(EVENT_MEDIA_BATCH_UPDATE_STARTED, EventArgs.EMPTY);
+			for(int i = removedRangeCount - 1 ; i >= 0 ; --i)
+			{
+				e = ListChangeEventArgs.obtain(removedRanges[i * 2], removedRanges[i * 2 + 1] - 1);
+				this.raise(EVENT_MEDIA_REMOVED, e);
+				e.recycle();
+			}
+			
+			// raise addition events from first range
+			for(int i = 0 ; i < addedRangeCount ; ++i)
+			{
+				e = ListChangeEventArgs.obtain(addedRanges[i * 2], addedRanges[i * 2 + 1] - 1);
+				this.raise(EVENT_MEDIA_ADDED, e);
+				e.recycle();
+			}
+			if(isBatchUpdate)
+				this.raise(EVENT_MEDIA_BATCH_UPDATE_ENDED, EventArgs.EMPTY);
+		}
+		
+		public MediaTable getTable()
+		{
+			return m_Table;
+		}
+		
+		@Override
+		public Media get(int location)
+		{
+			if(m_Table == null)
+				throw new IndexOutOfBoundsException("Index : " + location + ", size : 0");
+			return m_Table.getMedia(location);
+		}
+		
+		@Override
+		public void release()
+		{
+			super.release();
+			this.refreshHandle = Handle.close(this.refreshHandle);
+			++this.refreshGeneration;
+			int count = this.size();
+			m_Table = null;
+			if(count > 0)
+			{
+				ListChangeEventArgs e = ListChangeEventArgs.obtain(0, count - 1);
+				this.raise(EVENT_MEDIA_REMOVED, e);
+				e.recycle();
+			}
+			onMediaListReleased(this);
+		}
+		
+		@Override
+		public int size()
+		{
+			return (m_Table != null ? m_Table.getCount() : 0);
+		}
+	}
+	
+	
+	// Media list implementation which loads media page-by-page when accessing.
+	private final class VirtualMediaListImpl extends ListHandlerBaseObject<Media> implements MediaList
+	{
+		public final MediaComparator comparator;
+		public final int maxMediaCount;
+		private int m_Count;
+		private final Set<Integer> m_LoadingPages = new HashSet<>();
+		private final Map<Integer, MediaTable> m_Pages = new LinkedHashMap<Integer, MediaTable>(VIRTUAL_MEDIA_MAX_PAGE_COUNT, 0.75f, true)
+		{
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, MediaTable> eldest)
+			{
+				return (this.size() > VIRTUAL_MEDIA_MAX_PAGE_COUNT);
+			}
+		};
+		private int m_PageVersion;
+		private boolean m_RefreshRequested;
+		private final Set<Integer> m_StalePages = new HashSet<>();
+		
+		public VirtualMediaListImpl(MediaComparator comparator, int maxMediaCount)
+		{
+			this.comparator = comparator;
+			this.maxMediaCount = maxMediaCount;
+		}
+		
+		@Override
+		public Media get(int location)
+		{
+			// check index
+			if(location < 0 || location >= m_Count)
+				throw new IndexOutOfBoundsException("Index : " + location + ", size : " + m_Count);
+			
+			// get page, media will be available after loading page
+			int pageIndex = (location / VIRTUAL_MEDIA_PAGE_SIZE);
+			MediaTable page = m_Pages.get(pageIndex);
+			if(page == null)
+				this.loadPage(pageIndex);
+			
+			// prefetch adjacent page
+			int row = (location - pageIndex * VIRTUAL_MEDIA_PAGE_SIZE);
+			if(row >= (VIRTUAL_MEDIA_PAGE_SIZE / 2))
+				this.loadPage(pageIndex + 1);
+			else
+				this.loadPage(pageIndex - 1);
+			
+			// get media
+			if(page == null || row >= page.getCount())
+				return null;
+			return page.getMedia(row);
+		}
+		
+		private void loadPage(int pageIndex)
+		{
+			if(pageIndex < 0 || (pageIndex * VIRTUAL_MEDIA_PAGE_SIZE) >= m_Count)
+				return;
+			if((m_Pages.containsKey(pageIndex) && !m_StalePages.contains(pageIndex)) || !m_LoadingPages.add(pageIndex))
+				return;
+			loadVirtualMediaPage(this, m_PageVersion, pageIndex);
+		}
+		
+		public void onPageLoaded(int pageVersion, int pageIndex, MediaTable page)
+		{
+			// check state
+			if(pageVersion != m_PageVersion)
+				return;
+			m_LoadingPages.remove(pageIndex);
+			m_StalePages.remove(pageIndex);
+			int offset = (pageIndex * VIRTUAL_MEDIA_PAGE_SIZE);
+			if(offset >= m_Count)
+				return;
+			m_Pages.put(pageIndex, page);
+			
+			// remove media which are not in media store anymore
+			int pageSize = Math.min(VIRTUAL_MEDIA_PAGE_SIZE, m_Count - offset);
+			if(page.getCount() < pageSize)
+			{
+				Log.w(TAG, "onPageLoaded() - Only ", page.getCount(), " media in page ", pageIndex, ", expected : ", pageSize);
+				int count = (offset + page.getCount());
+				Iterator<Integer> iterator = m_Pages.keySet().iterator();
+				while(iterator.hasNext())
+				{
+					if((iterator.next() * VIRTUAL_MEDIA_PAGE_SIZE) >= count)
+						iterator.remove();
+				}
+				ListChangeEventArgs e = ListChangeEventArgs.obtain(count, m_Count - 1);
+				m_Count = count;
+				this.raise(EVENT_MEDIA_REMOVED, e);
+				e.recycle();
+				if(!m_RefreshRequested)
+				{
+					m_RefreshRequested = true;
+					refreshMediaList(this);
+				}
+			}
+			
+			// notify loaded media
+			if(page.getCount() > 0)
+			{
+				ListChangeEventArgs e = ListChangeEventArgs.obtain(offset, offset + Math.min(page.getCount(), pageSize) - 1);
+				this.raise(EVENT_MEDIA_UPDATED, e);
+				e.recycle();
+			}
+		}
+		
+		@Override
+		public void release()
+		{
+			super.release();
+			this.setCount(0);
+			onMediaListReleased(this);
+		}
+		
+		public void setCount(int count)
+		{
+			// check count
+			if(this.maxMediaCount >= 0 && count > this.maxMediaCount)
+				count = this.maxMediaCount;
+			
+			// drop pending loads and pages out of new range, keep other pages until they are reloaded
+			++m_PageVersion;
+			m_RefreshRequested = false;
+			m_LoadingPages.clear();
+			m_StalePages.clear();
+			Iterator<Integer> iterator = m_Pages.keySet().iterator();
+			while(iterator.hasNext())
+			{
+				Integer pageIndex = iterator.next();
+				if((pageIndex * VIRTUAL_MEDIA_PAGE_SIZE) >= count)
+					iterator.remove();
+				else
+					m_StalePages.add(pageIndex);
+			}
+			
+			// update count
+			int prevCount = m_Count;
+			m_Count = count;
+			if(count > prevCount)
+			{
+				ListChangeEventArgs e = ListChangeEventArgs.obtain(prevCount, count - 1);
+				this.raise(EVENT_MEDIA_ADDED, e);
+				e.recycle();
+			}
+			else if(count < prevCount)
 			{
-				Media media = this.get(i);
-				if(contentUris.contains(media.getContentUri()))
-					this.removeMedia(media);
+				ListChangeEventArgs e = ListChangeEventArgs.obtain(count, prevCount - 1);
+				this.raise(EVENT_MEDIA_REMOVED, e);
+				e.recycle();
 			}
+			
+			// reload kept pages, media updated event will be raised after loading each page
+			for(Integer pageIndex : new ArrayList<>(m_StalePages))
+				this.loadPage(pageIndex);
+		}
+		
+		@Override
+		public int size()
+		{
+			return m_Count;
 		}
 	}
 	
@@ -109,6 +574,14 @@ public abstract class MediaStoreMediaSet extends HandlerBaseObject implements Me
 		if(type == null)
 			throw new IllegalArgumentException("No type specified.");
 		m_Type = type;
+		m_ContentChangeScheduler = new ContentChangeScheduler(TAG, this.getHandler(), new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				handleMediaStoreContentChange();
+			}
+		});
 	}
 	
 	
@@ -116,14 +589,112 @@ public abstract class MediaStoreMediaSet extends HandlerBaseObject implements Me
 	private void addMediaToMediaList(MediaListImpl mediaList, Media media)
 	{
 		if(!mediaList.get(MediaList.PROP_IS_RELEASED))
+		{
 			mediaList.addMedia(media);
+			this.scheduleMediaSnapshotSaving(mediaList);
+		}
 	}
 	private void addMediaToMediaList(MediaListImpl mediaList, List<Media> media, boolean isSorted)
 	{
 		if(!mediaList.get(MediaList.PROP_IS_RELEASED))
+		{
+			// add media
+			long time = System.nanoTime();
 			mediaList.addMedia(media, isSorted);
+			
+			// update average adding time
+			long timePerItem = ((System.nanoTime() - time) / media.size());
+			if(m_MediaAddingTimePerItem > 0)
+				m_MediaAddingTimePerItem = ((m_MediaAddingTimePerItem * 3 + timePerItem) / 4);
+			else
+				m_MediaAddingTimePerItem = Math.max(1, timePerItem);
+			
+			// save snapshot
+			this.scheduleMediaSnapshotSaving(mediaList);
+		}
 	}
-
+	
+	
+	// Get number of media to fill first screen of grid view.
+	private static int getFirstScreenMediaCount()
+	{
+		if(m_FirstScreenMediaCount <= 0)
+		{
+			Resources res = GalleryApplication.current().getResources();
+			DisplayMetrics displayMetrics = res.getDisplayMetrics();
+			int itemWidth = Math.max(1, res.getDimensionPixelSize(R.dimen.gridview_item_width));
+			int itemHeight = Math.max(1, res.getDimensionPixelSize(R.dimen.gridview_item_height));
+			int screenSize = Math.max(displayMetrics.widthPixels, displayMetrics.heightPixels);
+			int columnCount = ((screenSize + itemWidth - 1) / itemWidth);
+			int rowCount = ((screenSize + itemHeight - 1) / itemHeight + 1);
+			m_FirstScreenMediaCount = Math.max(1, columnCount * rowCount);
+		}
+		return m_FirstScreenMediaCount;
+	}
+	
+	
+	// Get priority to access content provider for given snapshot.
+	private int getContentAccessPriority(MediaListImpl snapshot)
+	{
+		return this.getContentAccessPriority(snapshot.getMaxMediaCount());
+	}
+	
+	
+	// Get priority to access content provider for media list with given capacity.
+	private int getContentAccessPriority(int maxMediaCount)
+	{
+		// media list which only keeps few media is used to show covers in media set list
+		if(maxMediaCount >= 0 && maxMediaCount < getFirstScreenMediaCount())
+			return MediaManager.PRIORITY_MEDIA_SET_LIST;
+		return MediaManager.PRIORITY_VISIBLE_MEDIA;
+	}
+	
+	
+	/**
+	 * Get scheduler which handles media store content changes, it can be used to tune scheduling parameters or to read counters.
+	 * @return Content change scheduler.
+	 */
+	public ContentChangeScheduler getContentChangeScheduler()
+	{
+		return m_ContentChangeScheduler;
+	}
+	
+	
+	// Get number of media to send to main thread at a time.
+	private int getMediaBatchSize()
+	{
+		long timePerItem = m_MediaAddingTimePerItem;
+		if(timePerItem <= 0)
+			return MEDIA_BATCH_SIZE_DEFAULT;
+		return (int)Math.max(MEDIA_BATCH_SIZE_MIN, Math.min(MEDIA_BATCH_SIZE_MAX, DURATION_MEDIA_BATCH_BUDGET_NANOS / timePerItem));
+	}
+	
+	
+	/**
+	 * Get file to persist media snapshot sorted by given comparator, so media list can be restored from file instead of querying whole media store when opening. Only snapshot without capacity limit will be persisted.
+	 * @param comparator Media comparator.
+	 * @return File to persist media snapshot, or Null to disable persistence.
+	 */
+	protected File getMediaSnapshotFile(MediaComparator comparator)
+	{
+		return null;
+	}
+	
+	
+	// Get key to identify content of persisted media snapshot.
+	private String getMediaSnapshotKey()
+	{
+		StringBuilder key = new StringBuilder();
+		if(m_QueryCondition != null)
+			key.append(m_QueryCondition);
+		if(m_QueryConditionArgs != null)
+		{
+			for(String arg : m_QueryConditionArgs)
+				key.append('\n').append(arg);
+		}
+		return key.toString();
+	}
+	
 	
 	// Get media set type.
 	@Override
@@ -133,8 +704,52 @@ public abstract class MediaStoreMediaSet extends HandlerBaseObject implements Me
 	}
 	
 	
+	// Apply changed media to media snapshot, return True if snapshot is affected.
+	private boolean applyMediaChanges(MediaListImpl snapshot, LongHashSet changedMediaIds, List<MediaStoreMedia> changedMedia)
+	{
+		// find media to remove or replace
+		LongLongHashMap srcMedia = new LongLongHashMap(changedMediaIds.size());
+		snapshot.getMedia(changedMediaIds, srcMedia);
+		LongHashSet removedMediaIds = srcMedia.copyKeys();
+		List<Media> addedMedia = new ArrayList<>();
+		for(int i = changedMedia.size() - 1 ; i >= 0 ; --i)
+		{
+			MediaStoreMedia media = changedMedia.get(i);
+			if(srcMedia.get(media.getId(), -1) == media.getDateModified())
+			{
+				removedMediaIds.remove(media.getId());
+				continue;
+			}
+			addedMedia.add(media);
+		}
+		if(removedMediaIds.isEmpty() && addedMedia.isEmpty())
+			return false;
+		
+		// snapshot which only keeps leading media needs to be refilled after removing media
+		if(!removedMediaIds.isEmpty() && snapshot.getMaxMediaCount() >= 0)
+		{
+			this.refreshMediaList(snapshot);
+			return true;
+		}
+		
+		// update snapshot
+		if(!removedMediaIds.isEmpty())
+			this.removeMediaFromMediaList(snapshot, removedMediaIds);
+		if(!addedMedia.isEmpty())
+		{
+			snapshot.updateHighWaterMarks(addedMedia);
+			this.addMediaToMediaList(snapshot, addedMedia, false);
+		}
+		
+		// refresh in progress was based-on media before changing
+		if(snapshot.refreshHandle != null)
+			this.refreshMediaList(snapshot);
+		return true;
+	}
+	
+	
 	// Handle media store content change event.
-	private void handleMediaStoreContentChange()
+	void handleMediaStoreContentChange()
 	{
 		// check state
 		if(this.get(PROP_IS_RELEASED))
@@ -144,10 +759,20 @@ public abstract class MediaStoreMediaSet extends HandlerBaseObject implements Me
 		this.refreshMediaCount(false);
 		
 		// refresh media lists
-		if(m_ActiveMediaLists != null)
+		if(m_MediaSnapshots != null)
 		{
-			for(int i = m_ActiveMediaLists.size() - 1 ; i >= 0 ; --i)
-				this.refreshMediaList(m_ActiveMediaLists.get(i));
+			for(MediaListImpl snapshot : m_MediaSnapshots.values())
+				this.refreshMediaList(snapshot);
+		}
+		if(m_ActivePackedMediaLists != null)
+		{
+			for(int i = m_ActivePackedMediaLists.size() - 1 ; i >= 0 ; --i)
+				this.refreshMediaList(m_ActivePackedMediaLists.get(i));
+		}
+		if(m_ActiveVirtualMediaLists != null)
+		{
+			for(int i = m_ActiveVirtualMediaLists.size() - 1 ; i >= 0 ; --i)
+				this.refreshMediaList(m_ActiveVirtualMediaLists.get(i));
 		}
 	}
 	
@@ -162,43 +787,186 @@ public abstract class MediaStoreMediaSet extends HandlerBaseObject implements Me
 			case MSG_ADD_MEDIA_TO_MEDIA_LIST:
 			{
 				Object[] params = (Object[])msg.obj;
+				MediaListImpl mediaList = (MediaListImpl)params[0];
 				if(params[1] instanceof Media)
-					this.addMediaToMediaList((MediaListImpl)params[0], (Media)params[1]);
+				{
+					mediaList.updateHighWaterMarks((MediaStoreMedia)params[1]);
+					this.addMediaToMediaList(mediaList, (Media)params[1]);
+				}
 				else
-					this.addMediaToMediaList((MediaListImpl)params[0], (List<Media>)params[1], msg.arg1 != 0);
+				{
+					mediaList.updateHighWaterMarks((List<Media>)params[1]);
+					this.addMediaToMediaList(mediaList, (List<Media>)params[1], msg.arg1 != 0);
+				}
 				break;
 			}
 			
-			case MSG_HANDLE_MS_CONTENT_CHANGE:
-				this.handleMediaStoreContentChange();
-				break;
-			
 			case MSG_MEDIA_COUNT_CHANGED:
 				this.setReadOnly(PROP_MEDIA_COUNT, msg.arg1);
 				break;
-				
-			case MSG_REMOVE_MEDIA_FROM_MEDIA_LIST:
+			
+			case MSG_SET_MEDIA_TABLE:
 			{
 				Object[] params = (Object[])msg.obj;
-				if(params[1] instanceof Media)
-					this.removeMediaFromMediaList((MediaListImpl)params[0], (Media)params[1]);
-				else if(params[1] instanceof Set<?>)
-					this.removeMediaFromMediaList((MediaListImpl)params[0], (Set<Uri>)params[1]);
+				PackedMediaListImpl mediaList = (PackedMediaListImpl)params[0];
+				if(!mediaList.get(MediaList.PROP_IS_RELEASED) && mediaList.refreshGeneration == msg.arg1)
+					mediaList.applyTable((MediaTable)params[1], (int[])params[2], (int[])params[3]);
 				break;
 			}
-				
-			default:
-				super.handleMessage(msg);
+			
+			case MSG_SET_VIRTUAL_MEDIA_COUNT:
+			{
+				VirtualMediaListImpl mediaList = (VirtualMediaListImpl)msg.obj;
+				if(!mediaList.get(MediaList.PROP_IS_RELEASED))
+					mediaList.setCount(msg.arg1);
 				break;
-		}
-	}
-	
-	
-	// Called when media list released.
-	private void onMediaListReleased(MediaListImpl mediaList)
-	{
+			}
+			
+			case MSG_VIRTUAL_MEDIA_PAGE_LOADED:
+			{
+				Object[] params = (Object[])msg.obj;
+				VirtualMediaListImpl mediaList = (VirtualMediaListImpl)params[0];
+				if(!mediaList.get(MediaList.PROP_IS_RELEASED))
+					mediaList.onPageLoaded(msg.arg1, msg.arg2, (MediaTable)params[1]);
+				break;
+			}
+			
+			case MSG_SAVE_MEDIA_SNAPSHOT:
+				this.saveMediaSnapshot((MediaListImpl)msg.obj);
+				break;
+			
+			case MSG_MEDIA_SNAPSHOT_RESTORED:
+			{
+				Object[] params = (Object[])msg.obj;
+				this.onMediaSnapshotRestored((MediaListImpl)params[0], (List<Media>)params[1]);
+				break;
+			}
+			
+			case MSG_MEDIA_LIST_REFRESHED:
+			{
+				Object[] params = (Object[])msg.obj;
+				this.onMediaListRefreshed((MediaListImpl)params[0], msg.arg1, (LongHashSet)params[1], (List<Media>)params[2], msg.arg2 != 0);
+				break;
+			}
+			
+			default:
+				super.handleMessage(msg);
+				break;
+		}
+	}
+	
+	
+	// Called when media list released.
+	private void onMediaListReleased(MediaListImpl snapshot)
+	{
+		if(m_MediaSnapshots.get(snapshot.getComparator()) == snapshot)
+		{
+			m_MediaSnapshots.remove(snapshot.getComparator());
+			Log.v(TAG, "onMediaListReleased() - Media snapshot count : ", m_MediaSnapshots.size());
+		}
+	}
+	private void onMediaListReleased(MediaListViewImpl mediaList)
+	{
+		// remove from active list
 		if(m_ActiveMediaLists.remove(mediaList))
 			Log.v(TAG, "onMediaListReleased() - Active media list count : ", m_ActiveMediaLists.size());
+		
+		// release or shrink snapshot
+		MediaListImpl snapshot = mediaList.snapshot;
+		if(snapshot.views.remove(mediaList))
+		{
+			if(snapshot.views.isEmpty())
+				snapshot.release();
+			else
+				this.updateMediaSnapshotCapacity(snapshot);
+		}
+	}
+	private void onMediaListReleased(PackedMediaListImpl mediaList)
+	{
+		if(m_ActivePackedMediaLists.remove(mediaList))
+			Log.v(TAG, "onMediaListReleased() - Active packed media list count : ", m_ActivePackedMediaLists.size());
+	}
+	private void onMediaListReleased(VirtualMediaListImpl mediaList)
+	{
+		if(m_ActiveVirtualMediaLists.remove(mediaList))
+			Log.v(TAG, "onMediaListReleased() - Active virtual media list count : ", m_ActiveVirtualMediaLists.size());
+	}
+	
+	
+	// Called when media list refreshed.
+	private void onMediaListRefreshed(MediaListImpl mediaList, int generation, LongHashSet removedMediaIds, List<Media> addedMedia, boolean isSorted)
+	{
+		// check generation
+		if(mediaList.refreshGeneration != generation)
+		{
+			Log.v(TAG, "onMediaListRefreshed() - Drop result of superseded refresh ", generation);
+			return;
+		}
+		mediaList.refreshHandle = null;
+		
+		// update media list
+		mediaList.updateHighWaterMarks(addedMedia);
+		if(!removedMediaIds.isEmpty())
+			this.removeMediaFromMediaList(mediaList, removedMediaIds);
+		if(!addedMedia.isEmpty())
+			this.addMediaToMediaList(mediaList, addedMedia, isSorted);
+	}
+	
+	
+	// Called when media snapshot has been read from file.
+	private void onMediaSnapshotRestored(MediaListImpl snapshot, List<Media> mediaList)
+	{
+		// check state
+		if(snapshot.get(MediaList.PROP_IS_RELEASED))
+			return;
+		
+		// load from media store
+		if(mediaList == null || mediaList.isEmpty())
+		{
+			this.loadMediaSnapshot(snapshot, 0, snapshot.getMaxMediaCount());
+			return;
+		}
+		
+		// add to snapshot and refresh
+		snapshot.updateHighWaterMarks(mediaList);
+		snapshot.addMedia(mediaList, true);
+		Log.v(TAG, "onMediaSnapshotRestored() - Restore ", snapshot.size(), " media");
+		this.refreshMediaList(snapshot);
+	}
+	
+	
+	// Called when changed media store rows have been routed by media manager. (in main thread)
+	void onMediaStoreMediaChanged(LongHashSet changedMediaIds, List<MediaStoreMedia> changedMedia, boolean hasDeletedMedia)
+	{
+		// check state
+		if(this.get(PROP_IS_RELEASED))
+			return;
+		
+		// update snapshots
+		boolean isChanged = (hasDeletedMedia || !changedMedia.isEmpty());
+		if(m_MediaSnapshots != null)
+		{
+			for(MediaListImpl snapshot : m_MediaSnapshots.values())
+			{
+				if(this.applyMediaChanges(snapshot, changedMediaIds, changedMedia))
+					isChanged = true;
+			}
+		}
+		if(!isChanged)
+			return;
+		
+		// refresh media count and other media lists
+		this.refreshMediaCount(false);
+		if(m_ActivePackedMediaLists != null)
+		{
+			for(int i = m_ActivePackedMediaLists.size() - 1 ; i >= 0 ; --i)
+				this.refreshMediaList(m_ActivePackedMediaLists.get(i));
+		}
+		if(m_ActiveVirtualMediaLists != null)
+		{
+			for(int i = m_ActiveVirtualMediaLists.size() - 1 ; i >= 0 ; --i)
+				this.refreshMediaList(m_ActiveVirtualMediaLists.get(i));
+		}
 	}
 	
 	
@@ -208,9 +976,22 @@ public abstract class MediaStoreMediaSet extends HandlerBaseObject implements Me
 	 */
 	protected void onMediaStoreContentChanged(Uri contentUri)
 	{
-		Handler handler = this.getHandler();
-		if(!handler.hasMessages(MSG_HANDLE_MS_CONTENT_CHANGE))
-			handler.sendEmptyMessageDelayed(MSG_HANDLE_MS_CONTENT_CHANGE, DURATION_HANDLE_MS_CONTENT_CHANGE_DELAY);
+		// changes of specific media will be routed by media manager
+		if(m_IsMediaChangeRouted && MediaManager.parseMediaId(contentUri) > 0)
+			return;
+		
+		// refresh later
+		m_ContentChangeScheduler.notifyChange();
+	}
+	
+	
+	// Called when values of media have been updated without changing media store row. (in main thread)
+	void onMediaUpdated(MediaStoreMedia media)
+	{
+		if(this.get(PROP_IS_RELEASED) || m_MediaSnapshots == null)
+			return;
+		for(MediaListImpl snapshot : m_MediaSnapshots.values())
+			snapshot.notifyMediaUpdated(media);
 	}
 	
 	
@@ -225,8 +1006,27 @@ public abstract class MediaStoreMediaSet extends HandlerBaseObject implements Me
 			for(int i = m_ActiveMediaLists.size() - 1 ; i >= 0 ; --i)
 				m_ActiveMediaLists.get(i).release();
 		}
+		if(m_MediaSnapshots != null && !m_MediaSnapshots.isEmpty())
+		{
+			Log.v(TAG, "onRelease() - Release all media snapshots");
+			for(MediaListImpl snapshot : new ArrayList<>(m_MediaSnapshots.values()))
+				snapshot.release();
+		}
+		if(m_ActivePackedMediaLists != null && !m_ActivePackedMediaLists.isEmpty())
+		{
+			Log.v(TAG, "onRelease() - Release all packed media lists");
+			for(int i = m_ActivePackedMediaLists.size() - 1 ; i >= 0 ; --i)
+				m_ActivePackedMediaLists.get(i).release();
+		}
+		if(m_ActiveVirtualMediaLists != null && !m_ActiveVirtualMediaLists.isEmpty())
+		{
+			Log.v(TAG, "onRelease() - Release all virtual media lists");
+			for(int i = m_ActiveVirtualMediaLists.size() - 1 ; i >= 0 ; --i)
+				m_ActiveVirtualMediaLists.get(i).release();
+		}
 		
 		// cancel refresh
+		m_ContentChangeScheduler.cancel();
 		m_MediaCountRefreshHandle = Handle.close(m_MediaCountRefreshHandle);
 		
 		// unregister content change call-back
@@ -243,7 +1043,7 @@ public abstract class MediaStoreMediaSet extends HandlerBaseObject implements Me
 		super.onRelease();
 	}
 	
-
+	
 	// Open media list.
 	@Override
 	public MediaList openMediaList(final MediaComparator comparator, final int maxMediaCount, int flags)
@@ -255,73 +1055,223 @@ public abstract class MediaStoreMediaSet extends HandlerBaseObject implements Me
 		if(comparator == null)
 			throw new IllegalArgumentException("No comparator.");
 		
+		// open packed media list
+		if((flags & FLAG_VIRTUAL) != 0)
+			return this.openVirtualMediaList(comparator, maxMediaCount);
+		if((flags & FLAG_PACKED) != 0)
+			return this.openPackedMediaList(comparator, maxMediaCount);
+		
+		// get or create media snapshot
+		if(m_MediaSnapshots == null)
+			m_MediaSnapshots = new HashMap<>();
+		MediaListImpl snapshot = m_MediaSnapshots.get(comparator);
+		boolean isNewSnapshot = (snapshot == null);
+		if(isNewSnapshot)
+		{
+			snapshot = new MediaListImpl(comparator, maxMediaCount);
+			m_MediaSnapshots.put(comparator, snapshot);
+			Log.v(TAG, "openMediaList() - Media snapshot count : ", m_MediaSnapshots.size());
+		}
+		
 		// create media list
-		final MediaListImpl mediaList = new MediaListImpl(comparator, maxMediaCount);
+		MediaListViewImpl mediaList = new MediaListViewImpl(snapshot, maxMediaCount);
+		snapshot.views.add(mediaList);
 		if(m_ActiveMediaLists == null)
 			m_ActiveMediaLists = new ArrayList<>();
 		m_ActiveMediaLists.add(mediaList);
 		Log.v(TAG, "openMediaList() - Active media list count : ", m_ActiveMediaLists.size());
 		
-		// start updating media list
+		// start updating media snapshot
+		if(isNewSnapshot)
+		{
+			if(!this.restoreMediaSnapshot(snapshot))
+				this.loadMediaSnapshot(snapshot, 0, maxMediaCount);
+		}
+		else
+			this.updateMediaSnapshotCapacity(snapshot);
+		
+		// complete
+		return mediaList;
+	}
+	
+	
+	// Load media into snapshot.
+	private void loadMediaSnapshot(final MediaListImpl snapshot, final int offset, final int maxMediaCount)
+	{
 		MediaManager.accessContentProvider(CONTENT_URI_FILE, new MediaManager.ContentProviderAccessCallback()
 		{
 			@Override
 			public void onAccessContentProvider(ContentResolver contentResolver, Uri contentUri, ContentProviderClient client) throws RemoteException
 			{
-				String sortOrder = comparator.getContentProviderSortOrder();
-				if(maxMediaCount >= 0)
-					sortOrder += (" LIMIT " + maxMediaCount);
-				Cursor cursor = client.query(contentUri, MediaStoreMedia.MEDIA_COLUMNS, m_QueryCondition, m_QueryConditionArgs, sortOrder);
-				boolean isFirstMedia = true;
-				List<Media> tempMediaList = null;
-				Handler handler = getHandler();
-				if(cursor != null)
+				// check state
+				if(snapshot.get(MediaList.PROP_IS_RELEASED))
+					return;
+				String sortOrder = snapshot.getComparator().getContentProviderSortOrder();
+				int startIndex = offset;
+				
+				// load first screen in single batch
+				if(startIndex == 0)
 				{
-					try
-					{
-						while(cursor.moveToNext())
-						{
-							Media media = MediaStoreMedia.create(cursor, handler);
-							if(media == null)
-								continue;
-							if(isFirstMedia)
-							{
-								isFirstMedia = false;
-								HandlerUtils.sendMessage(MediaStoreMediaSet.this, MSG_ADD_MEDIA_TO_MEDIA_LIST, 1, 0, new Object[]{ mediaList, media });
-							}
-							else
-							{
-								if(tempMediaList == null)
-									tempMediaList = new ArrayList<>();
-								tempMediaList.add(media);
-								if(tempMediaList.size() >= 64)
-								{
-									if(mediaList.get(MediaList.PROP_IS_RELEASED))
-									{
-										tempMediaList = null;
-										break;
-									}
-									HandlerUtils.sendMessage(MediaStoreMediaSet.this, MSG_ADD_MEDIA_TO_MEDIA_LIST, 1, 0, new Object[]{ mediaList, tempMediaList });
-									tempMediaList = null;
-								}
-							}
-						}
-						if(tempMediaList != null)
-							HandlerUtils.sendMessage(MediaStoreMediaSet.this, MSG_ADD_MEDIA_TO_MEDIA_LIST, 1, 0, new Object[]{ mediaList, tempMediaList });
-					}
-					finally
-					{
-						cursor.close();
-					}
+					int count = getFirstScreenMediaCount();
+					if(maxMediaCount >= 0 && maxMediaCount < count)
+						count = maxMediaCount;
+					if(queryMediaToSnapshot(client, contentUri, snapshot, sortOrder + " LIMIT " + count, true) < count)
+						return;
+					startIndex = count;
 				}
+				
+				// load remaining media
+				if(maxMediaCount < 0)
+					queryMediaToSnapshot(client, contentUri, snapshot, sortOrder + " LIMIT " + startIndex + ",-1", false);
+				else if(startIndex < maxMediaCount)
+					queryMediaToSnapshot(client, contentUri, snapshot, sortOrder + " LIMIT " + startIndex + "," + (maxMediaCount - startIndex), false);
 			}
-		});
+		}, this.getContentAccessPriority(snapshot), this);
+	}
+	
+	
+	// Open media list based-on packed media table.
+	private MediaList openPackedMediaList(MediaComparator comparator, int maxMediaCount)
+	{
+		// create media list
+		PackedMediaListImpl mediaList = new PackedMediaListImpl(comparator, maxMediaCount);
+		if(m_ActivePackedMediaLists == null)
+			m_ActivePackedMediaLists = new ArrayList<>();
+		m_ActivePackedMediaLists.add(mediaList);
+		Log.v(TAG, "openPackedMediaList() - Active packed media list count : ", m_ActivePackedMediaLists.size());
+		
+		// start updating media list
+		this.refreshMediaList(mediaList);
 		
 		// complete
 		return mediaList;
 	}
 	
 	
+	// Open media list which loads media page-by-page.
+	private MediaList openVirtualMediaList(MediaComparator comparator, int maxMediaCount)
+	{
+		// create media list
+		VirtualMediaListImpl mediaList = new VirtualMediaListImpl(comparator, maxMediaCount);
+		if(m_ActiveVirtualMediaLists == null)
+			m_ActiveVirtualMediaLists = new ArrayList<>();
+		m_ActiveVirtualMediaLists.add(mediaList);
+		Log.v(TAG, "openVirtualMediaList() - Active virtual media list count : ", m_ActiveVirtualMediaLists.size());
+		
+		// get media count
+		this.refreshMediaList(mediaList);
+		
+		// complete
+		return mediaList;
+	}
+	
+	
+	// Get sort order to query page of virtual media list.
+	private static String getVirtualMediaPageSortOrder(VirtualMediaListImpl mediaList, int offset)
+	{
+		int count = VIRTUAL_MEDIA_PAGE_SIZE;
+		if(mediaList.maxMediaCount >= 0)
+			count = Math.max(0, Math.min(count, mediaList.maxMediaCount - offset));
+		return (mediaList.comparator.getContentProviderSortOrder() + " LIMIT " + offset + "," + count);
+	}
+	
+	
+	// Load page of virtual media list asynchronously.
+	private void loadVirtualMediaPage(final VirtualMediaListImpl mediaList, final int pageVersion, final int pageIndex)
+	{
+		MediaManager.accessContentProvider(CONTENT_URI_FILE, new MediaManager.ContentProviderAccessCallback()
+		{
+			@Override
+			public void onAccessContentProvider(ContentResolver contentResolver, Uri contentUri, ContentProviderClient client) throws RemoteException
+			{
+				if(mediaList.get(MediaList.PROP_IS_RELEASED))
+					return;
+				int offset = (pageIndex * VIRTUAL_MEDIA_PAGE_SIZE);
+				Cursor cursor = MediaManager.query(client, contentUri, MediaStoreMedia.MEDIA_COLUMNS, m_QueryCondition, m_QueryConditionArgs, getVirtualMediaPageSortOrder(mediaList, offset));
+				MediaTable page = readMediaTable(cursor);
+				HandlerUtils.sendMessage(MediaStoreMediaSet.this, MSG_VIRTUAL_MEDIA_PAGE_LOADED, pageVersion, pageIndex, new Object[]{ mediaList, page });
+			}
+		}, this.getContentAccessPriority(mediaList.maxMediaCount), this);
+	}
+	
+	
+	// Query media and send to snapshot, return number of queried rows.
+	private int queryMediaToSnapshot(ContentProviderClient client, Uri contentUri, MediaListImpl snapshot, String sortOrder, boolean isSingleBatch) throws RemoteException
+	{
+		Cursor cursor = MediaManager.query(client, contentUri, MediaStoreMedia.MEDIA_COLUMNS, m_QueryCondition, m_QueryConditionArgs, sortOrder);
+		if(cursor == null)
+			return 0;
+		Handler handler = this.getHandler();
+		int rowCount = 0;
+		int batchSize = (isSingleBatch ? Integer.MAX_VALUE : this.getMediaBatchSize());
+		List<Media> tempMediaList = null;
+		try
+		{
+			MediaStoreRowReader reader = new MediaStoreRowReader(cursor);
+			while(cursor.moveToNext())
+			{
+				++rowCount;
+				MediaStoreMedia media = reader.createMedia(handler);
+				if(media == null)
+					continue;
+				if(tempMediaList == null)
+					tempMediaList = new ArrayList<>();
+				tempMediaList.add(media);
+				if(tempMediaList.size() >= batchSize)
+				{
+					if(snapshot.get(MediaList.PROP_IS_RELEASED))
+						return rowCount;
+					HandlerUtils.sendMessage(this, MSG_ADD_MEDIA_TO_MEDIA_LIST, 1, 0, new Object[]{ snapshot, tempMediaList });
+					tempMediaList = null;
+					batchSize = this.getMediaBatchSize();
+				}
+			}
+			if(tempMediaList != null)
+				HandlerUtils.sendMessage(this, MSG_ADD_MEDIA_TO_MEDIA_LIST, 1, 0, new Object[]{ snapshot, tempMediaList });
+		}
+		finally
+		{
+			cursor.close();
+		}
+		return rowCount;
+	}
+	
+	
+	// Query media into packed table.
+	private MediaTable queryMediaTable(ContentProviderClient client, Uri contentUri, MediaComparator comparator, int maxMediaCount) throws RemoteException
+	{
+		String sortOrder = comparator.getContentProviderSortOrder();
+		if(maxMediaCount >= 0)
+			sortOrder += (" LIMIT " + maxMediaCount);
+		return this.readMediaTable(MediaManager.query(client, contentUri, MediaStoreMedia.MEDIA_COLUMNS, m_QueryCondition, m_QueryConditionArgs, sortOrder));
+	}
+	
+	
+	// Read all rows into packed table and close cursor.
+	private MediaTable readMediaTable(Cursor cursor)
+	{
+		MediaTable table = new MediaTable(this.getHandler(), true);
+		if(cursor != null)
+		{
+			try
+			{
+				MediaStoreRowReader reader = new MediaStoreRowReader(cursor);
+				MediaStoreMedia.Row row = new MediaStoreMedia.Row();
+				while(cursor.moveToNext())
+				{
+					if(reader.read(row))
+						table.append(row);
+				}
+			}
+			finally
+			{
+				cursor.close();
+			}
+		}
+		return table;
+	}
+	
+	
 	/**
 	 * Refresh media count.
 	 * @param clearFirst True to clear media count first.
@@ -333,29 +1283,36 @@ public abstract class MediaStoreMediaSet extends HandlerBaseObject implements Me
 		if(this.get(PROP_IS_RELEASED))
 			return;
 		
+		// register content change call-back
+		if(!Handle.isValid(m_MediaStoreContentChangedCBHandles))
+		{
+			m_MediaStoreContentChangedCBHandles = new HandleSet();
+			m_MediaStoreContentChangedCBHandles.addHandle(MediaManager.registerContentChangedCallback(CONTENT_URI_IMAGE, m_MediaStoreContentChangedCB));
+			m_MediaStoreContentChangedCBHandles.addHandle(MediaManager.registerContentChangedCallback(CONTENT_URI_VIDEO, m_MediaStoreContentChangedCB));
+		}
+		
 		// clear media count
 		if(clearFirst)
 			this.setReadOnly(PROP_MEDIA_COUNT, null);
 		
-		// refresh
+		// refresh with other media sets in single query
 		Handle.close(m_MediaCountRefreshHandle);
-		m_MediaCountRefreshHandle = MediaManager.accessContentProvider(CONTENT_URI_FILE, m_RefreshMediaCountCallback);
+		if(MediaManager.requestMediaCountRefresh(this))
+		{
+			m_MediaCountRefreshHandle = null;
+			return;
+		}
+		
+		// refresh
+		m_MediaCountRefreshHandle = MediaManager.accessContentProvider(CONTENT_URI_FILE, m_RefreshMediaCountCallback, MediaManager.PRIORITY_MEDIA_COUNT, this);
 	}
 	
 	
 	// Refresh media count.
 	protected int refreshMediaCount(ContentResolver contentResolver, Uri contentUri, ContentProviderClient client) throws RemoteException
 	{
-		// register content change call-back
-		if(!Handle.isValid(m_MediaStoreContentChangedCBHandles))
-		{
-			m_MediaStoreContentChangedCBHandles = new HandleSet();
-			m_MediaStoreContentChangedCBHandles.addHandle(MediaManager.registerContentChangedCallback(CONTENT_URI_IMAGE, m_MediaStoreContentChangedCB));
-			m_MediaStoreContentChangedCBHandles.addHandle(MediaManager.registerContentChangedCallback(CONTENT_URI_VIDEO, m_MediaStoreContentChangedCB));
-		}
-		
 		// query media count
-		Cursor cursor = client.query(contentUri, new String[]{ "Count(" + FileColumns._ID + ")" }, m_QueryCondition, m_QueryConditionArgs, null);
+		Cursor cursor = MediaManager.query(client, contentUri, new String[]{ "Count(" + FileColumns._ID + ")" }, m_QueryCondition, m_QueryConditionArgs, null);
 		if(cursor != null)
 		{
 			try
@@ -375,58 +1332,506 @@ public abstract class MediaStoreMediaSet extends HandlerBaseObject implements Me
 	// Refresh media list.
 	private void refreshMediaList(final MediaListImpl mediaList)
 	{
-		if(mediaList.isEmpty())
-			return;
-		final HashSet<Uri> srcContentUris = new HashSet<>();
-		mediaList.getAllContentUris(srcContentUris);
-		MediaManager.accessContentProvider(CONTENT_URI_FILE, new MediaManager.ContentProviderAccessCallback()
+		// cancel superseded refresh
+		mediaList.refreshHandle = Handle.close(mediaList.refreshHandle);
+		final int generation = ++mediaList.refreshGeneration;
+		
+		// refresh based-on current media
+		final LongLongHashMap srcMedia = new LongLongHashMap(mediaList.size());
+		final long maxMediaId = mediaList.maxMediaId;
+		final long maxDateModified = mediaList.maxDateModified;
+		mediaList.getAllMedia(srcMedia);
+		mediaList.refreshHandle = MediaManager.accessContentProvider(CONTENT_URI_FILE, new MediaManager.ContentProviderAccessCallback()
 		{
 			@Override
 			public void onAccessContentProvider(ContentResolver contentResolver, Uri contentUri, ContentProviderClient client) throws RemoteException
 			{
+				// check generation
+				if(mediaList.refreshGeneration != generation)
+					return;
+				
+				// query media added or modified after last refresh
+				Handler handler = getHandler();
 				String sortOrder = mediaList.getComparator().getContentProviderSortOrder();
+				String condition = (m_QueryCondition + " AND (" + MediaColumns._ID + ">" + maxMediaId + " OR " + MediaColumns.DATE_MODIFIED + ">=" + maxDateModified + ")");
+				LongHashSet addedMediaIds = new LongHashSet();
+				LongHashSet removedMediaIds = new LongHashSet();
+				List<Media> addedMedia = new ArrayList<>();
+				Cursor cursor = MediaManager.query(client, contentUri, MediaStoreMedia.MEDIA_COLUMNS, condition, m_QueryConditionArgs, sortOrder);
+				if(cursor != null)
+				{
+					try
+					{
+						MediaStoreRowReader reader = new MediaStoreRowReader(cursor);
+						while(cursor.moveToNext())
+						{
+							MediaStoreMedia media = reader.createMedia(handler);
+							if(media == null)
+								continue;
+							long srcDateModified = srcMedia.get(media.getId(), -1);
+							if(srcDateModified >= 0)
+							{
+								if(srcDateModified == media.getDateModified())
+									continue;
+								removedMediaIds.add(media.getId());
+							}
+							addedMedia.add(media);
+							addedMediaIds.add(media.getId());
+						}
+					}
+					finally
+					{
+						cursor.close();
+					}
+				}
+				
+				// stop if newer refresh has been requested
+				if(mediaList.refreshGeneration != generation)
+					return;
+				
+				// query media IDs to find deleted media and media which should be moved into list
 				int maxMediaCount = mediaList.getMaxMediaCount();
+				String idSortOrder = sortOrder;
 				if(maxMediaCount >= 0)
-					sortOrder += (" LIMIT " + maxMediaCount);
-				Handler handler = getHandler();
-				Cursor cursor = client.query(contentUri, MediaStoreMedia.MEDIA_COLUMNS, m_QueryCondition, m_QueryConditionArgs, sortOrder);
+					idSortOrder += (" LIMIT " + maxMediaCount);
+				LongHashSet deletedMediaIds = srcMedia.copyKeys();
+				List<StringBuilder> missingMediaIdChunks = new ArrayList<>();
+				StringBuilder missingMediaIds = null;
+				int missingMediaIdCount = 0;
+				cursor = MediaManager.query(client, contentUri, new String[]{ MediaColumns._ID }, m_QueryCondition, m_QueryConditionArgs, idSortOrder);
 				if(cursor != null)
 				{
 					try
 					{
-						// add media
 						while(cursor.moveToNext())
 						{
-							Uri uri = MediaStoreMedia.getContentUri(cursor);
-							if(uri == null || srcContentUris.remove(uri))
+							long id = cursor.getLong(0);
+							if(deletedMediaIds.remove(id) || addedMediaIds.contains(id))
 								continue;
-							Media media = MediaStoreMedia.create(cursor, handler);
-							if(media != null)
-								HandlerUtils.sendMessage(MediaStoreMediaSet.this, MSG_ADD_MEDIA_TO_MEDIA_LIST, new Object[]{ mediaList, media });
+							if((missingMediaIdCount++ % MEDIA_ID_QUERY_CHUNK_SIZE) == 0)
+							{
+								missingMediaIds = new StringBuilder();
+								missingMediaIdChunks.add(missingMediaIds);
+							}
+							else
+								missingMediaIds.append(',');
+							missingMediaIds.append(id);
 						}
-						
-						// remove media
-						if(!srcContentUris.isEmpty())
-							HandlerUtils.sendMessage(MediaStoreMediaSet.this, MSG_REMOVE_MEDIA_FROM_MEDIA_LIST, new Object[]{ mediaList, srcContentUris });
 					}
 					finally
 					{
 						cursor.close();
 					}
 				}
+				removedMediaIds.addAll(deletedMediaIds);
+				
+				// update media list
+				HandlerUtils.sendMessage(MediaStoreMediaSet.this, MSG_MEDIA_LIST_REFRESHED, generation, 1, new Object[]{ mediaList, removedMediaIds, addedMedia });
+				
+				// query missing media chunk-by-chunk and add to media list separately
+				for(int i = 0, count = missingMediaIdChunks.size() ; i < count ; ++i)
+				{
+					if(mediaList.refreshGeneration != generation)
+						return;
+					List<Media> missingMedia = new ArrayList<>();
+					condition = (m_QueryCondition + " AND " + MediaColumns._ID + " IN (" + missingMediaIdChunks.get(i) + ")");
+					cursor = MediaManager.query(client, contentUri, MediaStoreMedia.MEDIA_COLUMNS, condition, m_QueryConditionArgs, sortOrder);
+					if(cursor != null)
+					{
+						try
+						{
+							MediaStoreRowReader reader = new MediaStoreRowReader(cursor);
+							while(cursor.moveToNext())
+							{
+								MediaStoreMedia media = reader.createMedia(handler);
+								if(media != null)
+									missingMedia.add(media);
+							}
+						}
+						finally
+						{
+							cursor.close();
+						}
+					}
+					if(!missingMedia.isEmpty())
+						HandlerUtils.sendMessage(MediaStoreMediaSet.this, MSG_MEDIA_LIST_REFRESHED, generation, 1, new Object[]{ mediaList, new LongHashSet(), missingMedia });
+				}
 			}
-		});
+		}, this.getContentAccessPriority(mediaList), this);
+	}
+	
+	
+	// Refresh packed media list.
+	private void refreshMediaList(final PackedMediaListImpl mediaList)
+	{
+		// cancel superseded refresh
+		mediaList.refreshHandle = Handle.close(mediaList.refreshHandle);
+		final int generation = ++mediaList.refreshGeneration;
+		
+		// refresh based-on current table
+		final MediaTable srcTable = mediaList.getTable();
+		mediaList.refreshHandle = MediaManager.accessContentProvider(CONTENT_URI_FILE, new MediaManager.ContentProviderAccessCallback()
+		{
+			@Override
+			public void onAccessContentProvider(ContentResolver contentResolver, Uri contentUri, ContentProviderClient client) throws RemoteException
+			{
+				// check generation
+				if(mediaList.refreshGeneration != generation)
+					return;
+				
+				// query all media for first time
+				if(srcTable == null || srcTable.getCount() == 0)
+				{
+					MediaTable table = queryMediaTable(client, contentUri, mediaList.comparator, mediaList.maxMediaCount);
+					if(table.getCount() > 0)
+						HandlerUtils.sendMessage(MediaStoreMediaSet.this, MSG_SET_MEDIA_TABLE, generation, 0, new Object[]{ mediaList, table, new int[0], new int[]{ 0, table.getCount() } });
+					return;
+				}
+				
+				// apply changes to copy of current table
+				refreshMediaTable(client, contentUri, mediaList, generation, srcTable);
+			}
+		}, this.getContentAccessPriority(mediaList.maxMediaCount), this);
+	}
+	
+	
+	// Query media changed after building given table, and send new table with changed ranges to packed media list.
+	private void refreshMediaTable(ContentProviderClient client, Uri contentUri, PackedMediaListImpl mediaList, int generation, MediaTable srcTable) throws RemoteException
+	{
+		// find high-water marks of current table
+		int srcCount = srcTable.getCount();
+		LongLongHashMap srcRows = new LongLongHashMap(srcCount);
+		long maxMediaId = 0;
+		long maxDateModified = 0;
+		for(int i = srcCount - 1 ; i >= 0 ; --i)
+		{
+			long id = srcTable.getId(i);
+			srcRows.put(id, i);
+			if(id > maxMediaId)
+				maxMediaId = id;
+			if(srcTable.getDateModified(i) > maxDateModified)
+				maxDateModified = srcTable.getDateModified(i);
+		}
+		
+		// query media added or modified after building current table
+		String sortOrder = mediaList.comparator.getContentProviderSortOrder();
+		String condition = (m_QueryCondition + " AND (" + MediaColumns._ID + ">" + maxMediaId + " OR " + MediaColumns.DATE_MODIFIED + ">=" + maxDateModified + ")");
+		boolean[] srcRemoved = new boolean[srcCount];
+		LongHashSet addedMediaIds = new LongHashSet();
+		MediaTable addedTable = new MediaTable(this.getHandler(), false);
+		MediaStoreMedia.Row row = new MediaStoreMedia.Row();
+		Cursor cursor = MediaManager.query(client, contentUri, MediaStoreMedia.MEDIA_COLUMNS, condition, m_QueryConditionArgs, sortOrder);
+		if(cursor != null)
+		{
+			try
+			{
+				MediaStoreRowReader reader = new MediaStoreRowReader(cursor);
+				while(cursor.moveToNext())
+				{
+					if(!reader.read(row))
+						continue;
+					int srcRow = (int)srcRows.get(row.id, -1);
+					if(srcRow >= 0)
+					{
+						if(srcTable.getDateModified(srcRow) == row.dateModified)
+							continue;
+						srcRemoved[srcRow] = true;
+					}
+					if(addedTable.append(row))
+						addedMediaIds.add(row.id);
+				}
+			}
+			finally
+			{
+				cursor.close();
+			}
+		}
+		if(mediaList.refreshGeneration != generation)
+			return;
+		
+		// query media IDs to find deleted media and media which should be moved into list
+		String idSortOrder = sortOrder;
+		if(mediaList.maxMediaCount >= 0)
+			idSortOrder += (" LIMIT " + mediaList.maxMediaCount);
+		LongHashSet deletedMediaIds = srcRows.copyKeys();
+		List<StringBuilder> missingMediaIdChunks = new ArrayList<>();
+		StringBuilder missingMediaIds = null;
+		int missingMediaIdCount = 0;
+		cursor = MediaManager.query(client, contentUri, new String[]{ MediaColumns._ID }, m_QueryCondition, m_QueryConditionArgs, idSortOrder);
+		if(cursor != null)
+		{
+			try
+			{
+				while(cursor.moveToNext())
+				{
+					long id = cursor.getLong(0);
+					if(deletedMediaIds.remove(id) || addedMediaIds.contains(id))
+						continue;
+					if((missingMediaIdCount++ % MEDIA_ID_QUERY_CHUNK_SIZE) == 0)
+					{
+						missingMediaIds = new StringBuilder();
+						missingMediaIdChunks.add(missingMediaIds);
+					}
+					else
+						missingMediaIds.append(',');
+					missingMediaIds.append(id);
+				}
+			}
+			finally
+			{
+				cursor.close();
+			}
+		}
+		long[] deletedMediaIdArray = deletedMediaIds.toArray();
+		for(int i = deletedMediaIdArray.length - 1 ; i >= 0 ; --i)
+			srcRemoved[(int)srcRows.get(deletedMediaIdArray[i], -1)] = true;
+		
+		// query missing media chunk-by-chunk
+		for(int i = 0, count = missingMediaIdChunks.size() ; i < count ; ++i)
+		{
+			if(mediaList.refreshGeneration != generation)
+				return;
+			condition = (m_QueryCondition + " AND " + MediaColumns._ID + " IN (" + missingMediaIdChunks.get(i) + ")");
+			cursor = MediaManager.query(client, contentUri, MediaStoreMedia.MEDIA_COLUMNS, condition, m_QueryConditionArgs, sortOrder);
+			if(cursor != null)
+			{
+				try
+				{
+					MediaStoreRowReader reader = new MediaStoreRowReader(cursor);
+					while(cursor.moveToNext())
+					{
+						if(reader.read(row))
+							addedTable.append(row);
+					}
+				}
+				finally
+				{
+					cursor.close();
+				}
+			}
+		}
+		
+		// sort added media
+		List<Media> addedMedia = new ArrayList<>(addedTable.getCount());
+		for(int i = 0, count = addedTable.getCount() ; i < count ; ++i)
+			addedMedia.add(addedTable.createView(i));
+		Collections.sort(addedMedia, mediaList.comparator);
+		
+		// merge current table with added media
+		MediaTable table = new MediaTable(this.getHandler(), true);
+		int maxMediaCount = (mediaList.maxMediaCount >= 0 ? mediaList.maxMediaCount : Integer.MAX_VALUE);
+		int[] addedRanges = new int[16];
+		int addedRangeCount = 0;
+		int srcRow = 0;
+		int addedIndex = 0;
+		Media srcMedia = null;
+		while(table.getCount() < maxMediaCount)
+		{
+			// skip removed media
+			while(srcRow < srcCount && srcRemoved[srcRow])
+			{
+				++srcRow;
+				srcMedia = null;
+			}
+			if(srcRow >= srcCount && addedIndex >= addedMedia.size())
+				break;
+			
+			// append media from current table
+			if(addedIndex >= addedMedia.size())
+			{
+				table.append(srcTable, srcRow++);
+				srcMedia = null;
+				continue;
+			}
+			if(srcRow < srcCount)
+			{
+				if(srcMedia == null)
+					srcMedia = srcTable.createView(srcRow);
+				if(mediaList.comparator.compare(srcMedia, addedMedia.get(addedIndex)) <= 0)
+				{
+					table.append(srcTable, srcRow++);
+					srcMedia = null;
+					continue;
+				}
+			}
+			
+			// append added media
+			int index = table.getCount();
+			if(addedRangeCount > 0 && addedRanges[addedRangeCount * 2 - 1] == index)
+				addedRanges[addedRangeCount * 2 - 1] = (index + 1);
+			else
+			{
+				if(addedRanges.length < (addedRangeCount + 1) * 2)
+					addedRanges = Arrays.copyOf(addedRanges, addedRanges.length * 2);
+				addedRanges[addedRangeCount * 2] = index;
+				addedRanges[addedRangeCount * 2 + 1] = (index + 1);
+				++addedRangeCount;
+			}
+			Media media = addedMedia.get(addedIndex++);
+			table.append(addedTable, addedTable.getRow(media));
+		}
+		
+		// media in current table which are not merged are moved out of list
+		for( ; srcRow < srcCount ; ++srcRow)
+			srcRemoved[srcRow] = true;
+		
+		// find removed ranges in current table
+		int[] removedRanges = new int[16];
+		int removedRangeCount = 0;
+		for(int i = 0 ; i < srcCount ; ++i)
+		{
+			if(!srcRemoved[i])
+				continue;
+			if(removedRangeCount > 0 && removedRanges[removedRangeCount * 2 - 1] == i)
+				removedRanges[removedRangeCount * 2 - 1] = (i + 1);
+			else
+			{
+				if(removedRanges.length < (removedRangeCount + 1) * 2)
+					removedRanges = Arrays.copyOf(removedRanges, removedRanges.length * 2);
+				removedRanges[removedRangeCount * 2] = i;
+				removedRanges[removedRangeCount * 2 + 1] = (i + 1);
+				++removedRangeCount;
+			}
+		}
+		
+		// update media list
+		if(removedRangeCount == 0 && addedRangeCount == 0)
+			return;
+		if(mediaList.refreshGeneration != generation)
+			return;
+		HandlerUtils.sendMessage(this, MSG_SET_MEDIA_TABLE, generation, 0, new Object[]{ mediaList, table, Arrays.copyOf(removedRanges, removedRangeCount * 2), Arrays.copyOf(addedRanges, addedRangeCount * 2) });
+	}
+	
+	
+	// Refresh virtual media list.
+	private void refreshMediaList(final VirtualMediaListImpl mediaList)
+	{
+		MediaManager.accessContentProvider(CONTENT_URI_FILE, new MediaManager.ContentProviderAccessCallback()
+		{
+			@Override
+			public void onAccessContentProvider(ContentResolver contentResolver, Uri contentUri, ContentProviderClient client) throws RemoteException
+			{
+				if(mediaList.get(MediaList.PROP_IS_RELEASED))
+					return;
+				int count = refreshMediaCount(contentResolver, contentUri, client);
+				HandlerUtils.sendMessage(MediaStoreMediaSet.this, MSG_SET_VIRTUAL_MEDIA_COUNT, count, 0, mediaList);
+			}
+		}, this.getContentAccessPriority(mediaList.maxMediaCount), this);
 	}
 	
 	
 	// Remove media from media list.
 	private void removeMediaFromMediaList(MediaListImpl mediaList, Media media)
 	{
-		mediaList.removeMedia(media);
+		if(mediaList.removeMedia(media))
+			this.scheduleMediaSnapshotSaving(mediaList);
+	}
+	private void removeMediaFromMediaList(MediaListImpl mediaList, LongHashSet mediaIds)
+	{
+		if(mediaList.removeMedia(mediaIds) > 0)
+			this.scheduleMediaSnapshotSaving(mediaList);
+	}
+	
+	
+	// Start restoring media snapshot from file in content thread, return False if snapshot cannot be persisted.
+	private boolean restoreMediaSnapshot(final MediaListImpl snapshot)
+	{
+		final File file = this.getMediaSnapshotFile(snapshot.getComparator());
+		if(file == null)
+			return false;
+		final String key = this.getMediaSnapshotKey();
+		final Handler handler = this.getHandler();
+		MediaManager.postToContentThread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				List<Media> mediaList = MediaSnapshotFile.read(file, key, handler);
+				HandlerUtils.sendMessage(MediaStoreMediaSet.this, MSG_MEDIA_SNAPSHOT_RESTORED, new Object[]{ snapshot, mediaList });
+			}
+		});
+		return true;
+	}
+	
+	
+	// Save media snapshot to file in content thread, snapshot truncated by capacity will not be saved.
+	private void saveMediaSnapshot(MediaListImpl snapshot)
+	{
+		// check state
+		if(snapshot.get(MediaList.PROP_IS_RELEASED) || snapshot.getMaxMediaCount() >= 0)
+			return;
+		final File file = this.getMediaSnapshotFile(snapshot.getComparator());
+		if(file == null)
+			return;
+		
+		// save
+		final String key = this.getMediaSnapshotKey();
+		final List<Media> mediaList = new ArrayList<>(snapshot);
+		MediaManager.postToContentThread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				MediaSnapshotFile.write(file, key, mediaList);
+			}
+		});
 	}
-	private void removeMediaFromMediaList(MediaListImpl mediaList, Set<Uri> media)
+	
+	
+	// Schedule saving media snapshot to file.
+	private void scheduleMediaSnapshotSaving(MediaListImpl snapshot)
+	{
+		if(snapshot.getMaxMediaCount() >= 0)
+			return;
+		Handler handler = this.getHandler();
+		if(!handler.hasMessages(MSG_SAVE_MEDIA_SNAPSHOT, snapshot))
+			handler.sendMessageDelayed(Message.obtain(handler, MSG_SAVE_MEDIA_SNAPSHOT, snapshot), DELAY_SAVE_MEDIA_SNAPSHOT);
+	}
+	
+	
+	// Update capacity of snapshot according to media lists which share it.
+	private void updateMediaSnapshotCapacity(MediaListImpl snapshot)
+	{
+		// calculate capacity
+		int capacity = 0;
+		for(int i = snapshot.views.size() - 1 ; i >= 0 ; --i)
+		{
+			int maxMediaCount = snapshot.views.get(i).getMaxMediaCount();
+			if(maxMediaCount < 0)
+			{
+				capacity = -1;
+				break;
+			}
+			capacity = Math.max(capacity, maxMediaCount);
+		}
+		
+		// update capacity
+		int prevCapacity = snapshot.getMaxMediaCount();
+		if(capacity == prevCapacity)
+			return;
+		snapshot.setMaxMediaCount(capacity);
+		
+		// load more media
+		if(prevCapacity >= 0 && (capacity < 0 || capacity > prevCapacity))
+		{
+			Log.v(TAG, "updateMediaSnapshotCapacity() - Expand from ", prevCapacity, " to ", capacity);
+			this.loadMediaSnapshot(snapshot, prevCapacity, capacity);
+		}
+	}
+	
+	
+	// Set whether changes of specific media are routed by media manager or not.
+	void setMediaChangeRouted(boolean isRouted)
+	{
+		m_IsMediaChangeRouted = isRouted;
+	}
+	
+	
+	// Set media count refreshed by media manager.
+	void setMediaCount(int count)
 	{
-		mediaList.removeMedia(media);
+		if(!this.get(PROP_IS_RELEASED))
+			this.setReadOnly(PROP_MEDIA_COUNT, count);
 	}
 	
 	
@@ -0,0 +1,132 @@
+package com.oneplus.gallery.media;
+
+import android.database.Cursor;
+import android.os.Handler;
+import android.provider.MediaStore.MediaColumns;
+import android.provider.MediaStore.Files.FileColumns;
+import android.provider.MediaStore.Images.ImageColumns;
+import android.provider.MediaStore.Video.VideoColumns;
+
+/**
+ * Reads media store rows from cursor with column indices resolved only once.
+ */
+final class MediaStoreRowReader
+{
+	// Fields.
+	private final int m_ColumnData;
+	private final int m_ColumnDateModified;
+	private final int m_ColumnDateTaken;
+	private final int m_ColumnDuration;
+	private final int m_ColumnHeight;
+	private final int m_ColumnId;
+	private final int m_ColumnMediaType;
+	private final int m_ColumnMimeType;
+	private final int m_ColumnOrientation;
+	private final int m_ColumnWidth;
+	private final Cursor m_Cursor;
+	private final MediaStoreMedia.Row m_Row = new MediaStoreMedia.Row();
+	
+	
+	/**
+	 * Initialize new MediaStoreRowReader instance.
+	 * @param cursor Cursor to read rows.
+	 */
+	public MediaStoreRowReader(Cursor cursor)
+	{
+		if(cursor == null)
+			throw new IllegalArgumentException("No cursor");
+		m_Cursor = cursor;
+		m_ColumnId = cursor.getColumnIndex(MediaColumns._ID);
+		m_ColumnMediaType = cursor.getColumnIndex(FileColumns.MEDIA_TYPE);
+		m_ColumnData = cursor.getColumnIndex(MediaColumns.DATA);
+		m_ColumnMimeType = cursor.getColumnIndex(MediaColumns.MIME_TYPE);
+		m_ColumnDateModified = cursor.getColumnIndex(MediaColumns.DATE_MODIFIED);
+		m_ColumnDateTaken = cursor.getColumnIndex(ImageColumns.DATE_TAKEN);
+		m_ColumnWidth = cursor.getColumnIndex(MediaColumns.WIDTH);
+		m_ColumnHeight = cursor.getColumnIndex(MediaColumns.HEIGHT);
+		m_ColumnOrientation = cursor.getColumnIndex(ImageColumns.ORIENTATION);
+		m_ColumnDuration = cursor.getColumnIndex(VideoColumns.DURATION);
+	}
+	
+	
+	/**
+	 * Create {@link MediaStoreMedia} from current row.
+	 * @param handler Handler.
+	 * @return Created media, or Null if current row is not a photo or video.
+	 */
+	public MediaStoreMedia createMedia(Handler handler)
+	{
+		if(!this.read(m_Row))
+			return null;
+		return MediaStoreMedia.create(m_Row, handler);
+	}
+	
+	
+	// Read integer value.
+	private int getInt(int column, int defaultValue)
+	{
+		if(column < 0 || m_Cursor.isNull(column))
+			return defaultValue;
+		return m_Cursor.getInt(column);
+	}
+	
+	
+	// Read long integer value.
+	private long getLong(int column, long defaultValue)
+	{
+		if(column < 0 || m_Cursor.isNull(column))
+			return defaultValue;
+		return m_Cursor.getLong(column);
+	}
+	
+	
+	// Read string value.
+	private String getString(int column)
+	{
+		if(column < 0)
+			return null;
+		return m_Cursor.getString(column);
+	}
+	
+	
+	/**
+	 * Read current row.
+	 * @param row Row to receive values.
+	 * @return True if current row is a photo or video.
+	 */
+	public boolean read(MediaStoreMedia.Row row)
+	{
+		// check media type
+		String mimeType = this.getString(m_ColumnMimeType);
+		int mediaType = this.getInt(m_ColumnMediaType, FileColumns.MEDIA_TYPE_NONE);
+		switch(mediaType)
+		{
+			case FileColumns.MEDIA_TYPE_IMAGE:
+			case FileColumns.MEDIA_TYPE_VIDEO:
+				break;
+			case FileColumns.MEDIA_TYPE_NONE:
+				if(mimeType != null && mimeType.startsWith("image/"))
+					mediaType = FileColumns.MEDIA_TYPE_IMAGE;
+				else if(mimeType != null && mimeType.startsWith("video/"))
+					mediaType = FileColumns.MEDIA_TYPE_VIDEO;
+				else
+					return false;
+				break;
+			default:
+				return false;
+		}
+		
+		// read values
+		row.mediaType = mediaType;
+		row.mimeType = mimeType;
+		row.id = this.getLong(m_ColumnId, 0);
+		row.filePath = this.getString(m_ColumnData);
+		row.dateModified = this.getLong(m_ColumnDateModified, 0);
+		row.takenTime = this.getLong(m_ColumnDateTaken, 0);
+		row.width = this.getInt(m_ColumnWidth, 0);
+		row.height = this.getInt(m_ColumnHeight, 0);
+		row.orientation = this.getInt(m_ColumnOrientation, 0);
+		row.duration = (mediaType == FileColumns.MEDIA_TYPE_VIDEO ? this.getLong(m_ColumnDuration, 0) : 0);
+		return true;
+	}
+}
@@ -0,0 +1,468 @@
+package com.oneplus.gallery.media;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import android.content.ContentUris;
+import android.net.Uri;
+import android.os.Handler;
+import android.provider.MediaStore.Images;
+import android.provider.MediaStore.Video;
+import android.provider.MediaStore.Files.FileColumns;
+
+/**
+ * Table which keeps media store rows in primitive arrays and materializes {@link Media} views only when needed.
+ */
+final class MediaTable
+{
+	// Constants.
+	private static final int DEFAULT_CAPACITY = 64;
+	private static final byte TYPE_PHOTO = 1;
+	private static final byte TYPE_VIDEO = 2;
+	
+	
+	// Fields.
+	private int m_Capacity;
+	private int m_Count;
+	private long[] m_DateModifiedTimes;
+	private long[] m_Durations;
+	private char[] m_FilePathChars = new char[DEFAULT_CAPACITY * 48];
+	private int m_FilePathCharCount;
+	private int[] m_FilePathOffsets;
+	private final Handler m_Handler;
+	private int[] m_Heights;
+	private long[] m_Ids;
+	private final HashMap<String, Short> m_MimeTypeCodes = new HashMap<>();
+	private final List<String> m_MimeTypes = new ArrayList<>();
+	private short[] m_MimeTypeIndices;
+	private byte[] m_MediaTypes;
+	private int[] m_Orientations;
+	private long[] m_TakenTimes;
+	private Media[] m_Views;
+	private final boolean m_ViewsCached;
+	private int[] m_Widths;
+	
+	
+	// View of single row.
+	private class PhotoView implements MediaStoreItem
+	{
+		// Fields.
+		private Uri m_ContentUri;
+		private String m_FilePath;
+		public final int row;
+		
+		// Constructor.
+		public PhotoView(int row)
+		{
+			this.row = row;
+		}
+		
+		// Check equality.
+		@Override
+		public boolean equals(Object obj)
+		{
+			if(obj == this)
+				return true;
+			if(obj == null || obj.getClass() != this.getClass())
+				return false;
+			PhotoView view = (PhotoView)obj;
+			return (view.getTable() == MediaTable.this ? view.row == this.row : this.getId() == view.getId());
+		}
+		
+		// Get content URI.
+		@Override
+		public Uri getContentUri()
+		{
+			if(m_ContentUri == null)
+				m_ContentUri = ContentUris.withAppendedId(this.getBaseContentUri(), m_Ids[this.row]);
+			return m_ContentUri;
+		}
+		
+		// Get base content URI.
+		protected Uri getBaseContentUri()
+		{
+			return Images.Media.EXTERNAL_CONTENT_URI;
+		}
+		
+		// Get last modified time.
+		@Override
+		public long getDateModified()
+		{
+			return m_DateModifiedTimes[this.row];
+		}
+		
+		// Get file path.
+		@Override
+		public String getFilePath()
+		{
+			if(m_FilePath == null)
+				m_FilePath = MediaTable.this.getFilePath(this.row);
+			return m_FilePath;
+		}
+		
+		// Get handler.
+		@Override
+		public Handler getHandler()
+		{
+			return m_Handler;
+		}
+		
+		// Get height.
+		@Override
+		public int getHeight()
+		{
+			return m_Heights[this.row];
+		}
+		
+		// Get media ID.
+		@Override
+		public long getId()
+		{
+			return m_Ids[this.row];
+		}
+		
+		// Get MIME type.
+		@Override
+		public String getMimeType()
+		{
+			return MediaTable.this.getMimeType(this.row);
+		}
+		
+		// Get owner table.
+		private MediaTable getTable()
+		{
+			return MediaTable.this;
+		}
+		
+		// Get taken time.
+		@Override
+		public long getTakenTime()
+		{
+			return m_TakenTimes[this.row];
+		}
+		
+		// Get width.
+		@Override
+		public int getWidth()
+		{
+			return m_Widths[this.row];
+		}
+		
+		// Calculate hash code.
+		@Override
+		public int hashCode()
+		{
+			long id = m_Ids[this.row];
+			return (int)(id ^ (id >>> 32));
+		}
+		
+		// Check thread.
+		@Override
+		public boolean isDependencyThread()
+		{
+			return (m_Handler.getLooper().getThread() == Thread.currentThread());
+		}
+		
+		// Get readable string.
+		@Override
+		public String toString()
+		{
+			return ("[" + this.getContentUri() + ", File = " + this.getFilePath() + "]");
+		}
+	}
+	private final class VideoView extends PhotoView implements VideoMedia
+	{
+		// Constructor.
+		public VideoView(int row)
+		{
+			super(row);
+		}
+		
+		// Get base content URI.
+		@Override
+		protected Uri getBaseContentUri()
+		{
+			return Video.Media.EXTERNAL_CONTENT_URI;
+		}
+		
+		// Get duration.
+		@Override
+		public long getDuration()
+		{
+			return m_Durations[this.row];
+		}
+	}
+	
+	
+	/**
+	 * Initialize new MediaTable instance.
+	 * @param handler Handler for materialized media.
+	 * @param cacheViews True to keep materialized media, so the same instance will be returned for the same row.
+	 */
+	public MediaTable(Handler handler, boolean cacheViews)
+	{
+		if(handler == null)
+			throw new IllegalArgumentException("No handler");
+		m_Handler = handler;
+		m_ViewsCached = cacheViews;
+		this.allocate(DEFAULT_CAPACITY);
+	}
+	
+	
+	// Allocate arrays.
+	private void allocate(int capacity)
+	{
+		m_Capacity = capacity;
+		m_Ids = (m_Ids != null ? Arrays.copyOf(m_Ids, capacity) : new long[capacity]);
+		m_TakenTimes = (m_TakenTimes != null ? Arrays.copyOf(m_TakenTimes, capacity) : new long[capacity]);
+		m_DateModifiedTimes = (m_DateModifiedTimes != null ? Arrays.copyOf(m_DateModifiedTimes, capacity) : new long[capacity]);
+		m_Durations = (m_Durations != null ? Arrays.copyOf(m_Durations, capacity) : new long[capacity]);
+		m_Widths = (m_Widths != null ? Arrays.copyOf(m_Widths, capacity) : new int[capacity]);
+		m_Heights = (m_Heights != null ? Arrays.copyOf(m_Heights, capacity) : new int[capacity]);
+		m_Orientations = (m_Orientations != null ? Arrays.copyOf(m_Orientations, capacity) : new int[capacity]);
+		m_MediaTypes = (m_MediaTypes != null ? Arrays.copyOf(m_MediaTypes, capacity) : new byte[capacity]);
+		m_MimeTypeIndices = (m_MimeTypeIndices != null ? Arrays.copyOf(m_MimeTypeIndices, capacity) : new short[capacity]);
+		m_FilePathOffsets = (m_FilePathOffsets != null ? Arrays.copyOf(m_FilePathOffsets, capacity + 1) : new int[capacity + 1]);
+	}
+	
+	
+	/**
+	 * Append row read by {@link MediaStoreRowReader}.
+	 * @param values Values of row to append.
+	 * @return True if row appended, False if row is not a photo or video.
+	 */
+	public boolean append(MediaStoreMedia.Row values)
+	{
+		// check media type
+		byte type;
+		switch(values.mediaType)
+		{
+			case FileColumns.MEDIA_TYPE_IMAGE:
+				type = TYPE_PHOTO;
+				break;
+			case FileColumns.MEDIA_TYPE_VIDEO:
+				type = TYPE_VIDEO;
+				break;
+			default:
+				return false;
+		}
+		if(values.id <= 0)
+			return false;
+		
+		// allocate space
+		if(m_Count >= m_Capacity)
+			this.allocate(m_Capacity * 2);
+		
+		// save values
+		int row = m_Count;
+		m_Ids[row] = values.id;
+		m_MediaTypes[row] = type;
+		m_TakenTimes[row] = values.takenTime;
+		m_DateModifiedTimes[row] = values.dateModified;
+		m_Widths[row] = values.width;
+		m_Heights[row] = values.height;
+		m_Orientations[row] = values.orientation;
+		m_Durations[row] = values.duration;
+		m_MimeTypeIndices[row] = this.getMimeTypeCode(values.mimeType);
+		this.appendFilePath(values.filePath);
+		++m_Count;
+		return true;
+	}
+	
+	
+	/**
+	 * Append row of another table.
+	 * @param source Source table.
+	 * @param row Row index in source table.
+	 */
+	public void append(MediaTable source, int row)
+	{
+		// allocate space
+		if(m_Count >= m_Capacity)
+			this.allocate(m_Capacity * 2);
+		
+		// copy values
+		int newRow = m_Count;
+		m_Ids[newRow] = source.m_Ids[row];
+		m_MediaTypes[newRow] = source.m_MediaTypes[row];
+		m_TakenTimes[newRow] = source.m_TakenTimes[row];
+		m_DateModifiedTimes[newRow] = source.m_DateModifiedTimes[row];
+		m_Widths[newRow] = source.m_Widths[row];
+		m_Heights[newRow] = source.m_Heights[row];
+		m_Orientations[newRow] = source.m_Orientations[row];
+		m_Durations[newRow] = source.m_Durations[row];
+		m_MimeTypeIndices[newRow] = (source != this ? this.getMimeTypeCode(source.getMimeType(row)) : m_MimeTypeIndices[row]);
+		this.appendFilePath(source.getFilePath(row));
+		++m_Count;
+	}
+	
+	
+	// Append file path to character buffer.
+	private void appendFilePath(String filePath)
+	{
+		int length = (filePath != null ? filePath.length() : 0);
+		if(m_FilePathCharCount + length > m_FilePathChars.length)
+			m_FilePathChars = Arrays.copyOf(m_FilePathChars, Math.max(m_FilePathCharCount + length, m_FilePathChars.length * 2));
+		if(length > 0)
+			filePath.getChars(0, length, m_FilePathChars, m_FilePathCharCount);
+		m_FilePathCharCount += length;
+		m_FilePathOffsets[m_Count + 1] = m_FilePathCharCount;
+	}
+	
+	
+	/**
+	 * Get number of rows.
+	 * @return Number of rows.
+	 */
+	public int getCount()
+	{
+		return m_Count;
+	}
+	
+	
+	/**
+	 * Get last modified time of given row.
+	 * @param row Row index.
+	 * @return Last modified time in seconds.
+	 */
+	public long getDateModified(int row)
+	{
+		return m_DateModifiedTimes[row];
+	}
+	
+	
+	/**
+	 * Get file path of given row.
+	 * @param row Row index.
+	 * @return File path, or Null if there is no file path.
+	 */
+	public String getFilePath(int row)
+	{
+		int start = m_FilePathOffsets[row];
+		int end = m_FilePathOffsets[row + 1];
+		return (end > start ? new String(m_FilePathChars, start, end - start) : null);
+	}
+	
+	
+	/**
+	 * Get media ID of given row.
+	 * @param row Row index.
+	 * @return Media ID.
+	 */
+	public long getId(int row)
+	{
+		return m_Ids[row];
+	}
+	
+	
+	/**
+	 * Get {@link Media} view of given row.
+	 * @param row Row index.
+	 * @return Media.
+	 */
+	public Media getMedia(int row)
+	{
+		if(row < 0 || row >= m_Count)
+			throw new IndexOutOfBoundsException("Row : " + row + ", count : " + m_Count);
+		if(!m_ViewsCached)
+			return this.createView(row);
+		if(m_Views == null || m_Views.length < m_Count)
+			m_Views = (m_Views != null ? Arrays.copyOf(m_Views, m_Capacity) : new Media[m_Capacity]);
+		Media media = m_Views[row];
+		if(media == null)
+		{
+			media = this.createView(row);
+			m_Views[row] = media;
+		}
+		return media;
+	}
+	
+	
+	/**
+	 * Create new {@link Media} view of given row without keeping it in table, so it can be used in any thread.
+	 * @param row Row index.
+	 * @return Media.
+	 */
+	public Media createView(int row)
+	{
+		if(m_MediaTypes[row] == TYPE_VIDEO)
+			return new VideoView(row);
+		return new PhotoView(row);
+	}
+	
+	
+	/**
+	 * Get row index of given media view.
+	 * @param media Media view created by this table.
+	 * @return Row index, or -1 if media is not created by this table.
+	 */
+	public int getRow(Media media)
+	{
+		if(media instanceof PhotoView && ((PhotoView)media).getTable() == this)
+			return ((PhotoView)media).row;
+		return -1;
+	}
+	
+	
+	/**
+	 * Get MIME type of given row.
+	 * @param row Row index.
+	 * @return MIME type.
+	 */
+	public String getMimeType(int row)
+	{
+		int code = m_MimeTypeIndices[row];
+		return (code >= 0 ? m_MimeTypes.get(code) : null);
+	}
+	
+	
+	// Get interned MIME type code.
+	private short getMimeTypeCode(String mimeType)
+	{
+		if(mimeType == null)
+			return -1;
+		Short code = m_MimeTypeCodes.get(mimeType);
+		if(code == null)
+		{
+			code = (short)m_MimeTypes.size();
+			m_MimeTypes.add(mimeType);
+			m_MimeTypeCodes.put(mimeType, code);
+		}
+		return code;
+	}
+	
+	
+	/**
+	 * Get orientation of given row.
+	 * @param row Row index.
+	 * @return Orientation in degrees.
+	 */
+	public int getOrientation(int row)
+	{
+		return m_Orientations[row];
+	}
+	
+	
+	/**
+	 * Get taken time of given row.
+	 * @param row Row index.
+	 * @return Taken time in milliseconds.
+	 */
+	public long getTakenTime(int row)
+	{
+		return m_TakenTimes[row];
+	}
+	
+	
+	/**
+	 * Check whether given row is a video or not.
+	 * @param row Row index.
+	 * @return True if row is a video.
+	 */
+	public boolean isVideo(int row)
+	{
+		return (m_MediaTypes[row] == TYPE_VIDEO);
+	}
+}
@@ -2,6 +2,7 @@ package com.oneplus.gallery.media;
 
 import com.oneplus.database.CursorUtils;
 
+import android.content.ContentUris;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Handler;
@@ -14,9 +15,17 @@ import android.provider.MediaStore.MediaColumns;
 class PhotoMediaStoreMedia extends MediaStoreMedia
 {
 	// Constructor.
-	PhotoMediaStoreMedia(Cursor cursor, Handler handler)
+	PhotoMediaStoreMedia(Row row, Handler handler)
 	{
-		super(getContentUri(cursor), cursor, handler);
+		super(row, handler);
+	}
+	
+	
+	// Get base content URI.
+	@Override
+	protected Uri getBaseContentUri()
+	{
+		return Images.Media.EXTERNAL_CONTENT_URI;
 	}
 	
 	
@@ -27,9 +36,19 @@ class PhotoMediaStoreMedia extends MediaStoreMedia
 	 */
 	public static Uri getContentUri(Cursor cursor)
 	{
-		int id = CursorUtils.getInt(cursor, MediaColumns._ID, 0);
+		return getContentUri(CursorUtils.getLong(cursor, MediaColumns._ID, 0));
+	}
+	
+	
+	/**
+	 * Get content URI from media ID.
+	 * @param id Media ID.
+	 * @return Photo content URI.
+	 */
+	public static Uri getContentUri(long id)
+	{
 		if(id > 0)
-			return Uri.parse(Images.Media.EXTERNAL_CONTENT_URI + "/" + id);
+			return ContentUris.withAppendedId(Images.Media.EXTERNAL_CONTENT_URI, id);
 		return null;
 	}
 }
@@ -2,13 +2,12 @@ package com.oneplus.gallery.media;
 
 import com.oneplus.database.CursorUtils;
 
+import android.content.ContentUris;
 import android.database.Cursor;
-import android.media.MediaMetadataRetriever;
 import android.net.Uri;
 import android.os.Handler;
 import android.provider.MediaStore.MediaColumns;
 import android.provider.MediaStore.Video;
-import android.provider.MediaStore.Video.VideoColumns;
 
 /**
  * Media store based video media.
@@ -16,17 +15,29 @@ import android.provider.MediaStore.Video.VideoColumns;
 class VideoMediaStoreMedia extends MediaStoreMedia implements VideoMedia
 {
 	// Fields.
-	private long m_Duration;
+	private volatile long m_Duration;
+	private volatile boolean m_IsSizeResolvingRequested;
 	
 	
 	// Constructor.
-	VideoMediaStoreMedia(Cursor cursor, Handler handler)
+	VideoMediaStoreMedia(Row row, Handler handler)
 	{
 		// call super
-		super(getContentUri(cursor), cursor, handler);
+		super(row, handler);
 		
 		// get duration
-		m_Duration = CursorUtils.getLong(cursor, VideoColumns.DURATION, 0);
+		m_Duration = row.duration;
+		
+		// get cached size
+		this.loadCachedSize();
+	}
+	
+	
+	// Get base content URI.
+	@Override
+	protected Uri getBaseContentUri()
+	{
+		return Video.Media.EXTERNAL_CONTENT_URI;
 	}
 	
 	
@@ -37,9 +48,19 @@ class VideoMediaStoreMedia extends MediaStoreMedia implements VideoMedia
 	 */
 	public static Uri getContentUri(Cursor cursor)
 	{
-		int id = CursorUtils.getInt(cursor, MediaColumns._ID, 0);
+		return getContentUri(CursorUtils.getLong(cursor, MediaColumns._ID, 0));
+	}
+	
+	
+	/**
+	 * Get content URI from media ID.
+	 * @param id Media ID.
+	 * @return Video content URI.
+	 */
+	public static Uri getContentUri(long id)
+	{
 		if(id > 0)
-			return Uri.parse(Video.Media.EXTERNAL_CONTENT_URI + "/" + id);
+			return ContentUris.withAppendedId(Video.Media.EXTERNAL_CONTENT_URI, id);
 		return null;
 	}
 	
@@ -52,47 +73,44 @@ class VideoMediaStoreMedia extends MediaStoreMedia implements VideoMedia
 	}
 	
 	
-	// Setup video size
+	// Update values from media store row, size is resolved from file instead.
 	@Override
-	protected void setupSize(Cursor cursor, int[] result)
+	protected void onUpdate(Row row)
 	{
-		// call super
-		super.setupSize(cursor, result);
-		
-		// get from file
-		String filePath = this.getFilePath();
-		if(filePath != null)
+		final long duration = row.duration;
+		if(duration == m_Duration)
+			return;
+		this.getHandler().post(new Runnable()
 		{
-			MediaMetadataRetriever retriever = null;
-			try
-			{
-				retriever = new MediaMetadataRetriever();
-				retriever.setDataSource(filePath);
-				String rotation = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_ROTATION);
-				result[0] = Integer.parseInt(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_WIDTH));
-				result[1] = Integer.parseInt(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_HEIGHT));
-				if(rotation != null)
-				{
-					switch(rotation)
-					{
-						case "90":
-						case "270":
-						{
-							int newWidth = result[1];
-							result[1] = result[0];
-							result[0] = newWidth;
-							break;
-						}
-					}
-				}
-			}
-			catch(Throwable ex)
-			{}
-			finally
+			@Override
+			public void run()
 			{
-				if(retriever != null)
-					retriever.release();
+				m_Duration = duration;
 			}
+		});
+	}
+	
+	
+	// Get cached size, size in media store will be used until resolving actual size or if video cannot be probed.
+	private void loadCachedSize()
+	{
+		int[] size = new int[2];
+		if(VideoSizeResolver.getSize(this.getId(), this.getDateModified(), size))
+		{
+			m_IsSizeResolvingRequested = true;
+			if(size[0] > 0 && size[1] > 0)
+				this.setSize(size[0], size[1]);
 		}
 	}
+	
+	
+	// Resolve size from file when size is requested first time.
+	@Override
+	protected void onSizeRequested()
+	{
+		if(m_IsSizeResolvingRequested)
+			return;
+		m_IsSizeResolvingRequested = true;
+		VideoSizeResolver.resolveSize(this);
+	}
 }
@@ -0,0 +1,428 @@
+package com.oneplus.gallery.media;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import com.oneplus.base.Log;
+import com.oneplus.gallery.GalleryApplication;
+
+import android.media.MediaMetadataRetriever;
+import android.os.Process;
+
+/**
+ * Resolves video dimensions from files in background and keeps results in persistent cache.
+ * Requests are probed from the most recent one, and request will be dropped if all its media have been garbage collected before probing.
+ */
+final class VideoSizeResolver
+{
+	// Constants.
+	private static final String TAG = "VideoSizeResolver";
+	private static final String CACHE_FILE_NAME = "video_size_cache";
+	private static final int CACHE_FILE_VERSION = 1;
+	private static final long DELAY_SAVE_CACHE = 3000;
+	private static final int MAX_CACHE_SIZE = 65536;
+	private static final long WORKER_THREAD_KEEP_ALIVE_TIME = 10000;
+	private static final int WORKER_THREAD_COUNT = 2;
+	
+	
+	// Fields.
+	private static final LinkedHashMap<Long, CacheEntry> m_Cache = new LinkedHashMap<Long, CacheEntry>(256, 0.75f, true)
+	{
+		private static final long serialVersionUID = 1L;
+		
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Long, CacheEntry> eldest)
+		{
+			return (this.size() > MAX_CACHE_SIZE);
+		}
+	};
+	private static ScheduledThreadPoolExecutor m_Executor;
+	private static boolean m_IsCacheLoaded;
+	private static boolean m_IsCacheSaveScheduled;
+	private static final Object m_Lock = new Object();
+	private static final List<ResolvingRequest> m_PendingRequests = new ArrayList<>();
+	private static final Runnable m_ProbeRunnable = new Runnable()
+	{
+		@Override
+		public void run()
+		{
+			probeNextRequest();
+		}
+	};
+	private static final LongObjectHashMap<ResolvingRequest> m_ResolvingRequests = new LongObjectHashMap<>();
+	private static final Runnable m_SaveCacheRunnable = new Runnable()
+	{
+		@Override
+		public void run()
+		{
+			saveCache();
+		}
+	};
+	
+	
+	// Cached video size, size will be 0 if video cannot be probed.
+	private static final class CacheEntry
+	{
+		public final long dateModified;
+		public final int height;
+		public final int width;
+		
+		public CacheEntry(long dateModified, int width, int height)
+		{
+			this.dateModified = dateModified;
+			this.width = width;
+			this.height = height;
+		}
+	}
+	
+	
+	// Request to resolve size of video, media are referenced weakly so pending request doesn't keep them alive.
+	private static final class ResolvingRequest
+	{
+		public final long dateModified;
+		public final String filePath;
+		public final long id;
+		public final List<WeakReference<VideoMediaStoreMedia>> mediaRefs = new ArrayList<>();
+		
+		public ResolvingRequest(long id, long dateModified, String filePath)
+		{
+			this.id = id;
+			this.dateModified = dateModified;
+			this.filePath = filePath;
+		}
+		
+		// Collect media which are still alive.
+		public List<VideoMediaStoreMedia> getMedia()
+		{
+			List<VideoMediaStoreMedia> mediaList = new ArrayList<>(this.mediaRefs.size());
+			for(int i = this.mediaRefs.size() - 1 ; i >= 0 ; --i)
+			{
+				VideoMediaStoreMedia media = this.mediaRefs.get(i).get();
+				if(media != null)
+					mediaList.add(media);
+			}
+			return mediaList;
+		}
+	}
+	
+	
+	// Constructor.
+	private VideoSizeResolver()
+	{}
+	
+	
+	// Get cache file.
+	private static File getCacheFile()
+	{
+		return new File(GalleryApplication.current().getFilesDir(), CACHE_FILE_NAME);
+	}
+	
+	
+	/**
+	 * Get cached video size.
+	 * @param id Media ID.
+	 * @param dateModified Last modified time in media store.
+	 * @param result Array to receive width and height, both will be 0 if video cannot be probed.
+	 * @return True if video size or probing failure is cached.
+	 */
+	public static boolean getSize(long id, long dateModified, int[] result)
+	{
+		synchronized(m_Lock)
+		{
+			loadCache();
+			CacheEntry entry = m_Cache.get(id);
+			if(entry == null || entry.dateModified != dateModified)
+				return false;
+			result[0] = entry.width;
+			result[1] = entry.height;
+			return true;
+		}
+	}
+	
+	
+	// Load cache from file.
+	private static void loadCache()
+	{
+		// check state
+		if(m_IsCacheLoaded)
+			return;
+		m_IsCacheLoaded = true;
+		
+		// load
+		File file = getCacheFile();
+		if(!file.exists())
+			return;
+		DataInputStream stream = null;
+		try
+		{
+			stream = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			if(stream.readInt() != CACHE_FILE_VERSION)
+			{
+				Log.w(TAG, "loadCache() - Unsupported cache version");
+				return;
+			}
+			for(int i = stream.readInt() ; i > 0 ; --i)
+			{
+				long id = stream.readLong();
+				long dateModified = stream.readLong();
+				int width = stream.readInt();
+				int height = stream.readInt();
+				m_Cache.put(id, new CacheEntry(dateModified, width, height));
+			}
+			Log.v(TAG, "loadCache() - Cache size : ", m_Cache.size());
+		}
+		catch(Throwable ex)
+		{
+			Log.e(TAG, "loadCache() - Fail to load cache", ex);
+			m_Cache.clear();
+		}
+		finally
+		{
+			if(stream != null)
+			{
+				try
+				{
+					stream.close();
+				}
+				catch(Throwable ex)
+				{}
+			}
+		}
+	}
+	
+	
+	// Probe video size from file.
+	private static boolean probeSize(String filePath, int[] result)
+	{
+		MediaMetadataRetriever retriever = null;
+		try
+		{
+			retriever = new MediaMetadataRetriever();
+			retriever.setDataSource(filePath);
+			String rotation = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_ROTATION);
+			result[0] = Integer.parseInt(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_WIDTH));
+			result[1] = Integer.parseInt(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_HEIGHT));
+			if(rotation != null)
+			{
+				switch(rotation)
+				{
+					case "90":
+					case "270":
+					{
+						int newWidth = result[1];
+						result[1] = result[0];
+						result[0] = newWidth;
+						break;
+					}
+				}
+			}
+			return (result[0] > 0 && result[1] > 0);
+		}
+		catch(Throwable ex)
+		{
+			return false;
+		}
+		finally
+		{
+			if(retriever != null)
+				retriever.release();
+		}
+	}
+	
+	
+	// Probe size of the most recent pending request.
+	private static void probeNextRequest()
+	{
+		// get request
+		ResolvingRequest request;
+		synchronized(m_Lock)
+		{
+			if(m_PendingRequests.isEmpty())
+				return;
+			request = m_PendingRequests.remove(m_PendingRequests.size() - 1);
+			if(request.getMedia().isEmpty())
+			{
+				m_ResolvingRequests.remove(request.id);
+				return;
+			}
+		}
+		
+		// probe
+		int[] size = new int[2];
+		boolean isResolved = probeSize(request.filePath, size);
+		List<VideoMediaStoreMedia> mediaList;
+		synchronized(m_Lock)
+		{
+			m_ResolvingRequests.remove(request.id);
+			mediaList = request.getMedia();
+			if(isResolved)
+				m_Cache.put(request.id, new CacheEntry(request.dateModified, size[0], size[1]));
+			else
+			{
+				Log.w(TAG, "probeNextRequest() - Cannot probe size of ", request.filePath);
+				m_Cache.put(request.id, new CacheEntry(request.dateModified, 0, 0));
+			}
+			if(!m_IsCacheSaveScheduled)
+			{
+				m_IsCacheSaveScheduled = true;
+				m_Executor.schedule(m_SaveCacheRunnable, DELAY_SAVE_CACHE, TimeUnit.MILLISECONDS);
+			}
+		}
+		if(isResolved)
+		{
+			for(int i = mediaList.size() - 1 ; i >= 0 ; --i)
+				updateSize(mediaList.get(i), size[0], size[1]);
+		}
+	}
+	
+	
+	/**
+	 * Resolve size of given video in background, {@link VideoMediaStoreMedia#updateSize(int, int)} will be called in media thread after resolving.
+	 * This method should be called only when size of video is actually needed, the most recent request will be probed first.
+	 * @param media Video to resolve size.
+	 */
+	public static void resolveSize(VideoMediaStoreMedia media)
+	{
+		// check parameter
+		String filePath = media.getFilePath();
+		if(filePath == null)
+			return;
+		
+		synchronized(m_Lock)
+		{
+			// check resolving state
+			long id = media.getId();
+			ResolvingRequest request = m_ResolvingRequests.get(id);
+			if(request != null)
+			{
+				request.mediaRefs.add(new WeakReference<>(media));
+				return;
+			}
+			request = new ResolvingRequest(id, media.getDateModified(), filePath);
+			request.mediaRefs.add(new WeakReference<>(media));
+			m_ResolvingRequests.put(id, request);
+			m_PendingRequests.add(request);
+			
+			// start worker threads
+			if(m_Executor == null)
+			{
+				m_Executor = new ScheduledThreadPoolExecutor(WORKER_THREAD_COUNT, new ThreadFactory()
+				{
+					@Override
+					public Thread newThread(final Runnable r)
+					{
+						return new Thread(new Runnable()
+						{
+							@Override
+							public void run()
+							{
+								Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+								r.run();
+							}
+						}, "Video size resolver");
+					}
+				});
+				m_Executor.setKeepAliveTime(WORKER_THREAD_KEEP_ALIVE_TIME, TimeUnit.MILLISECONDS);
+				m_Executor.allowCoreThreadTimeOut(true);
+			}
+			
+			// probe in worker thread
+			m_Executor.execute(m_ProbeRunnable);
+		}
+	}
+	
+	
+	// Save cache to file.
+	private static void saveCache()
+	{
+		// copy entries
+		long[] ids;
+		CacheEntry[] entries;
+		synchronized(m_Lock)
+		{
+			m_IsCacheSaveScheduled = false;
+			ids = new long[m_Cache.size()];
+			entries = new CacheEntry[ids.length];
+			int index = 0;
+			for(Map.Entry<Long, CacheEntry> entry : m_Cache.entrySet())
+			{
+				ids[index] = entry.getKey();
+				entries[index] = entry.getValue();
+				++index;
+			}
+		}
+		
+		// write to temporary file
+		File file = getCacheFile();
+		File tempFile = new File(file.getAbsolutePath() + ".tmp");
+		DataOutputStream stream = null;
+		try
+		{
+			stream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+			stream.writeInt(CACHE_FILE_VERSION);
+			stream.writeInt(ids.length);
+			for(int i = 0 ; i < ids.length ; ++i)
+			{
+				CacheEntry entry = entries[i];
+				stream.writeLong(ids[i]);
+				stream.writeLong(entry.dateModified);
+				stream.writeInt(entry.width);
+				stream.writeInt(entry.height);
+			}
+			stream.close();
+			stream = null;
+		}
+		catch(Throwable ex)
+		{
+			Log.e(TAG, "saveCache() - Fail to write cache", ex);
+			return;
+		}
+		finally
+		{
+			if(stream != null)
+			{
+				try
+				{
+					stream.close();
+				}
+				catch(Throwable ex)
+				{}
+				tempFile.delete();
+			}
+		}
+		
+		// replace cache file
+		if(!tempFile.renameTo(file))
+		{
+			Log.e(TAG, "saveCache() - Fail to replace cache file");
+			tempFile.delete();
+		}
+	}
+	
+	
+	// Update size of media in media thread.
+	private static void updateSize(final VideoMediaStoreMedia media, final int width, final int height)
+	{
+		media.getHandler().post(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				media.updateSize(width, height);
+			}
+		});
+	}
+}
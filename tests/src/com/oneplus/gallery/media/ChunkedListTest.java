@@ -0,0 +1,201 @@
+package com.oneplus.gallery.media;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.oneplus.base.Log;
+
+/**
+ * Tests and benchmarks of {@link ChunkedList} against {@link ArrayList}.
+ */
+public class ChunkedListTest extends TestCase
+{
+	// Constants.
+	private static final String TAG = "ChunkedListTest";
+	private static final int BENCHMARK_INSERT_COUNT = 20000;
+	private static final int BENCHMARK_ITEM_COUNT = 120000;
+	private static final Comparator<Integer> COMPARATOR = new Comparator<Integer>()
+	{
+		@Override
+		public int compare(Integer lhs, Integer rhs)
+		{
+			return lhs.compareTo(rhs);
+		}
+	};
+	
+	
+	// Create sorted items.
+	private static List<Integer> createSortedItems(int count)
+	{
+		List<Integer> items = new ArrayList<>(count);
+		for(int i = 0 ; i < count ; ++i)
+			items.add(i * 2);
+		return items;
+	}
+	
+	
+	/**
+	 * Compare sorted insertion with ArrayList and binary search.
+	 */
+	public void testBenchmarkSortedInsert()
+	{
+		// prepare
+		Random random = new Random(0);
+		int[] values = new int[BENCHMARK_INSERT_COUNT];
+		for(int i = 0 ; i < values.length ; ++i)
+			values[i] = (random.nextInt(BENCHMARK_ITEM_COUNT) * 2 + 1);
+		List<Integer> items = createSortedItems(BENCHMARK_ITEM_COUNT);
+		
+		// insert to ArrayList
+		ArrayList<Integer> arrayList = new ArrayList<>(items);
+		long time = System.nanoTime();
+		for(int i = 0 ; i < values.length ; ++i)
+		{
+			int index = Collections.binarySearch(arrayList, values[i], COMPARATOR);
+			arrayList.add(index < 0 ? ~index : index, values[i]);
+		}
+		long arrayListTime = (System.nanoTime() - time);
+		
+		// insert to ChunkedList
+		ChunkedList<Integer> chunkedList = new ChunkedList<>();
+		chunkedList.addAll(0, items);
+		time = System.nanoTime();
+		for(int i = 0 ; i < values.length ; ++i)
+		{
+			int index = chunkedList.binarySearch(values[i], COMPARATOR);
+			chunkedList.add(index < 0 ? ~index : index, values[i]);
+		}
+		long chunkedListTime = (System.nanoTime() - time);
+		
+		// check result
+		Log.i(TAG, "testBenchmarkSortedInsert() - Insert ", values.length, " items into ", items.size(), " items, ArrayList : ", (arrayListTime / 1000000), " ms, ChunkedList : ", (chunkedListTime / 1000000), " ms, chunks : ", chunkedList.getChunkCount());
+		assertEquals(arrayList, chunkedList);
+	}
+	
+	
+	/**
+	 * Check that inserting single items doesn't fragment chunks.
+	 */
+	public void testInsertSingleItemRuns()
+	{
+		ChunkedList<Integer> list = new ChunkedList<>(512);
+		list.addAll(0, createSortedItems(BENCHMARK_ITEM_COUNT));
+		Random random = new Random(0);
+		for(int i = 0 ; i < 3000 ; ++i)
+			list.addAll(random.nextInt(list.size() + 1), Collections.singletonList(-1));
+		assertEquals(BENCHMARK_ITEM_COUNT + 3000, list.size());
+		assertTrue("Too many chunks : " + list.getChunkCount(), list.getChunkCount() <= (list.size() / 256) + 1);
+	}
+	
+	
+	/**
+	 * Check random operations against ArrayList.
+	 */
+	public void testRandomOperations()
+	{
+		Random random = new Random(0);
+		for(int round = 0 ; round < 50 ; ++round)
+		{
+			int chunkCapacity = (2 + random.nextInt(30));
+			ChunkedList<Integer> chunkedList = new ChunkedList<>(chunkCapacity);
+			ArrayList<Integer> arrayList = new ArrayList<>();
+			for(int i = 0 ; i < 2000 ; ++i)
+			{
+				switch(random.nextInt(5))
+				{
+					case 0:
+					{
+						int index = random.nextInt(arrayList.size() + 1);
+						int value = random.nextInt();
+						chunkedList.add(index, value);
+						arrayList.add(index, value);
+						break;
+					}
+					case 1:
+					{
+						int index = random.nextInt(arrayList.size() + 1);
+						List<Integer> run = new ArrayList<>();
+						for(int j = random.nextInt(chunkCapacity * 3) ; j > 0 ; --j)
+							run.add(random.nextInt());
+						chunkedList.addAll(index, run);
+						arrayList.addAll(index, run);
+						break;
+					}
+					case 2:
+						if(!arrayList.isEmpty())
+						{
+							int index = random.nextInt(arrayList.size());
+							assertEquals(arrayList.remove(index), chunkedList.remove(index));
+						}
+						break;
+					case 3:
+						if(!arrayList.isEmpty())
+						{
+							int fromIndex = random.nextInt(arrayList.size());
+							int toIndex = (fromIndex + random.nextInt(Math.min(arrayList.size() - fromIndex, chunkCapacity * 2) + 1));
+							chunkedList.subList(fromIndex, toIndex).clear();
+							arrayList.subList(fromIndex, toIndex).clear();
+						}
+						break;
+					case 4:
+						if(!arrayList.isEmpty())
+						{
+							int index = random.nextInt(arrayList.size());
+							int value = random.nextInt();
+							assertEquals(arrayList.set(index, value), chunkedList.set(index, value));
+						}
+						break;
+				}
+				assertEquals(arrayList.size(), chunkedList.size());
+			}
+			assertEquals(arrayList, chunkedList);
+		}
+	}
+	
+	
+	/**
+	 * Check binary search which starts from given index.
+	 */
+	public void testBinarySearchFromIndex()
+	{
+		ChunkedList<Integer> chunkedList = new ChunkedList<>(8);
+		chunkedList.addAll(0, createSortedItems(1000));
+		for(int fromIndex = 0 ; fromIndex <= 1000 ; fromIndex += 7)
+		{
+			for(int value = -1 ; value < 2000 ; value += 3)
+			{
+				int index = chunkedList.binarySearch(value, COMPARATOR, fromIndex);
+				if(value >= 0 && (value % 2) == 0 && (value / 2) >= fromIndex)
+					assertEquals(value / 2, index);
+				else
+				{
+					assertTrue(index < 0);
+					assertEquals(Math.max(fromIndex, (value + 2) / 2), ~index);
+				}
+			}
+		}
+	}
+	
+	
+	/**
+	 * Check removing multiple ranges against ArrayList.
+	 */
+	public void testRemoveRanges()
+	{
+		ChunkedList<Integer> chunkedList = new ChunkedList<>(8);
+		ArrayList<Integer> arrayList = new ArrayList<>(createSortedItems(1000));
+		chunkedList.addAll(0, arrayList);
+		int[] ranges = new int[]{ 0, 3, 10, 30, 31, 32, 100, 200, 500, 999 };
+		for(int i = (ranges.length / 2) - 1 ; i >= 0 ; --i)
+			arrayList.subList(ranges[i * 2], ranges[i * 2 + 1]).clear();
+		chunkedList.removeRanges(ranges, ranges.length / 2);
+		assertEquals(arrayList, chunkedList);
+		for(int i = arrayList.size() - 1 ; i >= 0 ; --i)
+			assertEquals(i, chunkedList.binarySearch(arrayList.get(i), COMPARATOR));
+	}
+}